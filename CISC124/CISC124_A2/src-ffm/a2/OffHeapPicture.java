@@ -0,0 +1,316 @@
+package a2;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.Cleaner;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A picture whose pixels are kept in native memory instead of the heap, for
+ * rasters so large that a heap array would strain the garbage collector: a
+ * 16384-by-16384 picture is a 1 GB {@code int[]}, which the collector can only
+ * place as a humongous object.
+ *
+ * <p>
+ * The pixels are one {@link MemorySegment} of {@code width * height} ints, row
+ * by row, allocated by a shared {@link Arena} so that the tiles of an operation
+ * can read and write it from any thread. Rows and regions are copied between
+ * the segment and {@code int} arrays in bulk, so the {@link A2} operations work
+ * on off-heap pictures tile by tile, as on {@link MappedPicture}s, without a
+ * {@link BufferedImage} in between, and put their results in new off-heap
+ * pictures (see {@link #blank(int, int)}). {@link #pixels()} returns a copy of
+ * the pixels.
+ *
+ * <p>
+ * The memory is given back by {@link #close()}; any later use of the picture
+ * throws {@link IllegalStateException}. Views of the picture (see
+ * {@link #copyView()}) read through it, so they must not be used after it is
+ * closed. Like a direct buffer, a picture that is never closed, such as the
+ * intermediate result of an operation, is freed when it becomes unreachable,
+ * but the collector does not see how much native memory it holds, so large
+ * pictures should be closed.
+ *
+ * <p>
+ * Unlike a mapped picture, an off-heap picture is not backed by a file, so it
+ * must fit in memory, but it is not paged to disk either. The JVM counts the
+ * native memory against {@code -XX:MaxDirectMemorySize}, which is the size of
+ * the heap unless it is set, so a small heap with large off-heap pictures
+ * needs that option raised.
+ *
+ * <p>
+ * This class uses only the part of the foreign memory API that is the same in
+ * its final form, from Java 22, and in its preview in Java 21. It compiles and
+ * runs without flags on Java 22 or later; on Java 21 it needs
+ * {@code --enable-preview --release 21} to compile and {@code --enable-preview}
+ * to run. No other class refers to it, so it is kept in the {@code src-ffm}
+ * folder, apart from the rest of the package, which builds without it (see
+ * the README of the assignment).
+ */
+public final class OffHeapPicture extends Picture implements AutoCloseable {
+	private static final Cleaner CLEANER = Cleaner.create();
+	private static final ValueLayout.OfInt PIXEL = ValueLayout.JAVA_INT;
+
+	private final MemorySegment segment; // the pixels, row-major
+	private final Cleaner.Cleanable cleanable; // closes the arena
+
+	private OffHeapPicture(int width, int height) {
+		super(width, height, false);
+		Arena arena = Arena.ofShared();
+		try {
+			segment = arena.allocate(PIXEL.byteSize() * width * height, PIXEL.byteAlignment());
+		} catch (RuntimeException | OutOfMemoryError e) {
+			arena.close();
+			throw e;
+		}
+		cleanable = CLEANER.register(this, arena::close);
+	}
+
+	/**
+	 * Creates a black {@code width}-by-{@code height} picture in native memory.
+	 *
+	 * @param width  the width of the picture
+	 * @param height the height of the picture
+	 * @return the picture
+	 * @throws IllegalArgumentException if {@code width} or {@code height} is not
+	 *                                  positive
+	 */
+	public static OffHeapPicture allocate(int width, int height) {
+		return new OffHeapPicture(width, height);
+	}
+
+	/**
+	 * Creates an off-heap copy of a picture. The rows are copied in parallel
+	 * bands.
+	 *
+	 * @param p the picture to copy
+	 * @return the copy
+	 * @throws IllegalArgumentException if {@code p} is {@code null}
+	 */
+	public static OffHeapPicture copyOf(Picture p) {
+		if (p == null)
+			throw new IllegalArgumentException("picture argument is null");
+		OffHeapPicture copy = new OffHeapPicture(p.width(), p.height());
+		int width = p.width();
+		TileScheduler scheduler = A2.getScheduler();
+		scheduler.runBands(p.height(), scheduler.tileHeight(), (firstRow, endRow) -> {
+			int[] row = new int[width];
+			for (int y = firstRow; y < endRow; y++) {
+				p.getRow(y, row);
+				copy.setRow(y, row);
+			}
+		});
+		return copy;
+	}
+
+	/**
+	 * Reads a PNG, GIF or JPEG file into a new off-heap picture. A color image
+	 * with 8-bit samples and no transparency is decoded straight into native
+	 * memory, so it never has to fit on the heap; other images are decoded on
+	 * the heap first, as by {@link Picture#Picture(File)}, and then copied.
+	 *
+	 * @param file the image file
+	 * @return the picture
+	 * @throws IllegalArgumentException if the file cannot be read
+	 */
+	public static OffHeapPicture read(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("file argument is null");
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext())
+				throw new IllegalArgumentException("could not read file: " + file);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				OffHeapPicture p = new OffHeapPicture(reader.getWidth(0), reader.getHeight(0));
+				try {
+					// readers only decode into an image with their own bands
+					ImageTypeSpecifier raw = reader.getRawImageType(0);
+					if (raw != null && raw.getNumBands() == 3 && raw.getBitsPerBand(0) == 8
+							&& raw.getColorModel().getTransparency() == Transparency.OPAQUE) {
+						ImageReadParam param = reader.getDefaultReadParam();
+						param.setDestination(p.image());
+						reader.read(0, param);
+					} else {
+						BufferedImage image = Picture.rgb(reader.read(0));
+						int w = p.width();
+						p.setRegion(0, 0, w, p.height(),
+								((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, w);
+					}
+				} catch (IOException | RuntimeException e) {
+					p.close();
+					throw e;
+				}
+				return p;
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not open file: " + file, ioe);
+		}
+	}
+
+	/**
+	 * Frees the native memory of this picture. Closing a picture twice does
+	 * nothing.
+	 */
+	@Override
+	public void close() {
+		cleanable.clean();
+	}
+
+	/**
+	 * Returns a new off-heap picture, which the caller should close.
+	 */
+	@Override
+	Picture blank(int width, int height) {
+		return new OffHeapPicture(width, height);
+	}
+
+	/**
+	 * Returns a new off-heap picture, since a {@link GrayPicture} of the same
+	 * size might not fit on the heap.
+	 */
+	@Override
+	Picture blankGray(int width, int height) {
+		return blank(width, height);
+	}
+
+	/**
+	 * Returns a new off-heap picture, since a {@link BinaryPicture} of the same
+	 * size might not fit on the heap.
+	 */
+	@Override
+	Picture blankBinary(int width, int height) {
+		return blank(width, height);
+	}
+
+	/**
+	 * Returns a copy of the pixels of this picture, since an off-heap picture
+	 * has no raster on the heap. Writes to the returned array do not change the
+	 * picture.
+	 *
+	 * @return the pixels of this picture, row by row
+	 * @throws IllegalArgumentException if the picture has too many pixels for
+	 *                                  an array
+	 */
+	@Override
+	public int[] pixels() {
+		return copyPixels();
+	}
+
+	@Override
+	public int getRGB(int col, int row) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		return segment.getAtIndex(PIXEL, index(col, row));
+	}
+
+	@Override
+	public void setRGB(int col, int row, int rgb) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		beforeWrite();
+		segment.setAtIndex(PIXEL, index(col, row), rgb & 0xFFFFFF);
+	}
+
+	@Override
+	public void getRegion(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		validateRegion(col, row, w, h, dst, offset, scan);
+		for (int y = 0; y < h; y++) {
+			MemorySegment.copy(segment, PIXEL, PIXEL.byteSize() * index(col, row + y), dst, offset + y * scan, w);
+		}
+	}
+
+	@Override
+	public void setRegion(int col, int row, int w, int h, int[] src, int offset, int scan) {
+		validateRegion(col, row, w, h, src, offset, scan);
+		beforeWrite();
+		for (int y = 0; y < h; y++) {
+			MemorySegment.copy(src, offset + y * scan, segment, PIXEL, PIXEL.byteSize() * index(col, row + y), w);
+		}
+	}
+
+	/**
+	 * Fills the first row of the rectangle pixel by pixel and copies it to the
+	 * other rows within the segment.
+	 */
+	@Override
+	public void fillRegion(int col, int row, int w, int h, int rgb) {
+		validateRectangle(col, row, w, h);
+		if (w == 0 || h == 0)
+			return;
+		beforeWrite();
+		long first = index(col, row);
+		for (long i = first; i < first + w; i++) {
+			segment.setAtIndex(PIXEL, i, rgb & 0xFFFFFF);
+		}
+		long bytes = PIXEL.byteSize() * w;
+		for (int y = 1; y < h; y++) {
+			MemorySegment.copy(segment, PIXEL.byteSize() * first, segment, PIXEL.byteSize() * index(col, row + y),
+					bytes);
+		}
+	}
+
+	/**
+	 * Returns the index of pixel ({@code col}, {@code row}) in the segment.
+	 */
+	private long index(int col, int row) {
+		return (long) row * width() + col;
+	}
+
+	/**
+	 * Returns 0: the pixels are in native memory, not on the heap.
+	 */
+	@Override
+	long footprint() {
+		return 0;
+	}
+
+	/**
+	 * Returns an image whose pixels are the pixels of the segment, used only to
+	 * display, save or decode into this picture.
+	 */
+	@Override
+	BufferedImage image() {
+		DirectColorModel model = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+		WritableRaster raster = WritableRaster.createWritableRaster(
+				model.createCompatibleSampleModel(width(), height()), new SegmentBuffer(), null);
+		return new BufferedImage(model, raster, false, null);
+	}
+
+	/**
+	 * The pixels of the segment as a {@link DataBuffer}.
+	 */
+	private final class SegmentBuffer extends DataBuffer {
+
+		SegmentBuffer() {
+			super(DataBuffer.TYPE_INT, Math.multiplyExact(width(), height()));
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			return segment.getAtIndex(PIXEL, i);
+		}
+
+		@Override
+		public void setElem(int bank, int i, int val) {
+			segment.setAtIndex(PIXEL, i, val & 0xFFFFFF);
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package a2;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.io.File;
+import java.lang.ref.SoftReference;
 import java.net.URL;
+import java.util.List;
+import java.util.function.Supplier;
 
 public class A2 {
 	/**
@@ -10,10 +15,33 @@ public class A2 {
 	 */
 	private static Picture orig;
 	
+	/**
+	 * The original image at lower resolutions, for previews
+	 */
+	private static Pyramid pyramid;
+	
+	/**
+	 * The integral image of the original image, for blurs at any radius;
+	 * built by the first blur, and only softly reachable, so the collector
+	 * takes back its 16 bytes a pixel when the heap runs low
+	 */
+	private static SoftReference<BlurSession> blurs = new SoftReference<>(null);
+	
+	/**
+	 * The part of the computed image on screen when the operation was chosen,
+	 * which blurs compute first; null if none
+	 */
+	private static volatile Rectangle viewport;
+	
 	/**
 	 * The image viewer class
 	 */
 	private static A2Viewer viewer;
+
+	/**
+	 * Splits the image operations into tiles and runs them in parallel
+	 */
+	private static volatile TileScheduler scheduler = TileScheduler.common();
 	
 	/**
 	 * Returns a 300x200 image containing the Queen's flag (without the crown).
@@ -21,48 +49,33 @@ public class A2 {
 	 * @return an image containing the Queen's flag
 	 */
 	public static Picture flag() {
-		Picture img = new Picture(300, 200);
-		int w = img.width();
-		int h = img.height();
-
-		// set the pixels in the blue stripe
-		Color blue = new Color(0, 48, 95);
-		for (int col = 0; col < w / 3; col++) {
-		    for (int row = 0; row < h - 1; row++) {
-		        img.set(col, row, blue);
-		    }
-		}
+		return OperationMetrics.measure("flag", null, () -> {
+			Picture img = new Picture(300, 200);
+			int w = img.width();
+			int h = img.height();
 
-		// set the pixels in the yellow stripe
-		Color yellow = new Color(255, 189, 17);
-		for (int col = w / 3; col < 2 * w / 3; col++) {
-		    for (int row = 0; row < h - 1; row++) {
-		        img.set(col, row, yellow);
-		    }
-		}
+			// set the pixels in the blue stripe
+			int blue = 0x00305F;
+			img.fillRegion(0, 0, w / 3, h - 1, blue);
 
-		// set the pixels in the red stripe
-		Color red = new Color(185, 17, 55);
-		for (int col = 2 * w / 3; col < w; col++) {
-		    for (int row = 0; row < h - 1; row++) {
-		        img.set(col, row, red);
-		    }
-		}
-		return img;
+			// set the pixels in the yellow stripe
+			int yellow = 0xFFBD11;
+			img.fillRegion(w / 3, 0, 2 * w / 3 - w / 3, h - 1, yellow);
+
+			// set the pixels in the red stripe
+			int red = 0xB91137;
+			img.fillRegion(2 * w / 3, 0, w - 2 * w / 3, h - 1, red);
+			return img;
+		});
 	}
 	/**
 	 * Copies the pixels of the input image p into a new image and returns the new image.
+	 * The copy is a copy-on-write view of p (see {@link Picture#copyView()}).
 	 * @param p - original image
 	 * @return result - copy of image
 	 */
 	public static Picture copy(Picture p) {
-		Picture result = new Picture(p.width(), p.height());
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < result.height(); row++) {
-				result.set(col, row, p.get(col, row));
-			}
-		}
-		return result;
+		return OperationMetrics.measure("copy", p, () -> p.copyView());
 	}
 	
 	/**
@@ -72,22 +85,39 @@ public class A2 {
 	 * @return result - image with border
 	 */
 	public static Picture border(Picture p, int thickness) {
-		Picture result = copy(p);
-
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < thickness; row ++) {
-				result.set(col, row, Color.BLUE);
-				result.set(col, row + result.height() - thickness, Color.BLUE);
+		return OperationMetrics.measure("border(" + thickness + ")", p, () -> {
+			int w = p.width();
+			int h = p.height();
+			if (thickness > w || thickness > h) {
+				throw new IllegalArgumentException("border thickness larger than image: " + thickness);
 			}
-		} 
+			int t = Math.max(thickness, 0);
+			int blue = Color.BLUE.getRGB() & 0xFFFFFF;
+			Picture result = p.blank(w, h);
 		
-		for (int row = 0; row < result.height(); row++) {
-			for (int col = 0; col < thickness; col++) {
-				result.set(col, row, Color.BLUE);
-				result.set(col + result.width() - thickness, row, Color.BLUE);
+			// copy the inside of the border in parallel tiles, a row at a time
+			Rectangle inside = new Rectangle(t, t, w - 2 * t, h - 2 * t);
+			if (!inside.isEmpty()) {
+				A2.scheduler.run(p, result, (Window src, Window dst) -> {
+					Rectangle part = inside.intersection(new Rectangle(dst.col, dst.row, dst.width, dst.height));
+					if (part.isEmpty()) {
+						return;
+					}
+					for (int row = part.y; row < part.y + part.height; row++) {
+						System.arraycopy(src.data, src.index(part.x, row), dst.data, dst.index(part.x, row), part.width);
+					}
+				});
 			}
-		}
-		return result;
+		
+			// paint the four sides of the border
+			result.fillRegion(0, 0, w, t, blue);
+			result.fillRegion(0, h - t, w, t, blue);
+			if (h > 2 * t) {
+				result.fillRegion(0, t, t, h - 2 * t, blue);
+				result.fillRegion(w - t, t, t, h - 2 * t, blue);
+			}
+			return result;
+		});
 	}
 	
 	/**
@@ -96,20 +126,23 @@ public class A2 {
 	 * @return result - grayscale image
 	 */
 	public static Picture toGray(Picture p) {
-		Picture result = new Picture(p.width(), p.height());
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < result.height(); row++) {
-
-				int red = p.get(col, row).getRed();
-				int green = p.get(col, row).getGreen();
-				int blue = p.get(col, row).getBlue();
+		return OperationMetrics.measure("toGray", p, () -> A2.toGray(p, p.blank(p.width(), p.height())));
+	}
 
-				int grayValue = (int)Math.round(0.2989 * red + 0.5870 * green + 0.1140 * blue);
-				Color gray = new Color(grayValue, grayValue, grayValue);
+	/**
+	 * Computes the grayscale version of an image, kept in a quarter of the
+	 * memory. The result is a {@link GrayPicture}, unless p is a
+	 * {@link MappedPicture}, so its {@link Picture#pixels()} returns a copy.
+	 * @param p - original image
+	 * @return result - grayscale image
+	 */
+	public static Picture toGrayCompact(Picture p) {
+		return OperationMetrics.measure("toGrayCompact", p,
+				() -> A2.toGray(p, p.blankGray(p.width(), p.height())));
+	}
 
-				result.set(col, row, gray);
-			}
-		}
+	private static Picture toGray(Picture p, Picture result) {
+		A2.scheduler.run(p, result, ColorKernels.GRAY);
 		return result;
 	}
 	
@@ -119,49 +152,115 @@ public class A2 {
 	 * @return result - binary image
 	 */
 	public static Picture toBinary(Picture p) {
-		Picture result = new Picture(p.width(), p.height());
-		Picture grayscale = toGray(p);
-		for (int col = 0; col < grayscale.width(); col++) {
-			for (int row = 0; row < grayscale.height(); row++) {
-				int grayValue = grayscale.get(col, row).getRed();
-				if (grayValue < 128) {
-					result.set(col, row, Color.BLACK);
-				} else {
-					result.set(col, row, Color.WHITE);
-				}
-			}
+		return OperationMetrics.measure("toBinary", p, () -> A2.toBinary(p, p.blank(p.width(), p.height())));
+	}
+
+	/**
+	 * Computes the binary version of an image, kept in a thirty-second of the
+	 * memory. The result is a {@link BinaryPicture}, unless p is a
+	 * {@link MappedPicture}, so its {@link Picture#pixels()} returns a copy.
+	 * @param p - original image
+	 * @return result - binary image
+	 */
+	public static Picture toBinaryCompact(Picture p) {
+		return OperationMetrics.measure("toBinaryCompact", p,
+				() -> A2.toBinary(p, p.blankBinary(p.width(), p.height())));
+	}
+
+	private static Picture toBinary(Picture p, Picture result) {
+		A2.scheduler.run(p, result, ColorKernels.BINARY);
+		return result;
+	}
+
+	/**
+	 * Computes the binary version of an image with a given threshold: pixels
+	 * whose gray level is below the threshold become black, the others white.
+	 * {@link #toBinary(Picture)} uses a threshold of 128.
+	 * @param p - original image
+	 * @param threshold - the first gray level that becomes white, from 0 to 256
+	 * @return result - binary image
+	 */
+	public static Picture toBinary(Picture p, int threshold) {
+		return OperationMetrics.measure("toBinary(" + threshold + ")", p,
+				() -> A2.toBinary(p, threshold, p.blank(p.width(), p.height())));
+	}
+
+	/**
+	 * Computes the binary version of an image with a given threshold, kept in
+	 * a thirty-second of the memory as by {@link #toBinaryCompact(Picture)}.
+	 * @param p - original image
+	 * @param threshold - the first gray level that becomes white, from 0 to 256
+	 * @return result - binary image
+	 */
+	public static Picture toBinaryCompact(Picture p, int threshold) {
+		return OperationMetrics.measure("toBinaryCompact(" + threshold + ")", p,
+				() -> A2.toBinary(p, threshold, p.blankBinary(p.width(), p.height())));
+	}
+
+	private static Picture toBinary(Picture p, int threshold, Picture result) {
+		if (threshold < 0 || threshold > 256) {
+			throw new IllegalArgumentException("threshold must be from 0 to 256: " + threshold);
 		}
+		A2.scheduler.run(p, result, Threshold.global(threshold));
 		return result;
 	}
+
+	/**
+	 * Computes Otsu's threshold of an image, the gray level that best separates
+	 * its dark pixels from its light ones. The histogram is counted in
+	 * parallel; see {@link Threshold}.
+	 * @param p - original image
+	 * @return result - the threshold, for {@link #toBinary(Picture, int)}
+	 */
+	public static int otsuThreshold(Picture p) {
+		return Threshold.otsu(Threshold.histogram(p));
+	}
+
+	/**
+	 * Computes the binary version of an image with Otsu's threshold, which suits
+	 * images that are darker or lighter overall than the fixed threshold of
+	 * {@link #toBinary(Picture)} expects.
+	 * @param p - original image
+	 * @return result - binary image
+	 */
+	public static Picture toBinaryOtsu(Picture p) {
+		return OperationMetrics.measure("toBinaryOtsu", p, () -> A2.toBinary(p, A2.otsuThreshold(p)));
+	}
+
+	/**
+	 * Computes the binary version of an image with a local threshold: a pixel
+	 * becomes black if it is more than percent percent darker than the mean of
+	 * the box of the given radius around it. Suits scanned documents lit
+	 * unevenly. The time taken does not depend on the radius; see
+	 * {@link Threshold}.
+	 * @param p - original image
+	 * @param radius - radius of the box
+	 * @param percent - how much darker than its surroundings a pixel must be
+	 * @return result - binary image
+	 */
+	public static Picture toBinaryAdaptive(Picture p, int radius, double percent) {
+		return OperationMetrics.measure("toBinaryAdaptive(" + radius + ", " + percent + ")", p,
+				() -> Threshold.adaptive(p, p.blank(p.width(), p.height()), radius, percent));
+	}
 	
 	/**
 	 * Computes the vertically flipped version of an image.
+	 * The result is a view of p (see {@link Picture#flipVerticalView()}).
 	 * @param p - original image
 	 * @return result - flipped image
 	 */
 	public static Picture flipVertical(Picture p) {
-		Picture result = new Picture(p.width(), p.height());
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < result.height(); row++) {
-				result.set(result.width() - col - 1, row, p.get(col, row));
-			}
-		}
-		return result;
+		return OperationMetrics.measure("flipVertical", p, () -> p.flipVerticalView());
 	}
 
 	/**
 	 * Computes the 90 degree rotated to the right version of an image.
+	 * The result is a view of p (see {@link Picture#rotateView(int)}).
 	 * @param p - original image
 	 * @return result - rotated image
 	 */
 	public static Picture rotateRight(Picture p) {
-		Picture result = new Picture(p.height(), p.width());
-		for (int col = 0; col < p.width(); col++) {
-			for (int row = 0; row < p.height(); row++) {
-				result.set(result.width() - row - 1, col, p.get(col, row));
-			}
-		}
-		return result;
+		return OperationMetrics.measure("rotateRight", p, () -> p.rotateView(90));
 	}
 	
 	/**
@@ -170,41 +269,76 @@ public class A2 {
 	 * @return result - image with reduced red-eye
 	 */
 	public static Picture redEye(Picture p) {
-		Picture result = copy(p);
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < result.height(); row++) {
-				
-				double red = p.get(col, row).getRed(); // Find rgb values for pixel.
-				double green = p.get(col, row).getGreen();
-				double blue = p.get(col, row).getBlue();
-
-				double redIntensity = red / ((green + blue) / 2); // Determine how red the pixel is.
-				double RED_FILTER = 2.5;
-
-				if (redIntensity > RED_FILTER) { // Only change pixels greater than a certain intensity.
-					result.set(col, row, Color.BLACK);
-				}
-			}
-		}
-		return result;
+		return OperationMetrics.measure("redEye", p, () -> {
+			Picture result = p.blank(p.width(), p.height());
+			A2.scheduler.run(p, result, ColorKernels.RED_EYE);
+			return result;
+		});
+	}
+
+	/**
+	 * Reduces the red-eye effect in an image, like {@link #redEye(Picture)}, but
+	 * only inside round, compact red regions such as pupils, so that other red
+	 * things in the image keep their color. Only the parts of the image around
+	 * such regions are repainted; see {@link RedEyeRegions}.
+	 * @param p - original image
+	 * @return result - image with reduced red-eye
+	 */
+	public static Picture redEyeRegions(Picture p) {
+		return OperationMetrics.measure("redEyeRegions", p, () -> RedEyeRegions.correct(p));
 	}
 	
 	/**
-	 * Blurs an image using a box blur filter of a specified radius.
+	 * Blurs an image using a box blur filter of a specified radius. The time
+	 * taken does not depend on the radius; see {@link BoxBlur}.
 	 * @param p - original image
 	 * @param radius - radius for boxblur
 	 * @return result - blurred image
 	 */
 	public static Picture blur(Picture p, int radius) {
-		Picture result = new Picture(p.width(), p.height());
-		for (int col = 0; col < result.width(); col++) {
-			for (int row = 0; row < result.height(); row++) {
-				result.set(col, row, boxAvg(p, radius, col, row));
+		return OperationMetrics.measure("blur(" + radius + ")", p, () -> {
+			Picture result = p.blank(p.width(), p.height());
+			BoxBlur.blur(p, result, radius, A2.scheduler);
+			return result;
+		});
+	}
+
+	/**
+	 * Blurs an image with an approximate Gaussian blur: three box blurs (see
+	 * {@link #blur(Picture, int)}) whose radii are chosen so that their combined
+	 * spread matches the standard deviation. The time taken does not depend on
+	 * sigma. Boxes are clipped to the image, as in {@link #blur(Picture, int)}.
+	 * Below sigma 2, where whole-pixel boxes are too coarse, the image is
+	 * convolved with the exact Gaussian instead (see {@link Convolution}), which
+	 * is just as fast for such small kernels.
+	 *
+	 * <p>
+	 * Measured against an exact Gaussian (weights computed in double precision
+	 * out to 4 sigma) on the sample images, away from the edges, a channel
+	 * differs by at most 9 levels at sigma 2, and at most 4 levels for sigma
+	 * from 3 to 20 (at most 1 level below sigma 2, from the exact kernel being
+	 * cut off at 3 sigma); the mean difference is below 0.25 levels. Most of the
+	 * difference comes from the box sizes being whole numbers, and each pass
+	 * rounding its result.
+	 * @param p - original image
+	 * @param sigma - standard deviation of the Gaussian, in pixels
+	 * @return result - blurred image
+	 */
+	public static Picture gaussianBlur(Picture p, double sigma) {
+		return OperationMetrics.measure("gaussianBlur(" + sigma + ")", p, () -> {
+			if (sigma > 0 && sigma < 2) {
+				return new Convolution(Kernel.gaussian(sigma), EdgeMode.MIRROR).apply(p);
 			}
-		}
-		return result;
+			Picture result = p;
+			for (int radius : BoxBlur.gaussianRadii(sigma, 3)) {
+				Picture pass = p.blank(p.width(), p.height());
+				BoxBlur.blur(result, pass, radius, A2.scheduler);
+				result = pass;
+			}
+			return result;
+		});
 	}
-	
+
 	/**
 	 * Computes average color of box with certain radius around a pixel.
 	 * @param p - original image
@@ -214,111 +348,284 @@ public class A2 {
 	 * @return result - average color of block
 	 */
 	public static Color boxAvg(Picture p, int radius, int col, int row) {
+		return new Color(boxAvgRGB(p, radius, col, row));
+	}
+
+	/**
+	 * Computes average color of box with certain radius around a pixel, clipping
+	 * the box to the image, as a packed RGB {@code int}.
+	 * @param p - original image
+	 * @param radius - radius for boxblur
+	 * @param col - centre of box column
+	 * @param row - centre of box row
+	 * @return result - average color of block
+	 */
+	static int boxAvgRGB(Picture p, int radius, int col, int row) {
+		int col0 = Math.max(col - radius, 0);
+		int col1 = Math.min(col + radius, p.width() - 1);
+		int row0 = Math.max(row - radius, 0);
+		int row1 = Math.min(row + radius, p.height() - 1);
+		int[] box = new int[(col1 - col0 + 1) * (row1 - row0 + 1)];
+		p.getRegion(col0, row0, col1 - col0 + 1, row1 - row0 + 1, box, 0, col1 - col0 + 1);
 		int red = 0;
 		int green = 0;
 		int blue = 0;
-		double counter = 0;
-		for (int boxCol = col - radius; boxCol < col + radius + 1 && boxCol < p.width(); boxCol++) {
-			for (int boxRow = row - radius; boxRow < row + radius + 1 && boxRow < p.height(); boxRow++) {
-				if (boxCol < 0) {
-					boxCol = 0;
-				}
-				if (boxRow < 0) {
-					boxRow = 0;
-				}
-				red += p.get(boxCol, boxRow).getRed();
-				green += p.get(boxCol, boxRow).getGreen();
-				blue += p.get(boxCol, boxRow).getBlue();
-				counter ++;
-			}
+		for (int rgb : box) {
+			red += (rgb >> 16) & 0xFF;
+			green += (rgb >> 8) & 0xFF;
+			blue += rgb & 0xFF;
 		}
-		
-		red = (int)Math.round(red/counter);
-		green = (int)Math.round(green/counter);
-		blue = (int)Math.round(blue/counter);
-		
-		Color result = new Color(red, green, blue);
-		return result;
+		int counter = box.length;
+		return (BoxBlur.roundDiv(red, counter) << 16) | (BoxBlur.roundDiv(green, counter) << 8)
+				| BoxBlur.roundDiv(blue, counter);
+	}
+
+	/**
+	 * Returns the gray level of a packed RGB pixel, weighting the components as
+	 * {@link #toGray(Picture)} does.
+	 * @param rgb - packed RGB pixel
+	 * @return gray level between 0 and 255
+	 */
+	static int grayValue(int rgb) {
+		int red = (rgb >> 16) & 0xFF;
+		int green = (rgb >> 8) & 0xFF;
+		int blue = rgb & 0xFF;
+		return (int)Math.round(0.2989 * red + 0.5870 * green + 0.1140 * blue);
+	}
+
+	/**
+	 * Returns whether a packed RGB pixel is red enough to be treated as red-eye,
+	 * i.e. red / ((green + blue) / 2) &gt; 2.5. The test is done in integers as
+	 * 4 * red &gt; 5 * (green + blue), which gives the same answer for every pixel
+	 * including green + blue == 0.
+	 * @param rgb - packed RGB pixel
+	 * @return true if the pixel should be painted black
+	 */
+	static boolean isRedEye(int rgb) {
+		int red = (rgb >> 16) & 0xFF;
+		int green = (rgb >> 8) & 0xFF;
+		int blue = rgb & 0xFF;
+		return 4 * red > 5 * (green + blue);
+	}
+
+	// scalar rows, used when the vector kernels are not available (see ColorKernels)
+	static void grayRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		for (int i = 0; i < length; i++) {
+			int grayValue = grayValue(src[srcPos + i]);
+			dst[dstPos + i] = (grayValue << 16) | (grayValue << 8) | grayValue;
+		}
+	}
+
+	static void binaryRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = grayValue(src[srcPos + i]) < 128 ? 0x000000 : 0xFFFFFF;
+		}
+	}
+
+	static void redEyeRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		for (int i = 0; i < length; i++) {
+			int rgb = src[srcPos + i];
+			dst[dstPos + i] = isRedEye(rgb) ? 0x000000 : rgb; // Only change pixels greater than a certain intensity.
+		}
+	}
+
+	/**
+	 * Returns a length of n pixels at full resolution, measured at a
+	 * resolution scale times as fine.
+	 */
+	private static int scaled(int n, double scale) {
+		return (int) Math.round(n * scale);
+	}
+
+	/**
+	 * Sets the scheduler used to run the image operations in parallel.
+	 * 
+	 * @param scheduler the scheduler; see {@link TileScheduler#common()} for the default
+	 */
+	public static void setScheduler(TileScheduler scheduler) {
+		if (scheduler == null) {
+			throw new IllegalArgumentException("scheduler argument is null");
+		}
+		A2.scheduler = scheduler;
+	}
+
+	/**
+	 * Returns the scheduler used to run the image operations in parallel.
+	 * 
+	 * @return the scheduler
+	 */
+	public static TileScheduler getScheduler() {
+		return A2.scheduler;
 	}
 	
 	/**
 	 * A2Viewer class calls this method when a menu item is selected.
-	 * This method computes a new image and then asks the viewer to
-	 * display the computed image.
+	 * This method asks the viewer to compute a new image in the background
+	 * and then display it (see {@link A2Viewer#compute}). Results are kept in
+	 * {@link ResultCache#shared()}, so choosing an operation again is quick.
+	 * If the original image is larger than the viewer can show, the
+	 * operation is first applied to the level of its {@link Pyramid} that
+	 * fits the viewer, which is shown while the full image is computed.
+	 * The flag needs no original image; the other operations do nothing
+	 * until one is loaded.
 	 * 
 	 * @param op the operation selected in the viewer
 	 */
 	public static void processImage(String op) {
+		if (!A2.OPERATIONS.contains(op)) {
+			return;
+		}
+		if (op.equals(A2Viewer.FLAG)) {
+			// needs no image, and is made from scratch, so neither cached nor previewed
+			A2.viewer.compute(op, A2::flag, null, 1);
+			return;
+		}
+		Picture p = A2.orig;
+		Pyramid pyramid = A2.pyramid;
+		if (p == null || pyramid == null) {
+			// no image loaded yet
+			return;
+		}
+		A2.viewport = A2.viewer.visibleArea();
+		Dimension display = A2.viewer.displaySize();
+		int level = pyramid.levelFor(display.width, display.height);
+		Supplier<Picture> preview = null;
+		if (level > 0) {
+			// no preview if the full result is ready
+			preview = () -> ResultCache.shared().contains(p, op) ? null
+					: A2.apply(op, pyramid.level(level), 1.0 / (1 << level));
+		}
+		A2.viewer.compute(op, () -> ResultCache.shared().apply(op, p), preview, 1 << level);
+	}
+
+	/**
+	 * The operations known to {@link #apply(String, Picture)}, in menu order.
+	 */
+	static final List<String> OPERATIONS = List.of(A2Viewer.FLAG, A2Viewer.COPY, A2Viewer.BORDER_1,
+			A2Viewer.BORDER_5, A2Viewer.BORDER_10, A2Viewer.TO_GRAY, A2Viewer.TO_BINARY, A2Viewer.FLIP_VERTICAL,
+			A2Viewer.ROTATE_RIGHT, A2Viewer.RED_EYE, A2Viewer.BLUR_1, A2Viewer.BLUR_3, A2Viewer.BLUR_5,
+			A2Viewer.GAUSSIAN_5, A2Viewer.RED_EYE_REGIONS, A2Viewer.TO_BINARY_OTSU, A2Viewer.TO_BINARY_ADAPTIVE);
+
+	/**
+	 * Computes the result of a viewer operation on an image. Used by the viewer
+	 * and by {@link Batch}. The operation is measured as a whole, and the
+	 * operations of this class it calls are not measured again; see
+	 * {@link OperationMetrics}.
+	 * 
+	 * @param op - the operation, one of {@link #OPERATIONS}
+	 * @param p - original image
+	 * @return result - the new image, or null if op is not an image operation
+	 */
+	static Picture apply(String op, Picture p) {
+		return A2.apply(op, p, 1);
+	}
+
+	/**
+	 * Computes the result of a viewer operation on a scaled-down version of an
+	 * image, such as a level of a {@link Pyramid}, with border widths and blur
+	 * radii scaled to match, so that the result looks like a scaled-down
+	 * version of the full result. The operation is measured under the name
+	 * op followed by " preview", unless scale is 1.
+	 * 
+	 * @param op - the operation, one of {@link #OPERATIONS}
+	 * @param p - original image, scaled down
+	 * @param scale - width of p divided by the width of the full image
+	 * @return result - the new image, or null if op is not an image operation
+	 */
+	static Picture apply(String op, Picture p, double scale) {
+		String name = scale == 1 ? op : op + " preview";
+		return OperationMetrics.measure(name, p, () -> A2.compute(op, p, scale));
+	}
+
+	/**
+	 * Computes the result of a viewer operation, measured by the caller.
+	 */
+	private static Picture compute(String op, Picture p, double scale) {
 		
 		switch (op) {
 		case A2Viewer.FLAG:
 			// create a new image by copying the original image
-			Picture p = A2.flag();
-			A2.viewer.setComputed(p);
-			break;
+			return A2.flag();
 		case A2Viewer.COPY:
 			// create a new image by copying the original image
-			p = A2.copy(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.copy(p);
 		case A2Viewer.BORDER_1:
 			// create a new image by adding a border of width 1 to the original image
-			p = A2.border(A2.orig, 1);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.border(p, Math.max(1, A2.scaled(1, scale)));
 		case A2Viewer.BORDER_5:
 			// create a new image by adding a border of width 5 the original image
-			p = A2.border(A2.orig, 5);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.border(p, Math.max(1, A2.scaled(5, scale)));
 		case A2Viewer.BORDER_10:
 			// create a new image by adding a border of width 10  the original image
-			p = A2.border(A2.orig, 10);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.border(p, Math.max(1, A2.scaled(10, scale)));
 		case A2Viewer.TO_GRAY:
 			// create a new image by converting the original image to grayscale
-			p = A2.toGray(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.toGrayCompact(p);
 		case A2Viewer.TO_BINARY:
 			// create a new image by converting the original image to black and white
-			p = A2.toBinary(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.toBinaryCompact(p);
+		case A2Viewer.TO_BINARY_OTSU:
+			// create a new image by converting the original image to black and white with Otsu's threshold
+			return A2.toBinaryCompact(p, A2.otsuThreshold(p));
+		case A2Viewer.TO_BINARY_ADAPTIVE:
+			// create a new image by converting the original image to black and white with a local threshold
+			return Threshold.adaptive(p, p.blankBinary(p.width(), p.height()), Math.max(1, A2.scaled(15, scale)), 15);
 		case A2Viewer.FLIP_VERTICAL:
 			// create a new image by flipping the original image vertically
-			p = A2.flipVertical(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.flipVertical(p);
 		case A2Viewer.ROTATE_RIGHT:
 			// create a new image by rotating the original image to the right by 90 degrees
-			p = A2.rotateRight(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.rotateRight(p);
 		case A2Viewer.RED_EYE:
 			// create a new image by removing the redeye effect in the original image
-			p = A2.redEye(A2.orig);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.redEye(p);
 		case A2Viewer.BLUR_1:
 			// create a new image by blurring the original image with a box blur of radius 1
-			p = A2.blur(A2.orig, 1);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.viewerBlur(p, A2.scaled(1, scale));
 		case A2Viewer.BLUR_3:
 			// create a new image by blurring the original image with a box blur of radius 3
-			p = A2.blur(A2.orig, 3);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.viewerBlur(p, A2.scaled(3, scale));
 		case A2Viewer.BLUR_5:
 			// create a new image by blurring the original image with a box blur of radius 5
-			p = A2.blur(A2.orig, 5);
-			A2.viewer.setComputed(p);
-			break;
+			return A2.viewerBlur(p, A2.scaled(5, scale));
+		case A2Viewer.GAUSSIAN_5:
+			// create a new image by blurring the original image with a Gaussian blur of sigma 5
+			return A2.gaussianBlur(p, 5 * scale);
+		case A2Viewer.RED_EYE_REGIONS:
+			// create a new image by removing the redeye effect in round red regions only
+			return A2.redEyeRegions(p);
 		default:
-			// do nothing
+			// not an image operation
+			return null;
+		}
+	}
+	
+	/**
+	 * Blurs for the viewer: the original image is blurred by a
+	 * {@link BlurSession}, so that trying one radius after another reads the
+	 * same integral image instead of blurring from scratch each time. The part
+	 * of the image on screen is blurred first, so it is shown first. Other
+	 * images, such as previews, and originals too large for a session to be a
+	 * small part of the heap, are blurred by {@link #blur(Picture, int)}.
+	 */
+	private static Picture viewerBlur(Picture p, int radius) {
+		// a session is only worth keeping while it is a small part of the heap
+		if (p != A2.orig || 16L * p.width() * p.height() > Runtime.getRuntime().maxMemory() / 8) {
+			return A2.blur(p, radius);
+		}
+		BlurSession session;
+		synchronized (A2.class) {
+			session = A2.blurs.get();
+			if (session == null) {
+				session = new BlurSession(p);
+				A2.blurs = new SoftReference<>(session);
+			}
+		}
+		Rectangle visible = A2.viewport;
+		if (visible != null) {
+			session.blur(radius, visible); // the part on screen first
 		}
+		return session.blur(radius);
 	}
 	
 	/**
@@ -339,6 +646,7 @@ public class A2 {
 		
 		
 		A2.orig = new Picture(new File(img.getFile()));
+		A2.pyramid = new Pyramid(A2.orig);
 		A2.viewer.setOriginal(A2.orig);
 	}
 
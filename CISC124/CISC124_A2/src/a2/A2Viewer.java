@@ -1,11 +1,26 @@
 package a2;
 
+import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.net.URL;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
+import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -14,6 +29,9 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 public class A2Viewer extends JFrame implements ActionListener {
 	
@@ -26,6 +44,8 @@ public class A2Viewer extends JFrame implements ActionListener {
 	public static final String BORDER_10 = "BORDER_10";
 	public static final String TO_GRAY = "TO_GRAY";
 	public static final String TO_BINARY = "TO_BINARY";
+	public static final String TO_BINARY_OTSU = "TO_BINARY_OTSU";
+	public static final String TO_BINARY_ADAPTIVE = "TO_BINARY_ADAPTIVE";
 	public static final String FLIP_HORIZONTAL = "FLIP_HORIZONTAL";
 	public static final String FLIP_VERTICAL = "FLIP_VERTICAL";
 	public static final String ROTATE_RIGHT = "ROTATE_RIGHT";
@@ -33,6 +53,8 @@ public class A2Viewer extends JFrame implements ActionListener {
 	public static final String BLUR_1 = "BLUR_1";
 	public static final String BLUR_3 = "BLUR_3";
 	public static final String BLUR_5 = "BLUR_5";
+	public static final String GAUSSIAN_5 = "GAUSSIAN_5";
+	public static final String RED_EYE_REGIONS = "RED_EYE_REGIONS";
 	public static final String HALF_SIZE = "HALF_SIZE";
 	public static final String EXIT = "EXIT";
 
@@ -40,9 +62,23 @@ public class A2Viewer extends JFrame implements ActionListener {
 	JLabel compImg;  // computed image
 	ImageIcon noPictureIcon;
 	
+	JProgressBar progress;  // tiles of the computed image done so far
+	JLabel status;  // metrics of the last operation
+	
 	JMenuBar menuBar;
 	JMenu menu;
 	
+	// operations run here, one at a time, so the event thread is never blocked
+	private final transient ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "A2Viewer worker");
+		t.setDaemon(true);
+		return t;
+	});
+	private transient TileJob job;  // the operation being computed; used on the event thread only
+	private String jobName;  // its name
+	private transient Progressive progressive;  // its finished tiles
+	private transient Timer refresh;  // shows the finished tiles; made by listen()
+	
 	public A2Viewer() {
 		super("Assignment 2");
 		
@@ -62,6 +98,10 @@ public class A2Viewer extends JFrame implements ActionListener {
 		this.compImg = new JLabel();
 		this.compImg.setIcon(this.noPictureIcon);
 		
+		this.progress = new JProgressBar();
+		this.progress.setStringPainted(true);
+		this.progress.setString("");
+		
 		origPanel.setLayout(new BoxLayout(origPanel, BoxLayout.PAGE_AXIS));
 		origPanel.add(new JLabel("Original image"));
 		origPanel.add(this.origImg);
@@ -69,12 +109,19 @@ public class A2Viewer extends JFrame implements ActionListener {
 		compPanel.setLayout(new BoxLayout(compPanel, BoxLayout.PAGE_AXIS));
 		compPanel.add(new JLabel("Computed image"));
 		compPanel.add(this.compImg);
+		compPanel.add(this.progress);
+		
+		this.status = new JLabel(" ");
+		this.status.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
 		
 		contentPanel.setLayout(new FlowLayout());
 		contentPanel.setPreferredSize(new Dimension(850, 450));
 		contentPanel.add(origPanel);
 		contentPanel.add(compPanel);
-		this.setContentPane(contentPanel);
+		JPanel framePanel = new JPanel(new BorderLayout());
+		framePanel.add(contentPanel, BorderLayout.CENTER);
+		framePanel.add(this.status, BorderLayout.PAGE_END);
+		this.setContentPane(framePanel);
 		this.pack();
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 	}
@@ -91,12 +138,16 @@ public class A2Viewer extends JFrame implements ActionListener {
 		this.addMenuItem("Add border, width = 10", A2Viewer.BORDER_10);
 		this.addMenuItem("Grayscale", A2Viewer.TO_GRAY);
 		this.addMenuItem("Binary", A2Viewer.TO_BINARY);
+		this.addMenuItem("Binary, Otsu threshold", A2Viewer.TO_BINARY_OTSU);
+		this.addMenuItem("Binary, adaptive threshold", A2Viewer.TO_BINARY_ADAPTIVE);
 		this.addMenuItem("Flip vertical", A2Viewer.FLIP_VERTICAL);
 		this.addMenuItem("Rotate right", A2Viewer.ROTATE_RIGHT);
 		this.addMenuItem("Remove red eye", A2Viewer.RED_EYE);
+		this.addMenuItem("Remove red eye, eyes only", A2Viewer.RED_EYE_REGIONS);
 		this.addMenuItem("Blur, radius = 1", A2Viewer.BLUR_1);
 		this.addMenuItem("Blur, radius = 3", A2Viewer.BLUR_3);
 		this.addMenuItem("Blur, radius = 5", A2Viewer.BLUR_5);
+		this.addMenuItem("Gaussian blur, sigma = 5", A2Viewer.GAUSSIAN_5);
 		
 		this.menu.addSeparator();
 		
@@ -132,6 +183,291 @@ public class A2Viewer extends JFrame implements ActionListener {
 		this.repaint();
 	}
 
+	/**
+	 * Returns the largest size at which the viewer can show a computed image:
+	 * half the width of the screen, and its height.
+	 * 
+	 * @return the size of the display for a computed image
+	 */
+	public Dimension displaySize() {
+		Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+		return new Dimension(screen.width / 2, screen.height);
+	}
+
+	/**
+	 * Returns the part of the computed image that is on screen, in its pixels,
+	 * or null if none of it is.
+	 * 
+	 * @return the visible part of the computed image, or null
+	 */
+	public Rectangle visibleArea() {
+		Rectangle r = this.compImg.getVisibleRect();
+		return r.isEmpty() ? null : r;
+	}
+
+	/**
+	 * Computes an image in the background and then displays it, cancelling
+	 * the image being computed, if any. Until the image is done, its finished
+	 * tiles are shown as they arrive, at most 60 times a second, with the
+	 * number of tiles done so far. A null image leaves the display as it is.
+	 * 
+	 * @param name the name of the operation, shown with its progress
+	 * @param operation computes the image
+	 */
+	public void compute(String name, Supplier<Picture> operation) {
+		this.compute(name, operation, null, 1);
+	}
+
+	/**
+	 * Computes an image in the background and then displays it, as
+	 * {@link #compute(String, Supplier)} does, but first computes and shows a
+	 * preview: a version of the image {@code scale} times smaller, enlarged
+	 * to the size of the image. The finished tiles of the image are then
+	 * drawn over the preview.
+	 * 
+	 * @param name the name of the operation, shown with its progress
+	 * @param operation computes the image
+	 * @param preview computes the preview, or returns null for no preview;
+	 *        may be null
+	 * @param scale how many times smaller the preview is
+	 */
+	public void compute(String name, Supplier<Picture> operation, Supplier<Picture> preview, int scale) {
+		if (this.job != null) {
+			this.job.cancel();
+		}
+		Progressive progressive = new Progressive();
+		TileJob job = new TileJob(progressive);
+		this.job = job;
+		this.jobName = name;
+		this.progressive = progressive;
+		this.progress.setValue(0);
+		this.progress.setString(name);
+		if (this.refresh == null) {
+			this.listen();
+		}
+		this.refresh.start();
+		this.worker.execute(() -> {
+			if (preview != null) {
+				this.preview(job, progressive, preview, scale);
+			}
+			Picture p;
+			try {
+				p = job.run(() -> {
+					Picture result = operation.get();
+					if (result != null) {
+						// materialize a view here rather than on the event thread, as part of the job
+						result.image();
+					}
+					return result;
+				});
+			} catch (CancellationException e) {
+				return; // a newer operation was chosen
+			} catch (RuntimeException e) {
+				SwingUtilities.invokeLater(() -> this.fail(job, name, e));
+				return;
+			}
+			SwingUtilities.invokeLater(() -> this.finish(job, p, name));
+		});
+	}
+	
+	/**
+	 * Computes a preview on the worker thread and shows it.
+	 */
+	private void preview(TileJob job, Progressive progressive, Supplier<Picture> preview, int scale) {
+		Image image;
+		try {
+			if (job.isCancelled()) {
+				return;
+			}
+			Picture small = preview.get();
+			if (small == null || job.isCancelled()) {
+				return;
+			}
+			image = small.image();
+		} catch (RuntimeException e) {
+			return; // the full image reports the error
+		}
+		int width = image.getWidth(null) * scale;
+		int height = image.getHeight(null) * scale;
+		progressive.seed(image);
+		SwingUtilities.invokeLater(() -> {
+			if (job != this.job || this.progressive.started()) {
+				return;
+			}
+			this.showComputed(new ScaledIcon(image, width, height));
+		});
+	}
+
+	/**
+	 * Shows an icon as the computed image, resizing the window if needed.
+	 */
+	private void showComputed(ImageIcon icon) {
+		ImageIcon old = (ImageIcon) this.compImg.getIcon();
+		boolean resized = old.getIconWidth() != icon.getIconWidth() || old.getIconHeight() != icon.getIconHeight();
+		this.compImg.setIcon(icon);
+		if (resized) {
+			this.pack();
+		}
+	}
+
+	/**
+	 * Displays the result of a job, unless a newer job has started.
+	 */
+	private void finish(TileJob job, Picture p, String status) {
+		if (job != this.job) {
+			return;
+		}
+		this.job = null;
+		this.progressive = null;
+		this.refresh.stop();
+		this.progress.setMaximum(Math.max(job.tiles(), 1));
+		this.progress.setValue(this.progress.getMaximum());
+		this.progress.setString(status);
+		if (p != null) {
+			this.setComputed(p);
+		}
+	}
+	
+	/**
+	 * Reports a job that failed in the status bar, unless a newer job has
+	 * started.
+	 */
+	private void fail(TileJob job, String name, RuntimeException e) {
+		if (job != this.job) {
+			return;
+		}
+		this.finish(job, null, name + " failed");
+		this.status.setText(name + " failed: " + e);
+	}
+	
+	/**
+	 * Registers the listeners of this viewer. This is done the first time an
+	 * image is computed rather than in the constructor, so that no listener
+	 * can see a viewer that is not fully constructed.
+	 */
+	private void listen() {
+		this.refresh = new Timer(1000 / 60, e -> this.refresh());
+		OperationMetrics.addListener(m -> SwingUtilities.invokeLater(() -> this.status.setText(m.toString())));
+	}
+	
+	/**
+	 * Shows the progress and the finished tiles of the current job.
+	 */
+	private void refresh() {
+		if (this.job == null) {
+			return;
+		}
+		int done = this.job.tilesDone();
+		int tiles = this.job.tiles();
+		this.progress.setMaximum(Math.max(tiles, 1));
+		this.progress.setValue(done);
+		this.progress.setString(this.jobName + ": " + done + " of " + tiles + " tiles");
+		BufferedImage image = this.progressive.changed();
+		if (image == null) {
+			return;
+		}
+		if (((ImageIcon) this.compImg.getIcon()).getImage() == image) {
+			this.compImg.repaint();
+		} else {
+			this.showComputed(new ImageIcon(image));
+		}
+	}
+
+	/**
+	 * An image drawn enlarged to a given size.
+	 */
+	private static final class ScaledIcon extends ImageIcon {
+		private static final long serialVersionUID = 124L;
+		
+		private final int width, height;
+		
+		ScaledIcon(Image image, int width, int height) {
+			super(image);
+			this.width = width;
+			this.height = height;
+		}
+		
+		@Override
+		public int getIconWidth() {
+			return this.width;
+		}
+		
+		@Override
+		public int getIconHeight() {
+			return this.height;
+		}
+		
+		@Override
+		public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+			Graphics2D g2 = (Graphics2D) g.create();
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(this.getImage(), x, y, this.width, this.height, c);
+			g2.dispose();
+		}
+	}
+	
+	/**
+	 * Copies the finished tiles of a job into an image for display.
+	 */
+	private static final class Progressive implements TileJob.Listener {
+		private Picture source;  // the picture whose tiles are shown
+		private BufferedImage image;
+		private int[] pixels;  // the raster of image
+		private volatile Image seed;  // a preview drawn under the first tiles
+		private volatile boolean changed;
+		
+		/**
+		 * Sets the preview that the image starts from.
+		 */
+		void seed(Image seed) {
+			this.seed = seed;
+		}
+		
+		/**
+		 * Returns whether a tile has been shown.
+		 */
+		synchronized boolean started() {
+			return this.image != null;
+		}
+		
+		@Override
+		public void tileDone(Picture dst, Rectangle tile) {
+			if (dst == null) {
+				return;
+			}
+			int[] pixels;
+			synchronized (this) {
+				if (dst != this.source) {
+					// a new result, such as the second pass of an operation
+					this.source = dst;
+					this.image = new BufferedImage(dst.width(), dst.height(), BufferedImage.TYPE_INT_RGB);
+					Image seed = this.seed;
+					if (seed != null) {
+						Graphics2D g = this.image.createGraphics();
+						g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+						g.drawImage(seed, 0, 0, dst.width(), dst.height(), null);
+						g.dispose();
+					}
+					this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+				}
+				pixels = this.pixels;
+			}
+			dst.getRegion(tile.x, tile.y, tile.width, tile.height, pixels, tile.y * dst.width() + tile.x, dst.width());
+			this.changed = true;
+		}
+		
+		/**
+		 * Returns the image if tiles were added to it since the last call, or null.
+		 */
+		synchronized BufferedImage changed() {
+			if (!this.changed) {
+				return null;
+			}
+			this.changed = false;
+			return this.image;
+		}
+	}
+
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		String cmd = e.getActionCommand();
@@ -0,0 +1,596 @@
+package a2;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Applies viewer operations to many images without a window.
+ *
+ * <pre>
+ * java a2.Batch [-o dir] [-format png|jpg] [-threads decode,process,encode] [-queue n] [-cache MB] [-similar bits] dir OP...
+ * </pre>
+ *
+ * reads every image in {@code dir}, applies each operation {@code OP} (one of
+ * the names in {@link A2Viewer}, such as {@code TO_GRAY} or {@code BLUR_5}) and
+ * writes each result as {@code name-op.format} to the output directory, by
+ * default {@code dir/out}.
+ *
+ * <p>
+ * Images go through three stages that run at the same time: decode (read and
+ * decode the file), process (compute the operations, see
+ * {@link A2#apply(String, Picture)}) and encode (write the results). Each
+ * stage is a group of virtual threads, and the stages are connected by bounded
+ * queues, so reading the next images and writing the previous results overlap
+ * the pixel work, and a stage that gets ahead waits for the next one instead of
+ * filling the memory: at most {@code queue} decoded images and {@code queue}
+ * results wait between stages. Each operation itself runs in parallel on
+ * {@link A2#getScheduler()}, and results are looked up in and added to
+ * {@link ResultCache#shared()} (or the cache given by {@code -cache}), so
+ * images with the same pixels are only processed once. With {@code -similar},
+ * an image is also given the cached results of an earlier image of the same
+ * size whose DCT hash (see {@link PerceptualHash#pHash(Picture)}) differs from
+ * its own in at most {@code bits} bits, so near duplicates, such as the same
+ * upload recompressed, are only processed once too; the hashes are kept in a
+ * {@link HashIndex}.
+ *
+ * <p>
+ * Progress is printed every second, with the number of images per second and
+ * the number of items waiting in each queue. An image that cannot be read, an
+ * operation that fails and a result that cannot be written are reported and
+ * skipped.
+ */
+public final class Batch {
+	private static final long SAMPLE_MILLIS = 100; // queue depths are sampled this often
+	private static final int SAMPLES_PER_LINE = 10; // a progress line every second
+
+	private final File output;
+	private final String format;
+	private final List<String> ops;
+	private int decoders, workers, encoders;
+	private int capacity = 4;
+	private ResultCache cache = ResultCache.shared();
+	private int similarity = -1;
+
+	/**
+	 * Creates a batch that applies {@code ops} and writes the results to the
+	 * directory {@code output} in the image format {@code format}.
+	 *
+	 * @param output the output directory, created if needed
+	 * @param format {@code png} or {@code jpg}
+	 * @param ops    the operations, each one of the names in {@link A2Viewer}
+	 * @throws IllegalArgumentException if an argument is {@code null}, if
+	 *                                  {@code format} is not supported, if
+	 *                                  {@code ops} is empty, or if an operation is
+	 *                                  unknown
+	 */
+	public Batch(File output, String format, List<String> ops) {
+		if (output == null || format == null || ops == null)
+			throw new IllegalArgumentException("argument is null");
+		if (!"png".equalsIgnoreCase(format) && !"jpg".equalsIgnoreCase(format))
+			throw new IllegalArgumentException("format must be png or jpg: " + format);
+		if (ops.isEmpty())
+			throw new IllegalArgumentException("no operations");
+		for (String op : ops) {
+			if (!A2.OPERATIONS.contains(op))
+				throw new IllegalArgumentException("unknown operation: " + op);
+		}
+		this.output = output;
+		this.format = format.toLowerCase(Locale.ROOT);
+		this.ops = List.copyOf(ops);
+		int processors = Runtime.getRuntime().availableProcessors();
+		setThreads(Math.max(2, processors), 2, Math.max(2, processors));
+	}
+
+	/**
+	 * Sets the number of virtual threads of each stage. Decoding and encoding
+	 * are mostly I/O and codec work, while each operation already uses every
+	 * processor, so a few process threads are enough.
+	 *
+	 * @param decode  the number of threads that read images
+	 * @param process the number of threads that compute operations
+	 * @param encode  the number of threads that write results
+	 * @throws IllegalArgumentException if any argument is negative or zero
+	 */
+	public void setThreads(int decode, int process, int encode) {
+		if (decode <= 0 || process <= 0 || encode <= 0)
+			throw new IllegalArgumentException("thread counts must be positive");
+		this.decoders = decode;
+		this.workers = process;
+		this.encoders = encode;
+	}
+
+	/**
+	 * Sets the number of items each queue between two stages can hold.
+	 *
+	 * @param capacity the capacity of a queue
+	 * @throws IllegalArgumentException if {@code capacity} is negative or zero
+	 */
+	public void setQueueCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("queue capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Sets the cache of results used by the process stage.
+	 *
+	 * @param cache the cache, or {@code null} to compute every result
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the cache of results used by the process stage.
+	 *
+	 * @return the cache, or {@code null} if there is none
+	 */
+	public ResultCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets how near duplicates are found: images of the same size whose DCT
+	 * hashes differ in at most {@code bits} bits share their results through
+	 * the cache. Near duplicates are not looked for without a cache.
+	 *
+	 * @param bits the largest distance between the hashes of near duplicates,
+	 *             or -1 to share results only between images with the same
+	 *             pixels
+	 * @throws IllegalArgumentException if {@code bits} is less than -1
+	 */
+	public void setSimilarity(int bits) {
+		if (bits < -1)
+			throw new IllegalArgumentException("similarity must be -1 or more: " + bits);
+		this.similarity = bits;
+	}
+
+	/**
+	 * Processes {@code images} and waits until every result is written.
+	 *
+	 * @param images the image files
+	 * @param log    where progress and errors are printed, or {@code null}
+	 * @return the counts and rates of the run
+	 * @throws InterruptedException if the calling thread is interrupted; the
+	 *                              stages are stopped first
+	 */
+	public Report run(List<File> images, PrintStream log) throws InterruptedException {
+		if (!output.isDirectory() && !output.mkdirs())
+			throw new IllegalArgumentException("could not create directory: " + output);
+		Run run = new Run(List.copyOf(images), log);
+		return run.start();
+	}
+
+	/**
+	 * The counts and rates of a finished run.
+	 */
+	public static final class Report {
+		private final int images, written, failed, duplicates;
+		private final double seconds;
+		private final double[] meanDepth, maxDepth; // process queue, encode queue
+
+		private Report(int images, int written, int failed, int duplicates, double seconds, double[] meanDepth,
+				double[] maxDepth) {
+			this.images = images;
+			this.written = written;
+			this.failed = failed;
+			this.duplicates = duplicates;
+			this.seconds = seconds;
+			this.meanDepth = meanDepth;
+			this.maxDepth = maxDepth;
+		}
+
+		/**
+		 * Returns the number of images whose operations are all done.
+		 *
+		 * @return the number of images
+		 */
+		public int images() {
+			return images;
+		}
+
+		/**
+		 * Returns the number of result files written.
+		 *
+		 * @return the number of results
+		 */
+		public int written() {
+			return written;
+		}
+
+		/**
+		 * Returns the number of images that could not be read plus the number of
+		 * results that could not be computed or written.
+		 *
+		 * @return the number of failures
+		 */
+		public int failed() {
+			return failed;
+		}
+
+		/**
+		 * Returns the number of images found to be near duplicates of earlier
+		 * ones (see {@link Batch#setSimilarity(int)}).
+		 *
+		 * @return the number of near duplicates
+		 */
+		public int duplicates() {
+			return duplicates;
+		}
+
+		/**
+		 * Returns the time taken, in seconds.
+		 *
+		 * @return the time taken
+		 */
+		public double seconds() {
+			return seconds;
+		}
+
+		/**
+		 * Returns the number of images done per second.
+		 *
+		 * @return the throughput
+		 */
+		public double imagesPerSecond() {
+			return seconds > 0 ? images / seconds : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%d images (%d near duplicates), %d results written, %d failed in %.2f s (%.1f images/s); "
+							+ "queue depth mean/max: process %.1f/%.0f, encode %.1f/%.0f",
+					images, duplicates, written, failed, seconds, imagesPerSecond(), meanDepth[0], maxDepth[0], meanDepth[1],
+					maxDepth[1]);
+		}
+	}
+
+	/**
+	 * A decoded image on its way to the process stage.
+	 */
+	private static final class Decoded {
+		final File file;
+		final Picture picture;
+		final AtomicInteger pending; // results not yet written or failed
+
+		Decoded(File file, Picture picture, int pending) {
+			this.file = file;
+			this.picture = picture;
+			this.pending = new AtomicInteger(pending);
+		}
+	}
+
+	/**
+	 * A computed result on its way to the encode stage.
+	 */
+	private static final class Result {
+		final Decoded source;
+		final String op;
+		final Picture picture;
+
+		Result(Decoded source, String op, Picture picture) {
+			this.source = source;
+			this.op = op;
+			this.picture = picture;
+		}
+	}
+
+	/**
+	 * The work of one thread of a stage.
+	 */
+	@FunctionalInterface
+	private interface Work {
+		void run() throws InterruptedException;
+	}
+
+	/**
+	 * The state of one call to {@link Batch#run}.
+	 */
+	private final class Run {
+		// tell a thread of the next stage that there is no more input
+		private final Decoded noMoreImages = new Decoded(null, null, 0);
+		private final Result noMoreResults = new Result(null, null, null);
+
+		private final List<File> files;
+		private final PrintStream log;
+		private final BlockingQueue<Decoded> decoded = new ArrayBlockingQueue<>(capacity);
+		private final BlockingQueue<Result> results = new ArrayBlockingQueue<>(capacity);
+		private final AtomicInteger next = new AtomicInteger(); // next file to decode
+		private final AtomicInteger done = new AtomicInteger(), written = new AtomicInteger(),
+				failed = new AtomicInteger(), duplicates = new AtomicInteger();
+		// the DCT hashes of the images that were not near duplicates, and for
+		// each its pixel hash, under which its results are cached, and its size
+		private final HashIndex originals = new HashIndex();
+		private final List<Long> originalSources = new ArrayList<>();
+		private final List<Long> originalSizes = new ArrayList<>();
+		private final List<Thread> threads = new ArrayList<>();
+		private final long[] depthSum = new long[2];
+		private final int[] depthMax = new int[2];
+		private long samples;
+		private long start;
+
+		Run(List<File> files, PrintStream log) {
+			this.files = files;
+			this.log = log;
+		}
+
+		Report start() throws InterruptedException {
+			start = System.nanoTime();
+			stage("decode", decoders, this::decode, () -> {
+				for (int i = 0; i < workers; i++)
+					decoded.put(noMoreImages);
+			});
+			stage("process", workers, this::process, () -> {
+				for (int i = 0; i < encoders; i++)
+					results.put(noMoreResults);
+			});
+			stage("encode", encoders, this::encode, () -> {
+			});
+			Thread monitor = Thread.ofVirtual().name("batch-monitor").start(this::monitor);
+			try {
+				for (Thread t : threads)
+					t.join();
+			} catch (InterruptedException e) {
+				for (Thread t : threads)
+					t.interrupt();
+				throw e;
+			} finally {
+				monitor.interrupt();
+				monitor.join();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long n = Math.max(samples, 1);
+			return new Report(done.get(), written.get(), failed.get(), duplicates.get(), seconds,
+					new double[] { (double) depthSum[0] / n, (double) depthSum[1] / n },
+					new double[] { depthMax[0], depthMax[1] });
+		}
+
+		/**
+		 * Starts {@code count} virtual threads that do {@code work}; the last one
+		 * to finish does {@code last}, which tells the next stage to stop.
+		 */
+		private void stage(String name, int count, Work work, Work last) {
+			AtomicInteger running = new AtomicInteger(count);
+			for (int i = 0; i < count; i++) {
+				threads.add(Thread.ofVirtual().name("batch-" + name + "-" + i).start(() -> {
+					try {
+						try {
+							work.run();
+						} finally {
+							if (running.decrementAndGet() == 0)
+								last.run();
+						}
+					} catch (InterruptedException e) {
+						// stopped by run(); the other stages are interrupted too
+					}
+				}));
+			}
+		}
+
+		private void decode() throws InterruptedException {
+			for (int i; (i = next.getAndIncrement()) < files.size();) {
+				File file = files.get(i);
+				Picture p;
+				try {
+					p = new Picture(file);
+				} catch (RuntimeException e) {
+					fail(file.getName(), e);
+					continue;
+				}
+				decoded.put(new Decoded(file, p, ops.size()));
+			}
+		}
+
+		private void process() throws InterruptedException {
+			ResultCache cache = Batch.this.cache;
+			for (Decoded image; (image = decoded.take()) != noMoreImages;) {
+				long source;
+				try {
+					source = cache != null ? source(image.picture) : 0;
+				} catch (RuntimeException e) {
+					fail(image.file.getName(), e);
+					abandon(image);
+					continue;
+				}
+				for (String op : ops) {
+					Picture result;
+					try {
+						result = cache != null ? cache.apply(image.picture, source, op, p -> A2.apply(op, p))
+								: A2.apply(op, image.picture);
+					} catch (RuntimeException e) {
+						fail(image.file.getName() + " " + op, e);
+						finish(image);
+						continue;
+					}
+					results.put(new Result(image, op, result));
+				}
+			}
+		}
+
+		/**
+		 * Returns the hash under which the results of {@code p} are cached: that
+		 * of the earliest image of the same size that {@code p} is a near
+		 * duplicate of, or else the hash of its own pixels.
+		 */
+		private long source(Picture p) {
+			long own = ResultCache.hash(p);
+			if (similarity < 0)
+				return own;
+			long perceptual = PerceptualHash.pHash(p);
+			long size = (long) p.width() << 32 | p.height();
+			synchronized (originals) {
+				for (int id : originals.within(perceptual, similarity)) {
+					if (originalSizes.get(id) == size) {
+						duplicates.incrementAndGet();
+						return originalSources.get(id);
+					}
+				}
+				originals.add(perceptual);
+				originalSources.add(own);
+				originalSizes.add(size);
+				return own;
+			}
+		}
+
+		private void encode() throws InterruptedException {
+			for (Result result; (result = results.take()) != noMoreResults;) {
+				String name = result.source.file.getName();
+				int dot = name.lastIndexOf('.');
+				String base = dot > 0 ? name.substring(0, dot) : name;
+				File file = new File(output, base + "-" + result.op.toLowerCase(Locale.ROOT) + "." + format);
+				try {
+					result.picture.save(file);
+					written.incrementAndGet();
+				} catch (RuntimeException e) {
+					fail(file.getName(), e);
+				}
+				finish(result.source);
+			}
+		}
+
+		/**
+		 * Counts one result of {@code image} as done.
+		 */
+		private void finish(Decoded image) {
+			if (image.pending.decrementAndGet() == 0)
+				done.incrementAndGet();
+		}
+
+		/**
+		 * Counts {@code image} as done without any of its results, which are not
+		 * computed.
+		 */
+		private void abandon(Decoded image) {
+			image.pending.set(0);
+			done.incrementAndGet();
+		}
+
+		private void fail(String what, RuntimeException e) {
+			failed.incrementAndGet();
+			if (log != null)
+				log.println("failed: " + what + ": " + e.getMessage());
+		}
+
+		/**
+		 * Samples the queue depths and prints a progress line every second, until
+		 * interrupted.
+		 */
+		private void monitor() {
+			try {
+				while (true) {
+					Thread.sleep(SAMPLE_MILLIS);
+					int[] depth = { decoded.size(), results.size() };
+					for (int q = 0; q < 2; q++) {
+						depthSum[q] += depth[q];
+						depthMax[q] = Math.max(depthMax[q], depth[q]);
+					}
+					if (++samples % SAMPLES_PER_LINE == 0 && log != null) {
+						double seconds = (System.nanoTime() - start) / 1e9;
+						log.printf(Locale.ROOT, "%d/%d images, %.1f images/s, process queue %d/%d, encode queue %d/%d%n",
+								done.get(), files.size(), done.get() / seconds, depth[0], capacity, depth[1], capacity);
+					}
+				}
+			} catch (InterruptedException e) {
+				// the run is over
+			}
+		}
+	}
+
+	/**
+	 * Runs a batch from the command line; see the class comment for the
+	 * arguments.
+	 *
+	 * @param args the options, the input directory and the operations
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		File output = null;
+		String format = "png";
+		int[] threads = null;
+		int capacity = 0;
+		long cacheBytes = -1;
+		int similarity = -1;
+		File input;
+		Batch batch;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-"); i += 2) {
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("missing value for " + args[i]);
+				String value = args[i + 1];
+				switch (args[i]) {
+				case "-o":
+					output = new File(value);
+					break;
+				case "-format":
+					format = value;
+					break;
+				case "-threads":
+					threads = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+					if (threads.length != 3)
+						throw new IllegalArgumentException("-threads needs three counts");
+					break;
+				case "-queue":
+					capacity = Integer.parseInt(value);
+					break;
+				case "-cache":
+					cacheBytes = Long.parseLong(value) * 1_000_000;
+					break;
+				case "-similar":
+					similarity = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option: " + args[i]);
+				}
+			}
+			if (args.length - i < 2)
+				throw new IllegalArgumentException("missing directory or operations");
+			input = new File(args[i]);
+			batch = new Batch(output != null ? output : new File(input, "out"), format,
+					Arrays.asList(args).subList(i + 1, args.length));
+			if (threads != null)
+				batch.setThreads(threads[0], threads[1], threads[2]);
+			if (capacity != 0)
+				batch.setQueueCapacity(capacity);
+			if (cacheBytes >= 0)
+				batch.setCache(cacheBytes > 0 ? new ResultCache(cacheBytes) : null);
+			batch.setSimilarity(similarity);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.err.println("usage: java a2.Batch [-o dir] [-format png|jpg] [-threads decode,process,encode] "
+					+ "[-queue n] [-cache MB] [-similar bits] dir OP...");
+			System.err.println("operations: " + String.join(" ", A2.OPERATIONS));
+			System.exit(2);
+			return;
+		}
+
+		Set<String> suffixes = new HashSet<>();
+		for (String suffix : ImageIO.getReaderFileSuffixes())
+			suffixes.add(suffix.toLowerCase(Locale.ROOT));
+		File[] listing = input.listFiles();
+		if (listing == null)
+			throw new IllegalArgumentException("not a directory: " + input);
+		List<File> images = new ArrayList<>();
+		for (File file : listing) {
+			String name = file.getName();
+			if (file.isFile() && suffixes.contains(name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT)))
+				images.add(file);
+		}
+		images.sort(null);
+		System.out.println(batch.run(images, System.out));
+		if (batch.getCache() != null)
+			System.out.println(batch.getCache());
+	}
+}
@@ -0,0 +1,344 @@
+package a2;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Measures the time and memory taken by the image operations of {@link A2}.
+ *
+ * <pre>
+ * java -Xmx2g a2.Bench [-sizes 0.3,4,24] [-warmup n] [-iterations n] [-time ms] [NAME...]
+ * </pre>
+ *
+ * runs every benchmark whose name contains one of the {@code NAME}s (all of
+ * them if none are given) on images of each size, in megapixels. The images
+ * are made in memory, with smooth gradients, noise and a few red discs, so that
+ * every operation has work to do and the results do not depend on files.
+ *
+ * <p>
+ * Each benchmark is run for {@code warmup} iterations, which are not counted,
+ * so that the JIT compiles the code first, and then for {@code iterations}
+ * measured iterations. An iteration calls the operation until {@code time}
+ * milliseconds have passed and gives the mean time of a call. The report gives
+ * the mean and standard deviation of the iterations, the speed in megapixels
+ * per second, and the bytes allocated per call by all threads, including the
+ * threads of {@link A2#getScheduler()}, as counted by the JVM for each thread
+ * (see {@link com.sun.management.ThreadMXBean}). The results are kept in a
+ * field so that the JIT cannot leave out the work.
+ *
+ * <p>
+ * {@link A2#copy(Picture)}, {@link A2#flipVertical(Picture)} and
+ * {@link A2#rotateRight(Picture)} return copy-on-write views, which cost almost
+ * nothing until they are written to; their {@code _written} benchmarks also
+ * give the result its own pixels, as the first write would.
+ */
+public final class Bench {
+	private static final com.sun.management.ThreadMXBean THREADS = ManagementFactory
+			.getPlatformMXBean(com.sun.management.ThreadMXBean.class);
+
+	private final Map<String, UnaryOperator<Picture>> benchmarks = new LinkedHashMap<>();
+	private int warmup = 3;
+	private int iterations = 5;
+	private long iterationNanos = 500_000_000L;
+	private volatile Picture sink; // the last result, so that no work is left out
+
+	/**
+	 * Creates a bench with a benchmark for each image operation of {@link A2}.
+	 */
+	public Bench() {
+		benchmarks.put("copy", A2::copy);
+		benchmarks.put("copy_written", p -> written(A2.copy(p)));
+		benchmarks.put("border_10", p -> A2.border(p, 10));
+		benchmarks.put("toGray", A2::toGray);
+		benchmarks.put("toBinary", A2::toBinary);
+		benchmarks.put("toBinaryOtsu", A2::toBinaryOtsu);
+		benchmarks.put("toBinaryAdaptive_15", p -> A2.toBinaryAdaptive(p, 15, 15));
+		benchmarks.put("flipVertical", A2::flipVertical);
+		benchmarks.put("flipVertical_written", p -> written(A2.flipVertical(p)));
+		benchmarks.put("rotateRight", A2::rotateRight);
+		benchmarks.put("rotateRight_written", p -> written(A2.rotateRight(p)));
+		benchmarks.put("redEye", A2::redEye);
+		benchmarks.put("redEyeRegions", A2::redEyeRegions);
+		for (int radius : new int[] { 1, 3, 5, 25 })
+			benchmarks.put("blur_" + radius, p -> A2.blur(p, radius));
+		benchmarks.put("gaussianBlur_5", p -> A2.gaussianBlur(p, 5));
+	}
+
+	/**
+	 * Returns {@code p} after giving it its own raster, as the first write to a
+	 * copy-on-write view does.
+	 */
+	private static Picture written(Picture p) {
+		p.pixels();
+		return p;
+	}
+
+	/**
+	 * Sets the number of iterations run before measuring.
+	 *
+	 * @param warmup the number of warmup iterations, at least 0
+	 */
+	public void setWarmup(int warmup) {
+		if (warmup < 0)
+			throw new IllegalArgumentException("warmup must not be negative: " + warmup);
+		this.warmup = warmup;
+	}
+
+	/**
+	 * Sets the number of iterations measured, and how long each one runs.
+	 *
+	 * @param iterations the number of measured iterations, at least 1
+	 * @param millis     the least length of an iteration, in milliseconds
+	 */
+	public void setIterations(int iterations, long millis) {
+		if (iterations < 1 || millis < 1)
+			throw new IllegalArgumentException("iterations and time must be positive");
+		this.iterations = iterations;
+		this.iterationNanos = millis * 1_000_000L;
+	}
+
+	/**
+	 * Returns the names of the benchmarks, in the order they run.
+	 *
+	 * @return the names
+	 */
+	public List<String> names() {
+		return new ArrayList<>(benchmarks.keySet());
+	}
+
+	/**
+	 * The measurements of one benchmark on one image.
+	 */
+	public static final class Result {
+		private final String name;
+		private final double megapixels;
+		private final double meanMillis, stdevMillis;
+		private final long bytesPerCall; // -1 if allocations are not counted
+
+		Result(String name, double megapixels, double[] millis, long bytesPerCall) {
+			this.name = name;
+			this.megapixels = megapixels;
+			double sum = 0;
+			for (double m : millis)
+				sum += m;
+			this.meanMillis = sum / millis.length;
+			double squares = 0;
+			for (double m : millis)
+				squares += (m - meanMillis) * (m - meanMillis);
+			this.stdevMillis = millis.length > 1 ? Math.sqrt(squares / (millis.length - 1)) : 0;
+			this.bytesPerCall = bytesPerCall;
+		}
+
+		/**
+		 * Returns the name of the benchmark.
+		 *
+		 * @return the name
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * Returns the size of the image.
+		 *
+		 * @return the number of pixels, in millions
+		 */
+		public double megapixels() {
+			return megapixels;
+		}
+
+		/**
+		 * Returns the mean time of a call over the measured iterations.
+		 *
+		 * @return the time, in milliseconds
+		 */
+		public double meanMillis() {
+			return meanMillis;
+		}
+
+		/**
+		 * Returns the standard deviation of the time of a call over the measured
+		 * iterations.
+		 *
+		 * @return the standard deviation, in milliseconds
+		 */
+		public double stdevMillis() {
+			return stdevMillis;
+		}
+
+		/**
+		 * Returns the bytes allocated by a call, or -1 if the JVM does not count
+		 * allocations.
+		 *
+		 * @return the bytes per call
+		 */
+		public long bytesPerCall() {
+			return bytesPerCall;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-20s %5.1f MP %10.3f +/- %7.3f ms/op %9.1f MP/s %14s B/op", name,
+					megapixels, meanMillis, stdevMillis, megapixels * 1000 / meanMillis,
+					bytesPerCall >= 0 ? String.format(Locale.ROOT, "%,d", bytesPerCall) : "n/a");
+		}
+	}
+
+	/**
+	 * Runs one benchmark on one image.
+	 *
+	 * @param name  the name of the benchmark, one of {@link #names()}
+	 * @param image the image
+	 * @return the measurements
+	 * @throws IllegalArgumentException if there is no benchmark {@code name}
+	 */
+	public Result run(String name, Picture image) {
+		UnaryOperator<Picture> op = benchmarks.get(name);
+		if (op == null)
+			throw new IllegalArgumentException("unknown benchmark: " + name);
+		for (int i = 0; i < warmup; i++)
+			iteration(op, image);
+		System.gc();
+		boolean counting = THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled();
+		long calls = 0;
+		long bytes = counting ? THREADS.getTotalThreadAllocatedBytes() : 0;
+		double[] millis = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long[] callsAndNanos = iteration(op, image);
+			calls += callsAndNanos[0];
+			millis[i] = callsAndNanos[1] / 1e6 / callsAndNanos[0];
+		}
+		bytes = counting ? THREADS.getTotalThreadAllocatedBytes() - bytes : -1;
+		return new Result(name, image.width() * (double) image.height() / 1e6, millis,
+				counting ? bytes / calls : -1);
+	}
+
+	/**
+	 * Calls {@code op} until the length of an iteration has passed, and returns
+	 * the number of calls and the time they took, in nanoseconds.
+	 */
+	private long[] iteration(UnaryOperator<Picture> op, Picture image) {
+		long start = System.nanoTime();
+		long calls = 0;
+		long elapsed;
+		do {
+			sink = op.apply(image);
+			calls++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		return new long[] { calls, elapsed };
+	}
+
+	/**
+	 * Returns an image of about {@code megapixels} million pixels, 4 wide for 3
+	 * high, with gradients, noise and red discs. The same size always gives the
+	 * same image.
+	 *
+	 * @param megapixels the number of pixels, in millions
+	 * @return the image
+	 */
+	public static Picture input(double megapixels) {
+		if (!(megapixels > 0))
+			throw new IllegalArgumentException("size must be positive: " + megapixels);
+		int width = Math.max(1, (int) Math.round(Math.sqrt(megapixels * 1e6 * 4 / 3)));
+		int height = Math.max(1, width * 3 / 4);
+		Picture p = new Picture(width, height);
+		int[] pixels = p.pixels();
+		int discs = 8;
+		int radius = Math.max(1, Math.min(width, height) / 60);
+		long seed = 124;
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				seed = seed * 6364136223846793005L + 1442695040888963407L;
+				int noise = (int) (seed >>> 59) - 16;
+				int red = clamp(255 * col / width + noise);
+				int green = clamp(255 * row / height + noise);
+				int blue = clamp(255 - 255 * (col + row) / (width + height) + noise);
+				pixels[row * width + col] = (red << 16) | (green << 8) | blue;
+			}
+		}
+		for (int i = 0; i < discs; i++) {
+			int cx = width * (2 * i + 1) / (2 * discs);
+			int cy = height * (i % 2 == 0 ? 1 : 2) / 3;
+			for (int row = Math.max(cy - radius, 0); row <= Math.min(cy + radius, height - 1); row++) {
+				for (int col = Math.max(cx - radius, 0); col <= Math.min(cx + radius, width - 1); col++) {
+					if ((col - cx) * (col - cx) + (row - cy) * (row - cy) <= radius * radius)
+						pixels[row * width + col] = 0xD02020;
+				}
+			}
+		}
+		return p;
+	}
+
+	private static int clamp(int level) {
+		return Math.min(Math.max(level, 0), 255);
+	}
+
+	/**
+	 * Runs the benchmarks from the command line; see the class comment for the
+	 * arguments.
+	 *
+	 * @param args the options and the names of the benchmarks to run
+	 */
+	public static void main(String[] args) {
+		Bench bench = new Bench();
+		double[] sizes = { 0.3, 4, 24 };
+		int iterations = bench.iterations;
+		long millis = bench.iterationNanos / 1_000_000L;
+		List<String> names = new ArrayList<>();
+		try {
+			int i = 0;
+			for (; i < args.length && args[i].startsWith("-"); i += 2) {
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("missing value for " + args[i]);
+				String value = args[i + 1];
+				switch (args[i]) {
+				case "-sizes":
+					sizes = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+					break;
+				case "-warmup":
+					bench.setWarmup(Integer.parseInt(value));
+					break;
+				case "-iterations":
+					iterations = Integer.parseInt(value);
+					break;
+				case "-time":
+					millis = Long.parseLong(value);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option: " + args[i]);
+				}
+			}
+			bench.setIterations(iterations, millis);
+			for (String name : bench.names()) {
+				boolean wanted = i == args.length;
+				for (int j = i; j < args.length; j++)
+					wanted |= name.toLowerCase(Locale.ROOT).contains(args[j].toLowerCase(Locale.ROOT));
+				if (wanted)
+					names.add(name);
+			}
+			if (names.isEmpty())
+				throw new IllegalArgumentException("no benchmark matches " + String.join(" ", Arrays.asList(args).subList(i, args.length)));
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.err.println("usage: java a2.Bench [-sizes 0.3,4,24] [-warmup n] [-iterations n] [-time ms] [NAME...]");
+			System.err.println("benchmarks: " + String.join(" ", bench.names()));
+			System.exit(2);
+			return;
+		}
+
+		System.out.printf(Locale.ROOT, "%d threads, %d warmup and %d measured iterations of %d ms%n",
+				A2.getScheduler().parallelism(), bench.warmup, bench.iterations, bench.iterationNanos / 1_000_000L);
+		for (double size : sizes) {
+			Picture image = input(size);
+			for (String name : names)
+				System.out.println(bench.run(name, image));
+		}
+	}
+}
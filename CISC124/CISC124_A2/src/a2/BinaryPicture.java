@@ -0,0 +1,187 @@
+package a2;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * A black and white picture that keeps one bit per pixel, a thirty-second of
+ * the memory of a {@link Picture}.
+ *
+ * <p>
+ * The {@code get} and {@code set} methods behave as for any picture, except
+ * that a color is stored as white if its gray level (weighted as in
+ * {@link A2#toGray(Picture)}) is at least 128 and as black otherwise, the
+ * threshold used by {@link A2#toBinary(Picture)}. Black and white are stored
+ * exactly. {@link A2#toBinaryCompact(Picture)} returns a {@code BinaryPicture},
+ * and every operation accepts one as its source. {@link #pixels()} returns a
+ * copy of the pixels; use {@link #bits()} for the raster.
+ *
+ * <p>
+ * Eight pixels share a byte, so a byte holding pixels both inside and outside
+ * a region being written is changed under a lock, as is the byte of a pixel
+ * written by {@link #setRGB(int, int, int)}. Threads can then write different
+ * pixels at once, as with any picture, such as tiles whose width is not a
+ * multiple of 8 (see {@link TileScheduler}).
+ */
+public final class BinaryPicture extends Picture {
+	private static final int WHITE = 0xFFFFFF;
+
+	private final byte[] bits; // one bit per pixel, 1 for white
+	private final int stride; // bytes per row
+
+	/**
+	 * Creates a {@code width}-by-{@code height} black and white picture, where
+	 * each pixel is black.
+	 *
+	 * @param width  the width of the picture
+	 * @param height the height of the picture
+	 * @throws IllegalArgumentException if {@code width} is negative or zero
+	 * @throws IllegalArgumentException if {@code height} is negative or zero
+	 */
+	public BinaryPicture(int width, int height) {
+		super(width, height, false);
+		stride = (width + 7) / 8;
+		bits = new byte[Math.multiplyExact(stride, height)];
+	}
+
+	/**
+	 * Returns the bits of this picture. Each row starts on a new byte, and pixel
+	 * ({@code col}, {@code row}) is bit {@code 7 - col % 8} of byte
+	 * {@code row * ((width() + 7) / 8) + col / 8}, 1 for white. Writes to the
+	 * returned array change the picture.
+	 *
+	 * @return the raster of this picture
+	 */
+	public byte[] bits() {
+		beforeWrite();
+		escape();
+		return bits;
+	}
+
+	/**
+	 * Returns a copy of the pixels of this picture, since a black and white
+	 * picture has no {@code int} raster. Writes to the returned array do not
+	 * change the picture; use {@link #bits()} for that.
+	 *
+	 * @return the pixels of this picture, row by row
+	 * @throws IllegalArgumentException if the picture has too many pixels for
+	 *                                  an array
+	 */
+	@Override
+	public int[] pixels() {
+		return copyPixels();
+	}
+
+	@Override
+	public int getRGB(int col, int row) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		return bit(col, row) ? WHITE : 0;
+	}
+
+	@Override
+	public void setRGB(int col, int row, int rgb) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		beforeWrite();
+		set(col, row, isWhite(rgb));
+	}
+
+	@Override
+	public void getRegion(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		validateRegion(col, row, w, h, dst, offset, scan);
+		for (int y = 0; y < h; y++) {
+			int out = offset + y * scan;
+			for (int x = 0; x < w; x++) {
+				dst[out + x] = bit(col + x, row + y) ? WHITE : 0;
+			}
+		}
+	}
+
+	@Override
+	public void setRegion(int col, int row, int w, int h, int[] src, int offset, int scan) {
+		validateRegion(col, row, w, h, src, offset, scan);
+		beforeWrite();
+		for (int y = 0; y < h; y++) {
+			writeRow(col, row + y, w, src, offset + y * scan);
+		}
+	}
+
+	@Override
+	long footprint() {
+		return bits.length;
+	}
+
+	@Override
+	boolean isGray() {
+		return true;
+	}
+
+	/**
+	 * Returns a 1-bit image that shares the bits of this picture.
+	 */
+	@Override
+	BufferedImage image() {
+		byte[] levels = { 0, (byte) 255 };
+		IndexColorModel model = new IndexColorModel(1, 2, levels, levels, levels);
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferByte(bits, bits.length), width(), height(),
+				1, null);
+		return new BufferedImage(model, raster, false, null);
+	}
+
+	private boolean bit(int col, int row) {
+		return (bits[row * stride + (col >> 3)] & (0x80 >>> (col & 7))) != 0;
+	}
+
+	private void set(int col, int row, boolean white) {
+		int i = row * stride + (col >> 3);
+		synchronized (bits) {
+			if (white)
+				bits[i] |= (byte) (0x80 >>> (col & 7));
+			else
+				bits[i] &= (byte) ~(0x80 >>> (col & 7));
+		}
+	}
+
+	/**
+	 * Writes {@code w} pixels of row {@code row} from {@code col} onwards, a
+	 * byte at a time. Only the bytes at the ends of the run can hold pixels
+	 * outside it, and only those are changed under the lock.
+	 */
+	private void writeRow(int col, int row, int w, int[] src, int in) {
+		int base = row * stride;
+		for (int x = 0; x < w;) {
+			int c = col + x;
+			int n = Math.min(8 - (c & 7), w - x); // pixels of the run in this byte
+			int mask = 0;
+			int value = 0;
+			for (int k = 0; k < n; k++) {
+				int bit = 0x80 >>> ((c + k) & 7);
+				mask |= bit;
+				if (isWhite(src[in + x + k]))
+					value |= bit;
+			}
+			int i = base + (c >> 3);
+			if (mask == 0xFF) {
+				bits[i] = (byte) value;
+			} else {
+				synchronized (bits) {
+					bits[i] = (byte) ((bits[i] & ~mask) | value);
+				}
+			}
+			x += n;
+		}
+	}
+
+	private static boolean isWhite(int rgb) {
+		// black and white, the usual values here, need no weighting
+		if ((rgb & WHITE) == WHITE)
+			return true;
+		if ((rgb & WHITE) == 0)
+			return false;
+		return A2.grayValue(rgb) >= 128;
+	}
+}
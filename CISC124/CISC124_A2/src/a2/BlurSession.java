@@ -0,0 +1,248 @@
+package a2;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Box blurs of one picture at any radius, for trying one radius after another
+ * (see {@link A2#blur(Picture, int)}).
+ *
+ * <p>
+ * A session builds the integral (summed-area) table of the picture once:
+ * entry ({@code x}, {@code y}) holds the sums of the red, green and blue
+ * levels of the pixels above and to the left of pixel ({@code x}, {@code y}).
+ * The sum over any box is then four lookups per channel, so a blur of any
+ * radius is a single pass over the result that never reads the picture, and
+ * each pixel costs the same whatever the radius. Boxes are clipped and
+ * averages rounded as in {@link BoxBlur}, so the result is identical to
+ * {@link A2#blur(Picture, int)}.
+ *
+ * <p>
+ * The table is built in two parallel passes, like that of
+ * {@link A2#toBinaryAdaptive(Picture, int, double)}, and holds three
+ * {@code int}s per pixel, three times the memory of the picture. Sums that
+ * overflow wrap around, and the difference of four of them is still exact
+ * while a box holds at most {@link #MAX_BOX} pixels; radii with larger boxes
+ * are blurred from the picture by {@link BoxBlur} instead, all at once.
+ *
+ * <p>
+ * A session also keeps the result of the last radius asked for, and which of
+ * its tiles (see {@link TileScheduler}) are computed. Asking for a part of the
+ * result, such as the part on screen, computes only the tiles of that part
+ * that were not computed before, so moving a viewport over the same radius
+ * only computes what comes into view.
+ */
+public final class BlurSession {
+	/**
+	 * Largest number of pixels in a box read from the table, for which 255
+	 * times the number is less than 2^32.
+	 */
+	public static final int MAX_BOX = (int) (0xFFFFFFFFL / 255);
+
+	private static final int COLUMN_STRIP = 768; // table entries summed down together by one task
+
+	private final Picture source;
+	private final int width, height;
+	private final int scan; // entries in a row of the table, 3 per pixel and 3 more
+	private final int[] table;
+
+	// the result of the last radius, and its computed tiles
+	private int radius = -1;
+	private Picture result;
+	private TileScheduler scheduler; // whose tiles are counted in done
+	private BitSet done;
+
+	/**
+	 * Starts a session on a picture, building its integral table. The session
+	 * reads a copy-on-write view of the picture (see
+	 * {@link Picture#copyView()}), so later changes to the picture do not
+	 * change its blurs.
+	 *
+	 * @param p the picture
+	 * @throws IllegalArgumentException if {@code p} is {@code null}, or too
+	 *                                  large for its table to fit in an array
+	 */
+	public BlurSession(Picture p) {
+		if (p == null)
+			throw new IllegalArgumentException("constructor argument is null");
+		this.source = p.copyView();
+		this.width = p.width();
+		this.height = p.height();
+		this.scan = 3 * (width + 1);
+		long entries = (long) scan * (height + 1);
+		if (entries > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("picture too large for a blur session: " + width + "x" + height);
+		this.table = new int[(int) entries];
+		integrate();
+	}
+
+	/**
+	 * Returns the picture blurred with a box of radius {@code radius}.
+	 *
+	 * @param radius the radius of the box
+	 * @return the blurred picture, a copy-on-write view
+	 * @throws IllegalArgumentException if {@code radius} is negative
+	 */
+	public Picture blur(int radius) {
+		return blur(radius, new Rectangle(width, height));
+	}
+
+	/**
+	 * Returns the picture blurred with a box of radius {@code radius}, computed
+	 * at least inside {@code viewport}. The tiles of the result that meet the
+	 * viewport are computed, unless they were computed for this radius before;
+	 * outside them the result holds the tiles computed for this radius by
+	 * earlier calls, and is black elsewhere.
+	 *
+	 * @param radius   the radius of the box
+	 * @param viewport the part of the result needed, clipped to the picture
+	 * @return the blurred picture, a copy-on-write view
+	 * @throws IllegalArgumentException if {@code radius} is negative or
+	 *                                  {@code viewport} is {@code null}
+	 */
+	public synchronized Picture blur(int radius, Rectangle viewport) {
+		if (radius < 0)
+			throw new IllegalArgumentException("radius must not be negative: " + radius);
+		if (viewport == null)
+			throw new IllegalArgumentException("viewport argument is null");
+		TileScheduler s = A2.getScheduler();
+		if (radius != this.radius || s != scheduler) {
+			this.result = source.blank(width, height);
+			this.radius = radius;
+			this.scheduler = s;
+			this.done = new BitSet();
+		}
+		Rectangle r = viewport.intersection(new Rectangle(width, height));
+		if (!r.isEmpty()) {
+			if (fitsTable(radius)) {
+				int[] tiles = missing(r);
+				s.run(source, result, kernel(radius), tiles);
+				for (int tile : tiles) {
+					done.set(tile);
+				}
+			} else if (done.isEmpty()) {
+				// blurred whole, so every tile is done
+				BoxBlur.blur(source, result, radius, s);
+				int across = (width + s.tileWidth() - 1) / s.tileWidth();
+				int down = (height + s.tileHeight() - 1) / s.tileHeight();
+				done.set(0, across * down);
+			}
+		}
+		return result.copyView();
+	}
+
+	/**
+	 * Returns the numbers of the tiles of the result that meet {@code r} and
+	 * are not yet computed.
+	 */
+	private int[] missing(Rectangle r) {
+		int tileWidth = scheduler.tileWidth();
+		int tileHeight = scheduler.tileHeight();
+		int across = (width + tileWidth - 1) / tileWidth;
+		int firstCol = r.x / tileWidth;
+		int endCol = (r.x + r.width - 1) / tileWidth + 1;
+		int firstRow = r.y / tileHeight;
+		int endRow = (r.y + r.height - 1) / tileHeight + 1;
+		int[] tiles = new int[(endCol - firstCol) * (endRow - firstRow)];
+		int count = 0;
+		for (int row = firstRow; row < endRow; row++) {
+			for (int col = firstCol; col < endCol; col++) {
+				int tile = row * across + col;
+				if (!done.get(tile)) {
+					tiles[count++] = tile;
+				}
+			}
+		}
+		return Arrays.copyOf(tiles, count);
+	}
+
+	/**
+	 * Returns whether the boxes of the given radius are small enough to be
+	 * read from the table.
+	 */
+	private boolean fitsTable(int radius) {
+		long side = 2L * radius + 1;
+		return Math.min(side, width) * Math.min(side, height) <= MAX_BOX;
+	}
+
+	/**
+	 * Returns the kernel that blurs with a box of the given radius from the
+	 * table.
+	 */
+	private TileKernel kernel(int radius) {
+		return new TileKernel() {
+			@Override
+			public Rectangle source(Rectangle target, int srcWidth, int srcHeight) {
+				return new Rectangle(target.x, target.y, 0, 0); // only the table is read
+			}
+
+			@Override
+			public void apply(Window src, Window dst) {
+				blur(dst, radius);
+			}
+		};
+	}
+
+	/**
+	 * Computes the part {@code dst} of the blur with a box of radius
+	 * {@code radius} from the table.
+	 */
+	private void blur(Window dst, int radius) {
+		int[] t = table;
+		for (int y = dst.row; y < dst.row + dst.height; y++) {
+			int top = Math.max(y - radius, 0) * scan;
+			int bottom = (Math.min(y + radius, height - 1) + 1) * scan;
+			int rows = (bottom - top) / scan;
+			int out = dst.index(dst.col, y);
+			for (int x = dst.col; x < dst.col + dst.width; x++) {
+				int left = 3 * Math.max(x - radius, 0);
+				int right = 3 * (Math.min(x + radius, width - 1) + 1);
+				int a = top + left, b = top + right, c = bottom + left, d = bottom + right;
+				long count = (long) rows * ((right - left) / 3);
+				int red = BoxBlur.roundDiv((t[d] - t[c] - t[b] + t[a]) & 0xFFFFFFFFL, count);
+				int green = BoxBlur.roundDiv((t[d + 1] - t[c + 1] - t[b + 1] + t[a + 1]) & 0xFFFFFFFFL, count);
+				int blue = BoxBlur.roundDiv((t[d + 2] - t[c + 2] - t[b + 2] + t[a + 2]) & 0xFFFFFFFFL, count);
+				dst.data[out++] = (red << 16) | (green << 8) | blue;
+			}
+		}
+	}
+
+	/**
+	 * Fills the table: sums along the rows in bands of rows, then down the
+	 * columns in strips of columns.
+	 */
+	private void integrate() {
+		int[] t = table;
+		TileScheduler s = A2.getScheduler();
+		s.runBands(height, TileScheduler.DEFAULT_TILE_HEIGHT, (firstRow, endRow) -> {
+			int[] row = new int[width];
+			for (int y = firstRow; y < endRow; y++) {
+				source.getRow(y, row);
+				int pos = (y + 1) * scan + 3;
+				int red = 0;
+				int green = 0;
+				int blue = 0;
+				for (int x = 0; x < width; x++, pos += 3) {
+					int rgb = row[x];
+					red += (rgb >> 16) & 0xFF;
+					green += (rgb >> 8) & 0xFF;
+					blue += rgb & 0xFF;
+					t[pos] = red;
+					t[pos + 1] = green;
+					t[pos + 2] = blue;
+				}
+			}
+		});
+		int strips = (scan + COLUMN_STRIP - 1) / COLUMN_STRIP;
+		s.runBands(strips, 1, (firstStrip, endStrip) -> {
+			int first = firstStrip * COLUMN_STRIP;
+			int end = Math.min(endStrip * COLUMN_STRIP, scan);
+			for (int pos = 2 * scan; pos < t.length; pos += scan) {
+				for (int x = first; x < end; x++) {
+					t[pos + x] += t[pos - scan + x];
+				}
+			}
+		});
+	}
+}
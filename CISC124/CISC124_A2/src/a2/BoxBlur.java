@@ -0,0 +1,200 @@
+package a2;
+
+import java.awt.Rectangle;
+
+/**
+ * Box blur whose cost per pixel does not depend on the radius.
+ *
+ * <p>
+ * The blur is separable: the sum over a box is the sum of the column sums of
+ * the rows inside the box. The engine keeps one running sum per column for the
+ * rows currently inside the box, and slides a horizontal window across those
+ * column sums for each output row. Moving the box down one row adds the row
+ * entering the box and subtracts the row leaving it, so each pixel costs a
+ * constant number of additions whatever the radius.
+ *
+ * <p>
+ * Boxes are clipped to the image and averaged over the pixels they contain,
+ * exactly as {@link A2#boxAvg(Picture, int, int, int)} does, and the averages
+ * are rounded the same way, so the output is identical to averaging every
+ * pixel separately.
+ *
+ * <p>
+ * The picture is blurred in chunks of rows, from the top, each in two parallel
+ * passes (see {@link TileScheduler#runBands}). The first slides the column
+ * sums down the rows of the chunk in strips of columns and keeps the sums of
+ * every row; the second blurs each row of the chunk across its whole width
+ * from those sums. The column sums are carried from one chunk to the next, so
+ * no rows are read twice to warm them up, as a tile with a halo of
+ * {@code radius} rows would have to, and no pass depends on the radius.
+ */
+final class BoxBlur {
+	private static final int CHUNK_PIXELS = 1 << 20; // column sums kept per chunk, 12 MB
+	private static final int MIN_STRIP = 64; // columns summed down together by one task
+
+	private BoxBlur() {
+	}
+
+	/**
+	 * Blurs {@code src} into {@code dst}, a picture of the same size, with a box
+	 * of the given radius, on the threads of {@code scheduler}.
+	 *
+	 * @param src       - original image
+	 * @param dst       - picture for the result
+	 * @param radius    - radius of the box
+	 * @param scheduler - the scheduler to run the passes on
+	 */
+	static void blur(Picture src, Picture dst, int radius, TileScheduler scheduler) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("radius must not be negative: " + radius);
+		}
+		int w = src.width();
+		int h = src.height();
+		int chunk = Math.min(h, Math.max(16, CHUNK_PIXELS / w));
+		int strip = Math.max(MIN_STRIP, (w + 2 * scheduler.parallelism() - 1) / (2 * scheduler.parallelism()));
+		int strips = (w + strip - 1) / strip;
+		int[] colRed = new int[w];
+		int[] colGreen = new int[w];
+		int[] colBlue = new int[w];
+		int[][] sumRed = new int[chunk][w];
+		int[][] sumGreen = new int[chunk][w];
+		int[][] sumBlue = new int[chunk][w];
+		for (int first = 0; first < h; first += chunk) {
+			int firstRow = first;
+			int endRow = Math.min(first + chunk, h);
+			scheduler.runBands(strips, 1, (firstStrip, endStrip) -> {
+				int col = firstStrip * strip;
+				int cols = Math.min(endStrip * strip, w) - col;
+				// rows entering and leaving the column sums in this chunk
+				int next = firstRow == 0 ? 0 : Math.min(firstRow - 1 + radius, h - 1) + 1;
+				int removed = Math.max(firstRow - 1 - radius, 0);
+				int endNext = Math.min(endRow - 1 + radius, h - 1) + 1;
+				int endRemoved = Math.max(endRow - 1 - radius, 0);
+				Window in = next < endNext ? Window.read(src, new Rectangle(col, next, cols, endNext - next)) : null;
+				Window out = removed < endRemoved
+						? Window.read(src, new Rectangle(col, removed, cols, endRemoved - removed))
+						: null;
+				for (int row = firstRow; row < endRow; row++) {
+					for (; next <= Math.min(row + radius, h - 1); next++) {
+						addColumns(in.data, in.index(col, next), colRed, colGreen, colBlue, col, cols, 1);
+					}
+					for (; removed < row - radius; removed++) {
+						addColumns(out.data, out.index(col, removed), colRed, colGreen, colBlue, col, cols, -1);
+					}
+					System.arraycopy(colRed, col, sumRed[row - firstRow], col, cols);
+					System.arraycopy(colGreen, col, sumGreen[row - firstRow], col, cols);
+					System.arraycopy(colBlue, col, sumBlue[row - firstRow], col, cols);
+				}
+			});
+			scheduler.runBands(endRow - firstRow, 8, (firstBand, endBand) -> {
+				Window out = Window.write(dst, new Rectangle(0, firstRow + firstBand, w, endBand - firstBand));
+				for (int row = firstRow + firstBand; row < firstRow + endBand; row++) {
+					int rows = Math.min(row + radius, h - 1) - Math.max(row - radius, 0) + 1;
+					int i = row - firstRow;
+					blurRow(sumRed[i], sumGreen[i], sumBlue[i], 0, w - 1, radius, rows, out.data, out.index(0, row), 0,
+							w);
+				}
+				out.commit();
+			});
+		}
+	}
+
+	/**
+	 * Adds (sign 1) or subtracts (sign -1) the {@code cols} pixels
+	 * {@code data[start]} onwards to the column sums of columns {@code col}
+	 * onwards.
+	 */
+	private static void addColumns(int[] data, int start, int[] colRed, int[] colGreen, int[] colBlue, int col,
+			int cols, int sign) {
+		for (int i = 0; i < cols; i++) {
+			int rgb = data[start + i];
+			colRed[col + i] += sign * ((rgb >> 16) & 0xFF);
+			colGreen[col + i] += sign * ((rgb >> 8) & 0xFF);
+			colBlue[col + i] += sign * (rgb & 0xFF);
+		}
+	}
+
+	/**
+	 * Adds (sign 1) or subtracts (sign -1) the pixels {@code data[start]} onwards
+	 * to the column sums, one pixel per column sum.
+	 */
+	static void addRow(int[] data, int start, int[] colRed, int[] colGreen, int[] colBlue, int sign) {
+		for (int i = 0; i < colRed.length; i++) {
+			int rgb = data[start + i];
+			colRed[i] += sign * ((rgb >> 16) & 0xFF);
+			colGreen[i] += sign * ((rgb >> 8) & 0xFF);
+			colBlue[i] += sign * (rgb & 0xFF);
+		}
+	}
+
+	/**
+	 * Slides a horizontal window across the column sums to produce the columns
+	 * {@code dstCol} to {@code dstCol + dstWidth - 1} of one row, stored from
+	 * {@code dst[out]} onwards. Column sum {@code i} belongs to picture column
+	 * {@code firstCol + i}, and {@code rows} is the number of picture rows inside
+	 * the box.
+	 */
+	static void blurRow(int[] colRed, int[] colGreen, int[] colBlue, int firstCol, int lastCol, int radius,
+			int rows, int[] dst, int out, int dstCol, int dstWidth) {
+		long red = 0;
+		long green = 0;
+		long blue = 0;
+		for (int col = Math.max(dstCol - radius, firstCol); col <= Math.min(dstCol + radius, lastCol); col++) {
+			red += colRed[col - firstCol];
+			green += colGreen[col - firstCol];
+			blue += colBlue[col - firstCol];
+		}
+		for (int col = dstCol; col < dstCol + dstWidth; col++) {
+			long count = (long) rows * (Math.min(col + radius, lastCol) - Math.max(col - radius, firstCol) + 1);
+			dst[out++] = (roundDiv(red, count) << 16) | (roundDiv(green, count) << 8) | roundDiv(blue, count);
+
+			if (col + radius + 1 <= lastCol) {
+				red += colRed[col + radius + 1 - firstCol];
+				green += colGreen[col + radius + 1 - firstCol];
+				blue += colBlue[col + radius + 1 - firstCol];
+			}
+			if (col - radius >= firstCol) {
+				red -= colRed[col - radius - firstCol];
+				green -= colGreen[col - radius - firstCol];
+				blue -= colBlue[col - radius - firstCol];
+			}
+		}
+	}
+
+	/**
+	 * Returns the radii of {@code passes} box blurs that, applied one after the
+	 * other, approximate a Gaussian blur with standard deviation {@code sigma}.
+	 * A box of radius {@code r} has variance {@code ((2r + 1)^2 - 1) / 12}, and
+	 * variances add, so the radii are the two neighbouring box sizes whose mix
+	 * has the variance nearest {@code sigma^2}; the smaller boxes come first.
+	 *
+	 * @param sigma  - standard deviation of the Gaussian
+	 * @param passes - number of box blurs
+	 * @return the radii, in the order to apply them
+	 */
+	static int[] gaussianRadii(double sigma, int passes) {
+		if (!(sigma > 0)) {
+			throw new IllegalArgumentException("sigma must be positive: " + sigma);
+		}
+		double variance = 12 * sigma * sigma;
+		int lower = (int) Math.sqrt(variance / passes + 1);
+		if (lower % 2 == 0) {
+			lower--;
+		}
+		long smaller = Math.round((variance - passes * lower * lower - 4.0 * passes * lower - 3.0 * passes)
+				/ (-4.0 * lower - 4));
+		int[] radii = new int[passes];
+		for (int i = 0; i < passes; i++) {
+			radii[i] = i < smaller ? (lower - 1) / 2 : (lower + 1) / 2;
+		}
+		return radii;
+	}
+
+	/**
+	 * Returns {@code Math.round((double) sum / count)} for a non-negative sum
+	 * without floating point arithmetic.
+	 */
+	static int roundDiv(long sum, long count) {
+		return (int) ((2 * sum + count) / (2 * count));
+	}
+}
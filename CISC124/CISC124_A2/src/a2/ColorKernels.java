@@ -0,0 +1,61 @@
+package a2;
+
+/**
+ * The per-pixel colour conversions used by {@link A2} and {@link Pipeline}.
+ *
+ * <p>
+ * When the {@code jdk.incubator.vector} module is present (run with
+ * {@code --add-modules jdk.incubator.vector}) and the preferred vectors of the
+ * processor hold at least 4 {@code double}s (256 bits, as with AVX2), so that
+ * each step converts at least 8 pixels, the conversions are the SIMD ones of
+ * {@link VectorColorKernels}; otherwise they are the scalar rows of
+ * {@link A2}. Both give identical results. Setting the system property
+ * {@code a2.vector} to {@code false} forces the scalar rows.
+ */
+final class ColorKernels {
+	/**
+	 * Writes the gray version of each pixel, as {@link A2#toGray(Picture)} does.
+	 */
+	static final RowKernel GRAY;
+
+	/**
+	 * Writes the binary version of each pixel, as {@link A2#toBinary(Picture)}
+	 * does.
+	 */
+	static final RowKernel BINARY;
+
+	/**
+	 * Writes each pixel with red-eye removed, as {@link A2#redEye(Picture)} does.
+	 */
+	static final RowKernel RED_EYE;
+
+	/**
+	 * Whether the conversions use the Vector API.
+	 */
+	static final boolean VECTORIZED;
+
+	static {
+		RowKernel[] kernels = Boolean.parseBoolean(System.getProperty("a2.vector", "true")) ? vectorKernels() : null;
+		VECTORIZED = kernels != null;
+		if (kernels == null)
+			kernels = new RowKernel[] { A2::grayRow, A2::binaryRow, A2::redEyeRow };
+		GRAY = kernels[0];
+		BINARY = kernels[1];
+		RED_EYE = kernels[2];
+	}
+
+	private ColorKernels() {
+	}
+
+	/**
+	 * Loads {@link VectorColorKernels} by name, so that this class links even
+	 * when the vector module is missing.
+	 */
+	private static RowKernel[] vectorKernels() {
+		try {
+			return (RowKernel[]) Class.forName("a2.VectorColorKernels").getDeclaredMethod("kernels").invoke(null);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package a2;
+
+import java.awt.Rectangle;
+
+/**
+ * Convolution of a picture with any {@link Kernel}, the general form of
+ * {@link A2#boxAvg(Picture, int, int, int)}: each channel of each pixel of the
+ * result is the weighted sum of that channel over the kernel-sized rectangle
+ * around the pixel, rounded and clamped to 0 to 255.
+ *
+ * <p>
+ * Pixels outside the picture are read as the {@link EdgeMode} says. The edges
+ * are dealt with once per tile, not once per weight: each tile copies the
+ * source pixels it needs into a padded buffer of floats, one per channel,
+ * looking up the columns and rows outside the picture in tables built for the
+ * tile. The loops that multiply and add then run over plain arrays with no
+ * bounds tests, and over whole rows at a time so that the JIT can vectorize
+ * them. A separable kernel is applied as a horizontal pass into a buffer and a
+ * vertical pass out of it.
+ *
+ * <p>
+ * The convolution runs on tiles (see {@link TileScheduler}). A tile reads its
+ * own rectangle grown by the radius of the kernel; with {@link EdgeMode#WRAP},
+ * a tile near an edge also reads the far side of the picture.
+ */
+public final class Convolution {
+	private final Kernel kernel;
+	private final EdgeMode edges;
+	private final float[] weights, horizontal, vertical;
+
+	/**
+	 * Creates a convolution.
+	 *
+	 * @param kernel the weights
+	 * @param edges  how to read pixels outside the picture
+	 * @throws IllegalArgumentException if an argument is {@code null}
+	 */
+	public Convolution(Kernel kernel, EdgeMode edges) {
+		if (kernel == null || edges == null)
+			throw new IllegalArgumentException("constructor argument is null");
+		this.kernel = kernel;
+		this.edges = edges;
+		this.weights = floats(kernel.weights());
+		this.horizontal = kernel.isSeparable() ? floats(kernel.horizontal()) : null;
+		this.vertical = kernel.isSeparable() ? floats(kernel.vertical()) : null;
+	}
+
+	/**
+	 * Returns the kernel.
+	 *
+	 * @return the weights of this convolution
+	 */
+	public Kernel kernel() {
+		return kernel;
+	}
+
+	/**
+	 * Returns how pixels outside the picture are read.
+	 *
+	 * @return the edge mode
+	 */
+	public EdgeMode edgeMode() {
+		return edges;
+	}
+
+	/**
+	 * Convolves a picture.
+	 *
+	 * @param p the picture
+	 * @return the result, a new picture the size of {@code p}
+	 */
+	public Picture apply(Picture p) {
+		Picture result = p.blank(p.width(), p.height());
+		int rx = kernel.width() / 2;
+		int ry = kernel.height() / 2;
+		A2.getScheduler().run(p, result, tileKernel(p, edges, rx, ry, (in, dst) -> {
+			float[][] out = new float[3][];
+			for (int c = 0; c < 3; c++)
+				out[c] = convolve(in, c, dst.width, dst.height);
+			store(out, dst);
+		}));
+		return result;
+	}
+
+	/**
+	 * Returns the Sobel edge strength of a picture: each channel of each pixel
+	 * is the length of the gradient given by {@link Kernel#sobelX()} and
+	 * {@link Kernel#sobelY()}, rounded and clamped to 0 to 255.
+	 *
+	 * @param p     the picture
+	 * @param edges how to read pixels outside the picture
+	 * @return the result, a new picture the size of {@code p}
+	 */
+	public static Picture sobel(Picture p, EdgeMode edges) {
+		Convolution x = new Convolution(Kernel.sobelX(), edges);
+		Convolution y = new Convolution(Kernel.sobelY(), edges);
+		Picture result = p.blank(p.width(), p.height());
+		A2.getScheduler().run(p, result, tileKernel(p, edges, 1, 1, (in, dst) -> {
+			float[][] out = new float[3][];
+			for (int c = 0; c < 3; c++) {
+				float[] gx = x.convolve(in, c, dst.width, dst.height);
+				float[] gy = y.convolve(in, c, dst.width, dst.height);
+				for (int i = 0; i < gx.length; i++)
+					gx[i] = (float) Math.sqrt(gx[i] * gx[i] + gy[i] * gy[i]);
+				out[c] = gx;
+			}
+			store(out, dst);
+		}));
+		return result;
+	}
+
+	/**
+	 * The source pixels of a tile, one padded plane per channel. Plane pixel
+	 * ({@code x}, {@code y}) is picture pixel ({@code col - rx + x},
+	 * {@code row - ry + y}) as read by the edge mode, where ({@code col},
+	 * {@code row}) is the top left of the tile.
+	 */
+	private static final class Padded {
+		final int width, height;
+		final float[][] planes;
+
+		Padded(int width, int height) {
+			this.width = width;
+			this.height = height;
+			this.planes = new float[3][width * height];
+		}
+	}
+
+	/**
+	 * Computes padded planes of a tile.
+	 */
+	@FunctionalInterface
+	private interface PaddedKernel {
+		void apply(Padded in, Window dst);
+	}
+
+	/**
+	 * Returns a kernel that gives {@code kernel} the source of each tile padded
+	 * by {@code rx} columns and {@code ry} rows.
+	 */
+	private static TileKernel tileKernel(Picture p, EdgeMode edges, int rx, int ry, PaddedKernel kernel) {
+		int width = p.width();
+		int height = p.height();
+		return new TileKernel() {
+			@Override
+			public Rectangle source(Rectangle target, int srcWidth, int srcHeight) {
+				Rectangle r = new Rectangle(target);
+				r.grow(rx, ry);
+				if (edges == EdgeMode.WRAP && (r.x < 0 || r.x + r.width > srcWidth)) {
+					r.x = 0;
+					r.width = srcWidth;
+				}
+				if (edges == EdgeMode.WRAP && (r.y < 0 || r.y + r.height > srcHeight)) {
+					r.y = 0;
+					r.height = srcHeight;
+				}
+				return r.intersection(new Rectangle(srcWidth, srcHeight));
+			}
+
+			@Override
+			public void apply(Window src, Window dst) {
+				kernel.apply(load(src, dst, edges, rx, ry, width, height), dst);
+			}
+		};
+	}
+
+	/**
+	 * Copies the source of the tile {@code dst} into padded planes, reading the
+	 * columns and rows outside the picture through the edge mode.
+	 */
+	private static Padded load(Window src, Window dst, EdgeMode edges, int rx, int ry, int width, int height) {
+		Padded in = new Padded(dst.width + 2 * rx, dst.height + 2 * ry);
+		int[] cols = new int[in.width];
+		for (int x = 0; x < in.width; x++)
+			cols[x] = edges.map(dst.col - rx + x, width);
+		float[] red = in.planes[0], green = in.planes[1], blue = in.planes[2];
+		for (int y = 0; y < in.height; y++) {
+			int base = src.index(0, edges.map(dst.row - ry + y, height));
+			int pos = y * in.width;
+			for (int x = 0; x < in.width; x++) {
+				int rgb = src.data[base + cols[x]];
+				red[pos + x] = rgb >> 16 & 0xFF;
+				green[pos + x] = rgb >> 8 & 0xFF;
+				blue[pos + x] = rgb & 0xFF;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Convolves channel {@code c} of padded planes, giving a {@code w}-by-{@code h}
+	 * plane.
+	 */
+	private float[] convolve(Padded in, int c, int w, int h) {
+		float[] src = in.planes[c];
+		float[] out = new float[w * h];
+		int kw = kernel.width();
+		int kh = kernel.height();
+		if (horizontal != null) {
+			float[] rows = new float[in.height * w];
+			for (int y = 0; y < in.height; y++) {
+				int s = y * in.width;
+				int d = y * w;
+				for (int k = 0; k < kw; k++) {
+					float weight = horizontal[k];
+					if (weight == 0)
+						continue;
+					for (int x = 0; x < w; x++)
+						rows[d + x] += weight * src[s + k + x];
+				}
+			}
+			for (int y = 0; y < h; y++) {
+				int d = y * w;
+				for (int k = 0; k < kh; k++) {
+					float weight = vertical[k];
+					if (weight == 0)
+						continue;
+					int s = (y + k) * w;
+					for (int x = 0; x < w; x++)
+						out[d + x] += weight * rows[s + x];
+				}
+			}
+		} else {
+			for (int y = 0; y < h; y++) {
+				int d = y * w;
+				for (int j = 0; j < kh; j++) {
+					for (int i = 0; i < kw; i++) {
+						float weight = weights[j * kw + i];
+						if (weight == 0)
+							continue;
+						int s = (y + j) * in.width + i;
+						for (int x = 0; x < w; x++)
+							out[d + x] += weight * src[s + x];
+					}
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Rounds and clamps three planes into the pixels of {@code dst}.
+	 */
+	private static void store(float[][] out, Window dst) {
+		float[] red = out[0], green = out[1], blue = out[2];
+		for (int y = 0; y < dst.height; y++) {
+			int pos = dst.index(dst.col, dst.row + y);
+			int s = y * dst.width;
+			for (int x = 0; x < dst.width; x++) {
+				dst.data[pos + x] = level(red[s + x]) << 16 | level(green[s + x]) << 8 | level(blue[s + x]);
+			}
+		}
+	}
+
+	/**
+	 * Returns {@code v} rounded to the nearest level from 0 to 255.
+	 */
+	private static int level(float v) {
+		return Math.min(Math.max(Math.round(v), 0), 255);
+	}
+
+	private static float[] floats(double[] d) {
+		float[] f = new float[d.length];
+		for (int i = 0; i < d.length; i++)
+			f[i] = (float) d[i];
+		return f;
+	}
+}
@@ -0,0 +1,48 @@
+package a2;
+
+/**
+ * How a {@link Convolution} reads pixels outside the picture.
+ */
+public enum EdgeMode {
+	/**
+	 * A pixel outside the picture has the color of the nearest edge pixel.
+	 */
+	CLAMP,
+
+	/**
+	 * The picture is reflected about its edge pixels, so that column -1 is
+	 * column 1 and column {@code width} is column {@code width - 2}.
+	 */
+	MIRROR,
+
+	/**
+	 * The picture repeats, so that column -1 is column {@code width - 1} and
+	 * column {@code width} is column 0.
+	 */
+	WRAP;
+
+	/**
+	 * Returns the index inside {@code 0} to {@code n - 1} that index {@code i}
+	 * reads.
+	 *
+	 * @param i an index, possibly outside the picture
+	 * @param n the number of columns or rows of the picture
+	 * @return the index read
+	 */
+	int map(int i, int n) {
+		if (i >= 0 && i < n)
+			return i;
+		switch (this) {
+		case CLAMP:
+			return i < 0 ? 0 : n - 1;
+		case MIRROR:
+			if (n == 1)
+				return 0;
+			int period = 2 * n - 2;
+			i = Math.floorMod(i, period);
+			return i < n ? i : period - i;
+		default:
+			return Math.floorMod(i, n);
+		}
+	}
+}
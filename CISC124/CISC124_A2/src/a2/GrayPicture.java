@@ -0,0 +1,155 @@
+package a2;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A grayscale picture that keeps one byte per pixel, a quarter of the memory
+ * of a {@link Picture}.
+ *
+ * <p>
+ * The {@code get} and {@code set} methods behave as for any picture, except
+ * that a color is stored as its gray level, weighted as in
+ * {@link A2#toGray(Picture)}, so reading a pixel back gives the gray color of
+ * that level. Gray colors are stored exactly. {@link A2#toGrayCompact(Picture)}
+ * returns a {@code GrayPicture}, and every operation accepts one as its source.
+ * {@link #pixels()} returns a copy of the pixels; use {@link #levels()} for the
+ * raster.
+ */
+public final class GrayPicture extends Picture {
+	private final byte[] levels; // gray level of each pixel, row-major
+
+	/**
+	 * Creates a {@code width}-by-{@code height} grayscale picture, where each
+	 * pixel is black.
+	 *
+	 * @param width  the width of the picture
+	 * @param height the height of the picture
+	 * @throws IllegalArgumentException if {@code width} is negative or zero
+	 * @throws IllegalArgumentException if {@code height} is negative or zero
+	 */
+	public GrayPicture(int width, int height) {
+		super(width, height, false);
+		levels = new byte[Math.multiplyExact(width, height)];
+	}
+
+	/**
+	 * Returns the gray levels of this picture, one unsigned byte per pixel in
+	 * row-major order. Writes to the returned array change the picture.
+	 *
+	 * @return the raster of this picture
+	 */
+	public byte[] levels() {
+		beforeWrite();
+		escape();
+		return levels;
+	}
+
+	/**
+	 * Returns a copy of the pixels of this picture, since a grayscale picture
+	 * has no {@code int} raster. Writes to the returned array do not change the
+	 * picture; use {@link #levels()} for that.
+	 *
+	 * @return the pixels of this picture, row by row
+	 * @throws IllegalArgumentException if the picture has too many pixels for
+	 *                                  an array
+	 */
+	@Override
+	public int[] pixels() {
+		return copyPixels();
+	}
+
+	@Override
+	public int getRGB(int col, int row) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		return rgb(levels[row * width() + col]);
+	}
+
+	@Override
+	public void setRGB(int col, int row, int rgb) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		beforeWrite();
+		levels[row * width() + col] = level(rgb);
+	}
+
+	@Override
+	public void getRegion(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		validateRegion(col, row, w, h, dst, offset, scan);
+		for (int y = 0; y < h; y++) {
+			int i = (row + y) * width() + col;
+			int out = offset + y * scan;
+			for (int x = 0; x < w; x++) {
+				dst[out + x] = rgb(levels[i + x]);
+			}
+		}
+	}
+
+	@Override
+	public void setRegion(int col, int row, int w, int h, int[] src, int offset, int scan) {
+		validateRegion(col, row, w, h, src, offset, scan);
+		beforeWrite();
+		for (int y = 0; y < h; y++) {
+			int i = (row + y) * width() + col;
+			int in = offset + y * scan;
+			for (int x = 0; x < w; x++) {
+				levels[i + x] = level(src[in + x]);
+			}
+		}
+	}
+
+	@Override
+	public void fillRegion(int col, int row, int w, int h, int rgb) {
+		validateRectangle(col, row, w, h);
+		beforeWrite();
+		byte level = level(rgb);
+		for (int y = 0; y < h; y++) {
+			int i = (row + y) * width() + col;
+			Arrays.fill(levels, i, i + w, level);
+		}
+	}
+
+	@Override
+	long footprint() {
+		return levels.length;
+	}
+
+	@Override
+	boolean isGray() {
+		return true;
+	}
+
+	/**
+	 * Returns an 8-bit gray image that shares the gray levels of this picture.
+	 */
+	@Override
+	BufferedImage image() {
+		byte[] gray = new byte[256];
+		for (int i = 0; i < gray.length; i++) {
+			gray[i] = (byte) i;
+		}
+		IndexColorModel model = new IndexColorModel(8, 256, gray, gray, gray);
+		WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(levels, levels.length), width(),
+				height(), width(), 1, new int[] { 0 }, null);
+		return new BufferedImage(model, raster, false, null);
+	}
+
+	private static int rgb(byte level) {
+		int g = level & 0xFF;
+		return (g << 16) | (g << 8) | g;
+	}
+
+	private static byte level(int rgb) {
+		int red = (rgb >> 16) & 0xFF;
+		int blue = rgb & 0xFF;
+		// gray colors are common here and are their own level
+		if (red == blue && red == ((rgb >> 8) & 0xFF))
+			return (byte) red;
+		return (byte) A2.grayValue(rgb);
+	}
+}
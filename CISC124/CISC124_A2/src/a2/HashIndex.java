@@ -0,0 +1,237 @@
+package a2;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index of 64-bit hashes, such as those of {@link PerceptualHash},
+ * that finds the hashes within a given Hamming distance of a query.
+ *
+ * <p>
+ * The index is a multi-index hash table: each hash is cut into four 16-bit
+ * chunks, and each chunk is a key of its own table of 65536 buckets. If two
+ * hashes differ in at most {@code d} bits, then in at least one of the four
+ * chunks they differ in at most {@code d / 4} bits, so a search only has to
+ * look in the buckets of the chunks of the query and of the chunk values
+ * within {@code d / 4} bits of them: 4 buckets for a distance up to 3, 68 up
+ * to 7 and 548 up to 11. With hashes spread evenly over the buckets, a bucket
+ * of an index of 10 million hashes holds about 150, so a search compares a few
+ * hundred to a few tens of thousands of hashes, in arrays that are scanned in
+ * order, and takes well under a millisecond. A BK-tree, the other usual
+ * structure, visits a large part of its nodes at these distances, as 64-bit
+ * hashes are too evenly spread for its triangle inequality to prune much.
+ *
+ * <p>
+ * Each bucket keeps the full hashes and the ids of its entries in two arrays,
+ * so an index takes about 70 bytes per hash. Hashes are numbered 0, 1, 2, ...
+ * in the order they are added, and these ids can index the caller's own arrays
+ * of whatever each hash stands for. An index is safe to use from several
+ * threads; searches run at the same time, and additions one at a time.
+ */
+public final class HashIndex {
+	private static final int TABLES = 4;
+	private static final int CHUNK_BITS = 64 / TABLES;
+	private static final int BUCKETS = 1 << CHUNK_BITS;
+	private static final int FIRST_CAPACITY = 4; // entries of a new bucket
+
+	private final long[][][] hashes = new long[TABLES][BUCKETS][]; // the hashes in each bucket
+	private final int[][][] ids = new int[TABLES][BUCKETS][]; // and their ids
+	private final int[][] counts = new int[TABLES][BUCKETS];
+	private long[] byId = new long[16];
+	private int size;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Adds a hash to the index. The same hash may be added more than once, and
+	 * gets a new id each time.
+	 *
+	 * @param hash the hash
+	 * @return the id of the hash, the number of hashes added before it
+	 */
+	public int add(long hash) {
+		lock.writeLock().lock();
+		try {
+			int id = size;
+			if (id == byId.length)
+				byId = Arrays.copyOf(byId, Math.multiplyExact(2, id));
+			byId[id] = hash;
+			for (int t = 0; t < TABLES; t++) {
+				int b = chunk(hash, t);
+				int n = counts[t][b];
+				if (hashes[t][b] == null) {
+					hashes[t][b] = new long[FIRST_CAPACITY];
+					ids[t][b] = new int[FIRST_CAPACITY];
+				} else if (n == hashes[t][b].length) {
+					hashes[t][b] = Arrays.copyOf(hashes[t][b], n + (n >> 1));
+					ids[t][b] = Arrays.copyOf(ids[t][b], n + (n >> 1));
+				}
+				hashes[t][b][n] = hash;
+				ids[t][b][n] = id;
+				counts[t][b] = n + 1;
+			}
+			size++;
+			return id;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the hash with the given id.
+	 *
+	 * @param id the id
+	 * @return the hash
+	 * @throws IllegalArgumentException if no hash has that id
+	 */
+	public long hash(int id) {
+		lock.readLock().lock();
+		try {
+			if (id < 0 || id >= size)
+				throw new IllegalArgumentException("no hash with id " + id);
+			return byId[id];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of hashes in the index.
+	 *
+	 * @return the number of hashes
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the id of the hash nearest to {@code hash}, if it is at most
+	 * {@code maxDistance} bits away. Of several at the same distance, the one
+	 * added first is returned.
+	 *
+	 * @param hash        the query
+	 * @param maxDistance the largest Hamming distance of a match
+	 * @return the id of the nearest match, or -1 if there is none
+	 * @throws IllegalArgumentException if {@code maxDistance} is negative
+	 */
+	public int nearest(long hash, int maxDistance) {
+		Search search = new Search(hash, maxDistance, false);
+		search(search);
+		return search.best;
+	}
+
+	/**
+	 * Returns the ids of every hash at most {@code maxDistance} bits away from
+	 * {@code hash}.
+	 *
+	 * @param hash        the query
+	 * @param maxDistance the largest Hamming distance of a match
+	 * @return the ids of the matches, in increasing order
+	 * @throws IllegalArgumentException if {@code maxDistance} is negative
+	 */
+	public int[] within(long hash, int maxDistance) {
+		Search search = new Search(hash, maxDistance, true);
+		search(search);
+		int[] found = Arrays.copyOf(search.found, search.count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * The state of one search.
+	 */
+	private static final class Search {
+		final long query;
+		final int maxDistance;
+		final int slack; // bits a chunk of a match may differ in, in some table
+		final boolean all; // every match, or only the nearest
+		int best = -1, bestDistance;
+		int[] found;
+		int count;
+
+		Search(long query, int maxDistance, boolean all) {
+			if (maxDistance < 0)
+				throw new IllegalArgumentException("distance must not be negative: " + maxDistance);
+			this.query = query;
+			this.maxDistance = Math.min(maxDistance, 64);
+			this.slack = Math.min(this.maxDistance / TABLES, CHUNK_BITS);
+			this.all = all;
+			this.bestDistance = this.maxDistance + 1;
+			this.found = all ? new int[16] : null;
+		}
+	}
+
+	/**
+	 * Looks in every bucket of every table whose chunk is within the slack of
+	 * the chunk of the query.
+	 */
+	private void search(Search search) {
+		lock.readLock().lock();
+		try {
+			for (int t = 0; t < TABLES; t++) {
+				probe(search, t, chunk(search.query, t), 0, search.slack);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scans bucket {@code b} of table {@code t}, then the buckets that differ
+	 * from it in up to {@code flips} more bits, all above bit {@code from}, so
+	 * that each bucket is scanned once.
+	 */
+	private void probe(Search search, int t, int b, int from, int flips) {
+		scan(search, t, b);
+		if (flips == 0)
+			return;
+		for (int bit = from; bit < CHUNK_BITS; bit++) {
+			probe(search, t, b ^ (1 << bit), bit + 1, flips - 1);
+		}
+	}
+
+	private void scan(Search search, int t, int b) {
+		long[] bucket = hashes[t][b];
+		int n = counts[t][b];
+		for (int i = 0; i < n; i++) {
+			long h = bucket[i];
+			int d = Long.bitCount(h ^ search.query);
+			if (d > search.maxDistance)
+				continue;
+			int id = ids[t][b][i];
+			if (!search.all) {
+				if (d < search.bestDistance || d == search.bestDistance && id < search.best) {
+					search.best = id;
+					search.bestDistance = d;
+				}
+			} else if (firstTable(h, search) == t) {
+				if (search.count == search.found.length)
+					search.found = Arrays.copyOf(search.found, 2 * search.count);
+				search.found[search.count++] = id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first table in which a search finds {@code h}, the one it is
+	 * reported from, so that it is reported once.
+	 */
+	private static int firstTable(long h, Search search) {
+		int t = 0;
+		while (Integer.bitCount(chunk(h, t) ^ chunk(search.query, t)) > search.slack)
+			t++;
+		return t;
+	}
+
+	/**
+	 * Returns chunk {@code t} of {@code hash}.
+	 */
+	private static int chunk(long hash, int t) {
+		return (int) (hash >>> (CHUNK_BITS * t)) & (BUCKETS - 1);
+	}
+}
@@ -0,0 +1,243 @@
+package a2;
+
+import java.util.Arrays;
+
+/**
+ * The weights of a {@link Convolution}: a rectangle of odd width and height
+ * centred on the pixel being computed. Weight ({@code i}, {@code j}) multiplies
+ * the pixel {@code i - width / 2} columns right of and {@code j - height / 2}
+ * rows below that pixel; the weights are not flipped.
+ *
+ * <p>
+ * A kernel is <em>separable</em> if its weights are the products of a row of
+ * horizontal weights and a column of vertical weights. Such a kernel is found
+ * when it is created, and is applied as a horizontal pass followed by a
+ * vertical pass, which costs {@code width + height} multiplications per pixel
+ * instead of {@code width * height}. Box, Gaussian and Sobel kernels are
+ * separable; the sharpen kernel is not.
+ *
+ * <p>
+ * Kernels are immutable.
+ */
+public final class Kernel {
+	private static final double SEPARABLE_TOLERANCE = 1e-9; // relative to the largest weight
+
+	private final int width, height;
+	private final double[] weights; // row-major
+	private final double[] horizontal, vertical; // factors, or null if not separable
+
+	/**
+	 * Creates a kernel.
+	 *
+	 * @param width   the number of columns, odd
+	 * @param height  the number of rows, odd
+	 * @param weights the weights, row by row
+	 * @throws IllegalArgumentException if {@code width} or {@code height} is not
+	 *                                  positive and odd, or if there are not
+	 *                                  {@code width * height} weights
+	 */
+	public Kernel(int width, int height, double... weights) {
+		if (width <= 0 || width % 2 == 0)
+			throw new IllegalArgumentException("width must be positive and odd: " + width);
+		if (height <= 0 || height % 2 == 0)
+			throw new IllegalArgumentException("height must be positive and odd: " + height);
+		if (weights == null || weights.length != width * height)
+			throw new IllegalArgumentException("need " + width * height + " weights");
+		this.width = width;
+		this.height = height;
+		this.weights = weights.clone();
+		double[][] factors = factor();
+		this.horizontal = factors == null ? null : factors[0];
+		this.vertical = factors == null ? null : factors[1];
+	}
+
+	/**
+	 * Returns the separable kernel whose weight ({@code i}, {@code j}) is
+	 * {@code horizontal[i] * vertical[j]}.
+	 *
+	 * @param horizontal the weights of a row, an odd number of them
+	 * @param vertical   the weights of a column, an odd number of them
+	 * @return the kernel
+	 */
+	public static Kernel separable(double[] horizontal, double[] vertical) {
+		double[] weights = new double[horizontal.length * vertical.length];
+		for (int j = 0; j < vertical.length; j++) {
+			for (int i = 0; i < horizontal.length; i++) {
+				weights[j * horizontal.length + i] = horizontal[i] * vertical[j];
+			}
+		}
+		return new Kernel(horizontal.length, vertical.length, weights);
+	}
+
+	/**
+	 * Returns a box kernel that averages the pixels within {@code radius} columns
+	 * and rows, as {@link A2#boxAvg(Picture, int, int, int)} does away from the
+	 * edges.
+	 *
+	 * @param radius the radius of the box
+	 * @return the kernel
+	 * @throws IllegalArgumentException if {@code radius} is negative
+	 */
+	public static Kernel box(int radius) {
+		if (radius < 0)
+			throw new IllegalArgumentException("radius must not be negative: " + radius);
+		double[] row = new double[2 * radius + 1];
+		Arrays.fill(row, 1.0 / row.length);
+		return separable(row, row);
+	}
+
+	/**
+	 * Returns a Gaussian blur kernel with standard deviation {@code sigma},
+	 * cut off at {@code 3 * sigma} and normalized to sum to 1.
+	 *
+	 * @param sigma the standard deviation, in pixels
+	 * @return the kernel
+	 * @throws IllegalArgumentException if {@code sigma} is not positive
+	 */
+	public static Kernel gaussian(double sigma) {
+		if (!(sigma > 0))
+			throw new IllegalArgumentException("sigma must be positive: " + sigma);
+		int radius = (int) Math.ceil(3 * sigma);
+		double[] row = new double[2 * radius + 1];
+		double sum = 0;
+		for (int i = -radius; i <= radius; i++) {
+			row[i + radius] = Math.exp(-i * i / (2 * sigma * sigma));
+			sum += row[i + radius];
+		}
+		for (int i = 0; i < row.length; i++) {
+			row[i] /= sum;
+		}
+		return separable(row, row);
+	}
+
+	/**
+	 * Returns the 3-by-3 sharpen kernel, the pixel less the mean of its four
+	 * neighbours, times four, added to the pixel.
+	 *
+	 * @return the kernel
+	 */
+	public static Kernel sharpen() {
+		return new Kernel(3, 3,
+				0, -1, 0,
+				-1, 5, -1,
+				0, -1, 0);
+	}
+
+	/**
+	 * Returns the Sobel kernel for the horizontal gradient, positive where the
+	 * picture gets brighter to the right.
+	 *
+	 * @return the kernel
+	 */
+	public static Kernel sobelX() {
+		return separable(new double[] { -1, 0, 1 }, new double[] { 1, 2, 1 });
+	}
+
+	/**
+	 * Returns the Sobel kernel for the vertical gradient, positive where the
+	 * picture gets brighter downwards.
+	 *
+	 * @return the kernel
+	 */
+	public static Kernel sobelY() {
+		return separable(new double[] { 1, 2, 1 }, new double[] { -1, 0, 1 });
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return the width of the kernel
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the height of the kernel
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns weight ({@code col}, {@code row}).
+	 *
+	 * @param col the column, from 0
+	 * @param row the row, from 0
+	 * @return the weight
+	 */
+	public double weight(int col, int row) {
+		if (col < 0 || col >= width || row < 0 || row >= height)
+			throw new IllegalArgumentException("weight (" + col + ", " + row + ") is outside the kernel");
+		return weights[row * width + col];
+	}
+
+	/**
+	 * Returns whether the kernel is separable, and is applied in two passes.
+	 *
+	 * @return true if the kernel is separable
+	 */
+	public boolean isSeparable() {
+		return horizontal != null;
+	}
+
+	/**
+	 * Returns the weights, row by row.
+	 */
+	double[] weights() {
+		return weights;
+	}
+
+	/**
+	 * Returns the horizontal factor of a separable kernel, or {@code null}.
+	 */
+	double[] horizontal() {
+		return horizontal;
+	}
+
+	/**
+	 * Returns the vertical factor of a separable kernel, or {@code null}.
+	 */
+	double[] vertical() {
+		return vertical;
+	}
+
+	/**
+	 * Returns the horizontal and vertical factors of the weights, or
+	 * {@code null} if they have none. The horizontal factor is the row with the
+	 * largest weight, and each vertical weight is the least-squares multiple of
+	 * that row that gives its own row.
+	 */
+	private double[][] factor() {
+		int pivot = 0;
+		double largest = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (Math.abs(weights[i]) > largest) {
+				largest = Math.abs(weights[i]);
+				pivot = i / width;
+			}
+		}
+		double[] h = Arrays.copyOfRange(weights, pivot * width, (pivot + 1) * width);
+		double[] v = new double[height];
+		double norm = 0;
+		for (double x : h) {
+			norm += x * x;
+		}
+		for (int j = 0; j < height; j++) {
+			double dot = 0;
+			for (int i = 0; i < width; i++) {
+				dot += weights[j * width + i] * h[i];
+			}
+			v[j] = norm > 0 ? dot / norm : 0;
+		}
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				if (Math.abs(weights[j * width + i] - v[j] * h[i]) > SEPARABLE_TOLERANCE * largest)
+					return null;
+			}
+		}
+		return new double[][] { h, v };
+	}
+}
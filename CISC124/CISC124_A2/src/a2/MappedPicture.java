@@ -0,0 +1,469 @@
+package a2;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A picture whose pixels are kept in a memory-mapped file instead of the heap,
+ * for images that are too large to load.
+ *
+ * <p>
+ * The file is a raw raster cut into square tiles:
+ *
+ * <pre>
+ * offset  size  content
+ *      0     4  magic number 0x41325254 ("A2RT")
+ *      4     4  format version, 1
+ *      8     4  width in pixels
+ *     12     4  height in pixels
+ *     16     4  side of a tile in pixels
+ *     20    44  reserved, zero
+ *     64        the tiles, left to right and top to bottom
+ * </pre>
+ *
+ * Every tile holds {@code side * side} pixels, row by row, each a 32-bit ARGB
+ * {@code int}; tiles on the right and bottom edges are padded to full size.
+ * Pixels are written with an opaque alpha, and the alpha is ignored on reading,
+ * so pixels of a new file that were never written are black. All numbers are
+ * little-endian. Each row of tiles is mapped separately, so only the tiles an
+ * operation touches are brought into memory, and the operating system can page
+ * them out again.
+ *
+ * <p>
+ * The {@link A2} operations work on mapped pictures tile by tile, copying one
+ * tile and its halo at a time, and put their results in new mapped pictures
+ * backed by temporary files (see {@link #blank(int, int)}), so the memory they
+ * use is bounded by the tile size and the number of threads. {@link #pixels()}
+ * returns a copy of the pixels. A {@link BufferedImage} holds fewer than 2^31
+ * pixels, so larger mapped pictures can only be read and written through
+ * rows and regions, not displayed or saved as an image.
+ *
+ * <p>
+ * To convert a PNG, GIF or JPEG file to this format run
+ *
+ * <pre>
+ * java a2.MappedPicture image.png image.a2r
+ * </pre>
+ */
+public final class MappedPicture extends Picture {
+	/**
+	 * The first four bytes of a raster file.
+	 */
+	public static final int MAGIC = 0x41325254;
+
+	/**
+	 * Default side of a tile, in pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/**
+	 * Largest side of a tile, in pixels, for which a tile fits in a mapping.
+	 */
+	public static final int MAX_TILE_SIZE = 16384;
+
+	/**
+	 * Number of pixels {@link #convert} decodes at a time from images that
+	 * cannot be decoded straight into the file.
+	 */
+	public static final int CONVERT_BAND = 1 << 22;
+
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int OPAQUE = 0xFF000000;
+
+	private final Path file;
+	private final int tileSize;
+	private final MappedByteBuffer[] mappings; // one mapping per row of tiles
+	private final IntBuffer[] tileRows; // the pixels of each mapping
+
+	private MappedPicture(Path file, FileChannel channel, int width, int height, int tileSize)
+			throws IOException {
+		super(width, height, false);
+		this.file = file;
+		this.tileSize = tileSize;
+		long rowBytes = rowBytes(width, tileSize);
+		if (rowBytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("picture too wide for tiles of " + tileSize + ": " + width);
+		mappings = new MappedByteBuffer[(int) ((height + (long) tileSize - 1) / tileSize)];
+		tileRows = new IntBuffer[mappings.length];
+		for (int i = 0; i < mappings.length; i++) {
+			mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * rowBytes, rowBytes);
+			tileRows[i] = mappings[i].order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		}
+	}
+
+	/**
+	 * Returns the bytes of a row of tiles, for a tile size that is positive and
+	 * no more than {@link #MAX_TILE_SIZE}.
+	 */
+	private static long rowBytes(int width, int tileSize) {
+		long tilesAcross = (width + (long) tileSize - 1) / tileSize;
+		return 4L * tilesAcross * tileSize * tileSize;
+	}
+
+	/**
+	 * Creates a black {@code width}-by-{@code height} picture in a new raster
+	 * file, replacing the file if it exists.
+	 *
+	 * @param file   the raster file
+	 * @param width  the width of the picture
+	 * @param height the height of the picture
+	 * @return the picture
+	 * @throws IllegalArgumentException if the file cannot be created
+	 */
+	public static MappedPicture create(Path file, int width, int height) {
+		return create(file, width, height, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Creates a black {@code width}-by-{@code height} picture with the given tile
+	 * size in a new raster file, replacing the file if it exists.
+	 *
+	 * @param file     the raster file
+	 * @param width    the width of the picture
+	 * @param height   the height of the picture
+	 * @param tileSize the side of a tile
+	 * @return the picture
+	 * @throws IllegalArgumentException if the file cannot be created
+	 */
+	public static MappedPicture create(Path file, int width, int height, int tileSize) {
+		if (file == null)
+			throw new IllegalArgumentException("file argument is null");
+		if (tileSize <= 0 || tileSize > MAX_TILE_SIZE)
+			throw new IllegalArgumentException("tile size must be from 1 to " + MAX_TILE_SIZE + ": " + tileSize);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(tileSize).rewind();
+			channel.write(header, 0);
+			return new MappedPicture(file, channel, width, height, tileSize);
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not create file: " + file, ioe);
+		}
+	}
+
+	/**
+	 * Opens an existing raster file.
+	 *
+	 * @param file the raster file
+	 * @return the picture
+	 * @throws IllegalArgumentException if the file cannot be read, is not a
+	 *                                  raster file, or is shorter than its
+	 *                                  header says
+	 */
+	public static MappedPicture open(Path file) {
+		if (file == null)
+			throw new IllegalArgumentException("file argument is null");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC)
+				throw new IllegalArgumentException("not a raster file: " + file);
+			if (header.getInt(4) != VERSION)
+				throw new IllegalArgumentException("unsupported raster file version " + header.getInt(4) + ": " + file);
+			int width = header.getInt(8);
+			int height = header.getInt(12);
+			int tileSize = header.getInt(16);
+			if (width <= 0 || height <= 0 || tileSize <= 0 || tileSize > MAX_TILE_SIZE)
+				throw new IllegalArgumentException(
+						"bad raster file header, " + width + "x" + height + " in tiles of " + tileSize + ": " + file);
+			// a writable mapping past the end would silently grow the file
+			long size = HEADER_SIZE + (height + (long) tileSize - 1) / tileSize * rowBytes(width, tileSize);
+			if (channel.size() < size)
+				throw new IllegalArgumentException(
+						"raster file truncated, " + channel.size() + " of " + size + " bytes: " + file);
+			return new MappedPicture(file, channel, width, height, tileSize);
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not open file: " + file, ioe);
+		}
+	}
+
+	/**
+	 * Converts a PNG, GIF or JPEG file to a new raster file. Color JPEGs and
+	 * 8-bit RGB PNGs are decoded straight into the mapped file. Other images,
+	 * such as gray, palette or transparent PNGs and GIFs, are decoded a band of
+	 * about {@link #CONVERT_BAND} pixels at a time and converted to RGB, and
+	 * their readers decode the file from the start for each band. Either way
+	 * the image never has to fit on the heap.
+	 *
+	 * @param image  the image file
+	 * @param raster the raster file to create
+	 * @return the picture in the raster file
+	 * @throws IllegalArgumentException if the image cannot be read or the raster
+	 *                                  file cannot be created
+	 */
+	public static MappedPicture convert(File image, Path raster) {
+		if (image == null)
+			throw new IllegalArgumentException("image argument is null");
+		try (ImageInputStream in = ImageIO.createImageInputStream(image)) {
+			Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext())
+				throw new IllegalArgumentException("could not read file: " + image);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, false, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				MappedPicture p = create(raster, width, height);
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (decodesInto(reader)) {
+					param.setDestination(p.image());
+					reader.read(0, param);
+					return p;
+				}
+				// the reader picks an image of its own type for each band, which is
+				// redrawn into an int raster as the Picture constructor does
+				int band = Math.max(1, Math.min(height, CONVERT_BAND / width));
+				BufferedImage rgb = new BufferedImage(width, band, BufferedImage.TYPE_INT_RGB);
+				int[] px = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+				Graphics2D g = rgb.createGraphics();
+				try {
+					for (int y = 0; y < height; y += band) {
+						int h = Math.min(band, height - y);
+						param.setSourceRegion(new Rectangle(0, y, width, h));
+						g.drawImage(reader.read(0, param), 0, 0, null);
+						p.setRegion(0, y, width, h, px, 0, width);
+					}
+				} finally {
+					g.dispose();
+				}
+				return p;
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not open file: " + image, ioe);
+		}
+	}
+
+	/**
+	 * Returns whether {@code reader} can decode its first image straight into
+	 * {@link #image()}: a JPEG or PNG reader whose image has three 8-bit
+	 * RGB bands.
+	 */
+	private static boolean decodesInto(ImageReader reader) throws IOException {
+		String format = reader.getFormatName();
+		if (!"jpeg".equalsIgnoreCase(format) && !"png".equalsIgnoreCase(format))
+			return false;
+		ImageTypeSpecifier type = reader.getRawImageType(0);
+		if (type == null || type.getNumBands() != 3
+				|| type.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_RGB)
+			return false;
+		for (int size : type.getSampleModel().getSampleSize()) {
+			if (size != 8)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the raster file of this picture.
+	 *
+	 * @return the raster file
+	 */
+	public Path file() {
+		return file;
+	}
+
+	/**
+	 * Writes any changes to this picture to its file.
+	 */
+	public void force() {
+		for (MappedByteBuffer mapping : mappings) {
+			mapping.force();
+		}
+	}
+
+	/**
+	 * Returns a new mapped picture in a temporary file that is deleted when the
+	 * program exits.
+	 */
+	@Override
+	Picture blank(int width, int height) {
+		try {
+			Path temp = Files.createTempFile("a2-", ".a2r");
+			temp.toFile().deleteOnExit();
+			return create(temp, width, height, tileSize);
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not create temporary file", ioe);
+		}
+	}
+
+	/**
+	 * Returns a new mapped picture, since a {@link GrayPicture} of the same size
+	 * might not fit on the heap.
+	 */
+	@Override
+	Picture blankGray(int width, int height) {
+		return blank(width, height);
+	}
+
+	/**
+	 * Returns a new mapped picture, since a {@link BinaryPicture} of the same size
+	 * might not fit on the heap.
+	 */
+	@Override
+	Picture blankBinary(int width, int height) {
+		return blank(width, height);
+	}
+
+	/**
+	 * Returns a copy of the pixels of this picture, since a mapped picture has
+	 * no raster on the heap. Writes to the returned array do not change the
+	 * picture.
+	 *
+	 * @return the pixels of this picture, row by row
+	 * @throws IllegalArgumentException if the picture has too many pixels for
+	 *                                  an array
+	 */
+	@Override
+	public int[] pixels() {
+		return copyPixels();
+	}
+
+	@Override
+	public int getRGB(int col, int row) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		return tileRows[row / tileSize].get(index(col, row)) & 0xFFFFFF;
+	}
+
+	@Override
+	public void setRGB(int col, int row, int rgb) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		beforeWrite();
+		tileRows[row / tileSize].put(index(col, row), OPAQUE | rgb);
+	}
+
+	@Override
+	public void getRegion(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		validateRegion(col, row, w, h, dst, offset, scan);
+		for (int y = 0; y < h; y++) {
+			IntBuffer tiles = tileRows[(row + y) / tileSize];
+			int out = offset + y * scan;
+			// one run per tile crossed by the row
+			for (int c = col; c < col + w;) {
+				int n = Math.min(tileSize - c % tileSize, col + w - c);
+				tiles.get(index(c, row + y), dst, out, n);
+				for (int i = out; i < out + n; i++) {
+					dst[i] &= 0xFFFFFF;
+				}
+				out += n;
+				c += n;
+			}
+		}
+	}
+
+	@Override
+	public void setRegion(int col, int row, int w, int h, int[] src, int offset, int scan) {
+		validateRegion(col, row, w, h, src, offset, scan);
+		beforeWrite();
+		for (int y = 0; y < h; y++) {
+			IntBuffer tiles = tileRows[(row + y) / tileSize];
+			int in = offset + y * scan;
+			for (int c = col; c < col + w;) {
+				int n = Math.min(tileSize - c % tileSize, col + w - c);
+				int i = index(c, row + y);
+				for (int end = in + n; in < end; in++, i++) {
+					tiles.put(i, OPAQUE | src[in]);
+				}
+				c += n;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of pixel ({@code col}, {@code row}) in its row of tiles.
+	 */
+	private int index(int col, int row) {
+		return (col / tileSize) * tileSize * tileSize + (row % tileSize) * tileSize + col % tileSize;
+	}
+
+	/**
+	 * Returns 0: the pixels are in the mapped file, not on the heap.
+	 */
+	@Override
+	long footprint() {
+		return 0;
+	}
+
+	/**
+	 * Returns an image whose pixels are the pixels of the mapped file. The image
+	 * reads the file directly, so only the parts drawn are brought into memory.
+	 *
+	 * @throws IllegalArgumentException if the picture has 2^31 - 1 pixels or
+	 *                                  more, which no {@link BufferedImage} can
+	 *                                  hold
+	 */
+	@Override
+	BufferedImage image() {
+		if ((long) width() * height() >= Integer.MAX_VALUE)
+			throw new IllegalArgumentException("picture too large for an image, " + width() + "x" + height()
+					+ "; use getRegion");
+		DirectColorModel model = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+		WritableRaster raster = WritableRaster.createWritableRaster(
+				model.createCompatibleSampleModel(width(), height()), new TileBuffer(), null);
+		return new BufferedImage(model, raster, false, null);
+	}
+
+	/**
+	 * The pixels of the mapped file as a {@link DataBuffer} in row-major order.
+	 */
+	private final class TileBuffer extends DataBuffer {
+
+		TileBuffer() {
+			super(DataBuffer.TYPE_INT, width() * height());
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			int row = i / width();
+			return tileRows[row / tileSize].get(index(i % width(), row));
+		}
+
+		@Override
+		public void setElem(int bank, int i, int val) {
+			int row = i / width();
+			tileRows[row / tileSize].put(index(i % width(), row), OPAQUE | val);
+		}
+	}
+
+	/**
+	 * Converts an image file to a raster file.
+	 *
+	 * @param args the image file and the raster file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("usage: java a2.MappedPicture image raster");
+			System.exit(2);
+		}
+		MappedPicture p = convert(new File(args[0]), Paths.get(args[1]));
+		p.force();
+		System.out.println(args[1] + ": " + p.width() + "x" + p.height() + ", tiles of " + p.tileSize);
+	}
+}
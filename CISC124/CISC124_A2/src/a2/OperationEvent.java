@@ -0,0 +1,40 @@
+package a2;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one image operation; see
+ * {@link OperationMetrics}. Its duration is the time the operation took.
+ */
+@Name("a2.Operation")
+@Label("Image Operation")
+@Category("A2")
+@Description("An image operation of the viewer or of a batch")
+@StackTrace(false)
+final class OperationEvent extends Event {
+	@Label("Operation")
+	String operation;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Megapixels per Second")
+	double megapixelsPerSecond;
+
+	@Label("Bytes Allocated")
+	@Description("Bytes allocated by every thread while the operation ran, or -1 if another operation overlapped it")
+	@DataAmount
+	long bytesAllocated;
+
+	@Label("Threads")
+	int threads;
+}
@@ -0,0 +1,232 @@
+package a2;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The cost of one image operation: how long it took, how many pixels it
+ * processed and how fast, how many bytes it allocated, and how many threads
+ * it could use.
+ *
+ * <p>
+ * Every public image operation of {@link A2}, such as
+ * {@link A2#blur(Picture, int)}, is measured, and so is every operation of the
+ * viewer and of {@link Batch}. The metrics are given to the listeners added
+ * with {@link #addListener(Listener)}. Each operation is also recorded as an
+ * {@code a2.Operation} event by Java Flight Recorder, when a recording is
+ * running, so that operations can be lined up with garbage collections and
+ * other events of the JVM. An operation that calls others, such as a viewer
+ * operation calling {@link A2#blur(Picture, int)}, is measured once, as a
+ * whole: the operations it calls on its own thread are not reported.
+ *
+ * <p>
+ * The bytes allocated are process-wide: the JVM counts them for every thread
+ * (see {@link com.sun.management.ThreadMXBean}), because the tiles of an
+ * operation run on the threads of {@link A2#getScheduler()}. They include
+ * whatever other threads allocate while the operation runs, so they are -1,
+ * not counted, for an operation that overlapped another measured one, as in a
+ * {@link Batch}; they are also -1 if the JVM does not count allocations.
+ */
+public final class OperationMetrics {
+	private static final com.sun.management.ThreadMXBean THREADS = ManagementFactory
+			.getPlatformMXBean(com.sun.management.ThreadMXBean.class);
+	private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+	// whether this thread is measuring an operation, so nested ones are not
+	private static final ThreadLocal<Boolean> MEASURING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	// operations started and running, to tell whether one ran alone
+	private static final AtomicLong STARTED = new AtomicLong();
+	private static final AtomicInteger RUNNING = new AtomicInteger();
+
+	private final String operation;
+	private final int width, height;
+	private final long nanos;
+	private final long bytes;
+	private final int threads;
+
+	/**
+	 * Told about the metrics of each operation.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called when an operation has finished, on the thread that ran it.
+		 *
+		 * @param metrics the metrics of the operation
+		 */
+		void operationDone(OperationMetrics metrics);
+	}
+
+	OperationMetrics(String operation, int width, int height, long nanos, long bytes, int threads) {
+		this.operation = operation;
+		this.width = width;
+		this.height = height;
+		this.nanos = nanos;
+		this.bytes = bytes;
+		this.threads = threads;
+	}
+
+	/**
+	 * Adds a listener, told about every operation from now on.
+	 *
+	 * @param listener the listener
+	 * @throws IllegalArgumentException if {@code listener} is {@code null}
+	 */
+	public static void addListener(Listener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener is null");
+		LISTENERS.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with {@link #addListener(Listener)}.
+	 *
+	 * @param listener the listener
+	 */
+	public static void removeListener(Listener listener) {
+		LISTENERS.remove(listener);
+	}
+
+	/**
+	 * Runs an operation on {@code p}, records it as a flight recorder event and
+	 * tells the listeners its metrics. An operation that fails or returns
+	 * {@code null} is not reported, and neither is one run while this thread is
+	 * measuring another.
+	 *
+	 * @param operation the name of the operation
+	 * @param p         the image the operation reads, or {@code null} if it
+	 *                  reads none, to report the size of the result
+	 * @param work      computes the result
+	 * @return the result of {@code work}
+	 */
+	static Picture measure(String operation, Picture p, Supplier<Picture> work) {
+		if (MEASURING.get())
+			return work.get();
+		MEASURING.set(Boolean.TRUE);
+		long started = STARTED.incrementAndGet();
+		int running = RUNNING.incrementAndGet();
+		try {
+			boolean counting = THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled();
+			OperationEvent event = new OperationEvent();
+			event.begin();
+			long bytes = counting ? THREADS.getTotalThreadAllocatedBytes() : 0;
+			long start = System.nanoTime();
+			Picture result = work.get();
+			long nanos = System.nanoTime() - start;
+			boolean alone = running == 1 && STARTED.get() == started;
+			bytes = counting && alone ? THREADS.getTotalThreadAllocatedBytes() - bytes : -1;
+			event.end();
+			if (result == null)
+				return null;
+			Picture read = p != null ? p : result;
+			OperationMetrics metrics = new OperationMetrics(operation, read.width(), read.height(), nanos, bytes,
+					A2.getScheduler().parallelism());
+			if (event.shouldCommit()) {
+				event.operation = operation;
+				event.width = metrics.width;
+				event.height = metrics.height;
+				event.megapixelsPerSecond = metrics.megapixelsPerSecond();
+				event.bytesAllocated = bytes;
+				event.threads = metrics.threads;
+				event.commit();
+			}
+			for (Listener listener : LISTENERS)
+				listener.operationDone(metrics);
+			return result;
+		} finally {
+			RUNNING.decrementAndGet();
+			MEASURING.set(Boolean.FALSE);
+		}
+	}
+
+	/**
+	 * Returns the name of the operation, such as {@code BLUR_5} or
+	 * {@code blur(5)}.
+	 *
+	 * @return the name
+	 */
+	public String operation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the width of the image the operation read, or of its result if it read
+	 * none.
+	 *
+	 * @return the width, in pixels
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image the operation read, or of its result if it read
+	 * none.
+	 *
+	 * @return the height, in pixels
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of pixels of the image the operation read.
+	 *
+	 * @return the number of pixels
+	 */
+	public long pixels() {
+		return (long) width * height;
+	}
+
+	/**
+	 * Returns the wall-clock time the operation took.
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long nanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns the number of pixels processed per second.
+	 *
+	 * @return the speed, in millions of pixels per second
+	 */
+	public double megapixelsPerSecond() {
+		return nanos > 0 ? pixels() * 1e3 / nanos : 0;
+	}
+
+	/**
+	 * Returns the bytes allocated process-wide while the operation ran, or -1 if
+	 * they are not counted, because another measured operation overlapped it or
+	 * the JVM does not count allocations.
+	 *
+	 * @return the bytes allocated
+	 */
+	public long bytesAllocated() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of threads the operation could run its tiles on.
+	 *
+	 * @return the parallelism of {@link A2#getScheduler()}
+	 */
+	public int threads() {
+		return threads;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s: %dx%d in %.1f ms, %.1f MP/s, %s allocated process-wide, %d threads", operation,
+				width, height, nanos / 1e6, megapixelsPerSecond(),
+				bytes >= 0 ? String.format(Locale.ROOT, "%.1f MB", bytes / 1e6) : "n/a", threads);
+	}
+}
@@ -0,0 +1,178 @@
+package a2;
+
+import java.util.Arrays;
+
+/**
+ * Perceptual hashes of pictures: 64-bit fingerprints that change little when
+ * a picture is resized, recompressed or slightly edited, so that near-identical
+ * pictures have hashes that differ in few bits (see {@link #distance}), while
+ * unrelated pictures differ in about half of them. {@link HashIndex} finds the
+ * near duplicates of a hash among many.
+ *
+ * <p>
+ * Both hashes start from a small gray version of the picture, made on the
+ * existing paths: the smallest level of a {@link Pyramid} that is at least as
+ * large as needed, converted with {@link A2#toGray(Picture)} and then averaged
+ * down to the exact size, each new pixel the mean of the area it covers. So a
+ * picture is read once, in parallel, and only a tiny gray picture is made.
+ *
+ * <ul>
+ * <li>{@link #dHash(Picture)}, the difference hash, compares neighbouring
+ * pixels of a 9-by-8 version: bit {@code 8 * y + x} is set if pixel
+ * ({@code x}, {@code y}) is darker than pixel ({@code x + 1}, {@code y}). It
+ * is the cheaper of the two.
+ * <li>{@link #pHash(Picture)}, the DCT hash, takes the 8-by-8 lowest spatial
+ * frequencies of the discrete cosine transform of a 32-by-32 version: bit
+ * {@code 8 * v + u} is set if coefficient ({@code u}, {@code v}) is above the
+ * median of the 64. It is less sensitive to changes of brightness, contrast and
+ * gamma.
+ * </ul>
+ */
+public final class PerceptualHash {
+	private static final int DCT_SIZE = 32; // side of the picture transformed by pHash
+	private static final int LOW = 8; // side of the block of frequencies kept
+	private static final double[][] COSINES = new double[LOW][DCT_SIZE]; // COSINES[u][x], the DCT-II basis
+
+	static {
+		for (int u = 0; u < LOW; u++) {
+			for (int x = 0; x < DCT_SIZE; x++) {
+				COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+			}
+		}
+	}
+
+	private PerceptualHash() {
+	}
+
+	/**
+	 * Returns the difference hash of a picture.
+	 *
+	 * @param p the picture
+	 * @return the hash
+	 * @throws IllegalArgumentException if {@code p} is {@code null}
+	 */
+	public static long dHash(Picture p) {
+		double[] gray = gray(p, 9, 8);
+		long hash = 0;
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				if (gray[9 * y + x] < gray[9 * y + x + 1]) {
+					hash |= 1L << (8 * y + x);
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the DCT hash of a picture.
+	 *
+	 * @param p the picture
+	 * @return the hash
+	 * @throws IllegalArgumentException if {@code p} is {@code null}
+	 */
+	public static long pHash(Picture p) {
+		double[] gray = gray(p, DCT_SIZE, DCT_SIZE);
+		// transform the rows, keeping the low frequencies, then the columns
+		double[] rows = new double[DCT_SIZE * LOW];
+		for (int y = 0; y < DCT_SIZE; y++) {
+			for (int u = 0; u < LOW; u++) {
+				double sum = 0;
+				for (int x = 0; x < DCT_SIZE; x++) {
+					sum += COSINES[u][x] * gray[DCT_SIZE * y + x];
+				}
+				rows[LOW * y + u] = sum;
+			}
+		}
+		double[] coefficients = new double[LOW * LOW];
+		for (int v = 0; v < LOW; v++) {
+			for (int u = 0; u < LOW; u++) {
+				double sum = 0;
+				for (int y = 0; y < DCT_SIZE; y++) {
+					sum += COSINES[v][y] * rows[LOW * y + u];
+				}
+				coefficients[LOW * v + u] = sum;
+			}
+		}
+		double[] sorted = coefficients.clone();
+		Arrays.sort(sorted);
+		double median = (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+		long hash = 0;
+		for (int i = 0; i < coefficients.length; i++) {
+			if (coefficients[i] > median) {
+				hash |= 1L << i;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the Hamming distance between two hashes, the number of bits in
+	 * which they differ.
+	 *
+	 * @param a a hash
+	 * @param b another hash
+	 * @return the distance, from 0 to 64
+	 */
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	/**
+	 * Returns the gray levels of {@code p} averaged down (or, for a side that
+	 * is shorter than {@code w} or {@code h}, stretched) to {@code w} by
+	 * {@code h}, row by row.
+	 */
+	static double[] gray(Picture p, int w, int h) {
+		if (p == null)
+			throw new IllegalArgumentException("picture argument is null");
+		Pyramid pyramid = new Pyramid(p);
+		Picture small = A2.toGrayCompact(pyramid.level(pyramid.levelFor(w, h)));
+		int sw = small.width();
+		int sh = small.height();
+		double[][] across = weights(sw, w);
+		double[][] down = weights(sh, h);
+		double[] columns = new double[sw * h]; // averaged down, not yet across
+		int[] row = new int[sw];
+		for (int sy = 0; sy < sh; sy++) {
+			small.getRow(sy, row);
+			for (int y = 0; y < h; y++) {
+				double weight = down[y][sy];
+				if (weight != 0) {
+					for (int sx = 0; sx < sw; sx++) {
+						columns[sw * y + sx] += weight * (row[sx] & 0xFF);
+					}
+				}
+			}
+		}
+		double[] gray = new double[w * h];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double sum = 0;
+				for (int sx = 0; sx < sw; sx++) {
+					sum += across[x][sx] * columns[sw * y + sx];
+				}
+				gray[w * y + x] = sum;
+			}
+		}
+		return gray;
+	}
+
+	/**
+	 * Returns, for each of {@code n} new pixels along a side of {@code length}
+	 * pixels, the weight of each old pixel: the fraction of the new pixel that
+	 * the old one covers.
+	 */
+	private static double[][] weights(int length, int n) {
+		double[][] weights = new double[n][length];
+		double scale = (double) length / n;
+		for (int i = 0; i < n; i++) {
+			double start = i * scale;
+			double end = start + scale;
+			for (int j = (int) start; j < length && j < end; j++) {
+				weights[i][j] = (Math.min(end, j + 1) - Math.max(start, j)) / scale;
+			}
+		}
+		return weights;
+	}
+}
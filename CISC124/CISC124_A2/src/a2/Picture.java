@@ -20,8 +20,18 @@ package a2;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -70,6 +80,30 @@ import javax.swing.JPanel;
  * 
  * </blockquote>
  * <p>
+ * The pixels are stored in a primitive {@code int} raster in row-major order
+ * (top row first). The method {@link #pixels()} returns the raster itself, and
+ * {@link #getRow(int, int[])}, {@link #setRow(int, int[])},
+ * {@link #getRegion(int, int, int, int, int[], int, int)} and
+ * {@link #setRegion(int, int, int, int, int[], int, int)} copy whole rows or
+ * rectangles without creating any objects. Values read from the raster have a
+ * zero alpha byte; the alpha byte of values written to it is ignored.
+ * <p>
+ * A picture can also be a <em>view</em> of another picture: a flipped, rotated,
+ * transposed or cropped version of it (see {@link #flipVerticalView()},
+ * {@link #rotateView(int)}, {@link #transposeView()}, {@link #cropView(int, int,
+ * int, int)} and {@link #copyView()}). A view has no raster of its own and
+ * reads its pixels from the other picture, so creating it takes constant time.
+ * Views are copy-on-write: a view gets its own raster (is <em>materialized</em>)
+ * the first time it is written to, displayed, or asked for its raster, and
+ * every view of a picture is materialized before that picture is changed.
+ * Once {@link #pixels()} has handed out the raster of a picture, which can
+ * then be changed at any time, its views are copied as soon as they are made.
+ * Views of views read straight from the picture that has the raster, and
+ * rotated or transposed views are copied in cache-sized blocks (see
+ * {@link Transpose}). A view of a picture that keeps its pixels off the heap,
+ * such as a {@link MappedPicture}, is materialized into a new picture kept the
+ * same way, so materializing it does not bring the pixels onto the heap.
+ * <p>
  * A <em>W</em>-by-<em>H</em> picture uses ~ 4 <em>W H</em> bytes of memory,
  * since the color of each pixel is encoded as a 32-bit <code>int</code>.
  * <p>
@@ -82,11 +116,22 @@ import javax.swing.JPanel;
  * @author Robert Sedgewick
  * @author Kevin Wayne
  */
-public final class Picture {
-	private BufferedImage image; // the rasterized image
+public class Picture {
+	private BufferedImage image; // the rasterized image, null for a view
+	private int[] pixels; // the raster of image, row-major
 	private boolean isOriginUpperLeft = true; // location of origin
 	private final int width, height; // width and height
 
+	// a view reads pixel (col, row) from pixel (cc * col + cr * row + c0, rc * col + rr * row + r0)
+	// of root, which has a raster; root is null when this picture has its own raster
+	private volatile Picture root;
+	private int cc, cr, c0, rc, rr, r0;
+	private boolean stored; // materialized into root, which keeps the pixels for this picture
+	private volatile List<WeakReference<Picture>> views; // views whose root is this picture
+	private volatile boolean escaped; // the raster was handed out, and may change at any time
+	private long hash; // of the pixels, see ResultCache, while hashed is set
+	private volatile boolean hashed; // cleared by beforeWrite
+
 	/**
 	 * Creates a {@code width}-by-{@code height} picture, with {@code width} columns
 	 * and {@code height} rows, where each pixel is black.
@@ -97,14 +142,32 @@ public final class Picture {
 	 * @throws IllegalArgumentException if {@code height} is negative or zero
 	 */
 	public Picture(int width, int height) {
+		this(width, height, true);
+	}
+
+	/**
+	 * Creates a {@code width}-by-{@code height} picture. Without a raster, the
+	 * pixels are kept by a subclass, which must override {@link #getRGB},
+	 * {@link #setRGB}, {@link #getRegion}, {@link #setRegion}, {@link #pixels()}
+	 * and {@link #image()}, and call {@link #beforeWrite()} before it changes a
+	 * pixel.
+	 *
+	 * @param width  the width of the picture
+	 * @param height the height of the picture
+	 * @param raster whether to allocate a raster on the heap
+	 */
+	Picture(int width, int height, boolean raster) {
 		if (width <= 0)
 			throw new IllegalArgumentException("width must be positive");
 		if (height <= 0)
 			throw new IllegalArgumentException("height must be positive");
 		this.width = width;
 		this.height = height;
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		// set to TYPE_INT_ARGB here and in next constructor to support transparency
+		if (raster) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			// set to TYPE_INT_ARGB here and in next constructor to support transparency
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
 	}
 
 
@@ -129,6 +192,322 @@ public final class Picture {
 		}
 		width = image.getWidth(null);
 		height = image.getHeight(null);
+		image = rgb(image);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Returns a decoded image with an int raster, redrawing it if it has
+	 * another layout.
+	 *
+	 * @param image - decoded image
+	 * @return the image, of type {@code TYPE_INT_RGB}
+	 */
+	static BufferedImage rgb(BufferedImage image) {
+		// decoders produce many different layouts; redraw into an int raster
+		if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+			BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			rgb.createGraphics().drawImage(image, 0, 0, null);
+			image = rgb;
+		}
+		return image;
+	}
+
+	/**
+	 * Creates a view of {@code root}, which must have its own raster.
+	 */
+	private Picture(Picture root, int width, int height, int cc, int cr, int c0, int rc, int rr, int r0) {
+		this.width = width;
+		this.height = height;
+		this.root = root;
+		this.cc = cc;
+		this.cr = cr;
+		this.c0 = c0;
+		this.rc = rc;
+		this.rr = rr;
+		this.r0 = r0;
+		synchronized (root) {
+			if (root.views == null)
+				root.views = new ArrayList<>();
+			root.views.removeIf(ref -> ref.get() == null);
+			root.views.add(new WeakReference<>(this));
+		}
+	}
+
+	/**
+	 * Returns a {@code width}-by-{@code height} view whose pixel ({@code col},
+	 * {@code row}) is pixel ({@code cc * col + cr * row + c0}, {@code rc * col + rr
+	 * * row + r0}) of this picture.
+	 */
+	private Picture view(int width, int height, int cc, int cr, int c0, int rc, int rr, int r0) {
+		Picture from = root;
+		Picture source = from != null ? from : this;
+		Picture view;
+		if (from == null) {
+			view = new Picture(this, width, height, cc, cr, c0, rc, rr, r0);
+		} else {
+			// compose with the map of this view, so the new view reads from its root
+			view = new Picture(from, width, height,
+					this.cc * cc + this.cr * rc, this.cc * cr + this.cr * rr, this.cc * c0 + this.cr * r0 + this.c0,
+					this.rc * cc + this.rr * rc, this.rc * cr + this.rr * rr, this.rc * c0 + this.rr * r0 + this.r0);
+		}
+		// a raster handed out can change without beforeWrite, so copy it now
+		if (source.escaped)
+			view.materialize();
+		return view;
+	}
+
+	/**
+	 * Returns a view of this picture that is mirrored about its vertical axis, so
+	 * that the first column becomes the last.
+	 *
+	 * @return the mirrored view
+	 */
+	public Picture flipVerticalView() {
+		return view(width, height, -1, 0, width - 1, 0, 1, 0);
+	}
+
+	/**
+	 * Returns a view of this picture that is mirrored about its horizontal axis,
+	 * so that the first row becomes the last.
+	 *
+	 * @return the mirrored view
+	 */
+	public Picture flipHorizontalView() {
+		return view(width, height, 1, 0, 0, 0, -1, height - 1);
+	}
+
+	/**
+	 * Returns a view of this picture rotated clockwise by {@code degrees}.
+	 *
+	 * @param degrees the angle of the rotation, a multiple of 90
+	 * @return the rotated view
+	 * @throws IllegalArgumentException unless {@code degrees} is a multiple of 90
+	 */
+	public Picture rotateView(int degrees) {
+		if (degrees % 90 != 0)
+			throw new IllegalArgumentException("degrees must be a multiple of 90: " + degrees);
+		switch (Math.floorMod(degrees, 360)) {
+		case 90:
+			return view(height, width, 0, 1, 0, -1, 0, height - 1);
+		case 180:
+			return view(width, height, -1, 0, width - 1, 0, -1, height - 1);
+		case 270:
+			return view(height, width, 0, -1, width - 1, 1, 0, 0);
+		default:
+			return copyView();
+		}
+	}
+
+	/**
+	 * Returns a view of this picture with rows and columns exchanged.
+	 *
+	 * @return the transposed view
+	 */
+	public Picture transposeView() {
+		return view(height, width, 0, 1, 0, 1, 0, 0);
+	}
+
+	/**
+	 * Returns a view of the {@code w}-by-{@code h} rectangle of this picture whose
+	 * upper-left pixel is ({@code col}, {@code row}).
+	 *
+	 * @param col the column index of the first pixel
+	 * @param row the row index of the first pixel
+	 * @param w   the width of the rectangle
+	 * @param h   the height of the rectangle
+	 * @return the cropped view
+	 * @throws IllegalArgumentException unless the rectangle is a non-empty part of
+	 *                                  this picture
+	 */
+	public Picture cropView(int col, int row, int w, int h) {
+		if (w <= 0 || h <= 0)
+			throw new IllegalArgumentException("crop size must be positive: " + w + "x" + h);
+		validateColumnIndex(col);
+		validateColumnIndex(col + w - 1);
+		validateRowIndex(row);
+		validateRowIndex(row + h - 1);
+		return view(w, h, 1, 0, col, 0, 1, row);
+	}
+
+	/**
+	 * Returns a copy-on-write copy of this picture.
+	 *
+	 * @return the copy
+	 */
+	public Picture copyView() {
+		return view(width, height, 1, 0, 0, 0, 1, 0);
+	}
+
+	/**
+	 * Gives this picture its own pixels if it is a view. A view of a picture
+	 * without a heap raster is copied into a picture made by its
+	 * {@link #blank(int, int)}, and if that has no heap raster either, it keeps
+	 * the pixels for this picture: it becomes the root of this picture, with
+	 * an identity map, and the writes to this picture go to it.
+	 */
+	private synchronized void materialize() {
+		Picture from = root;
+		if (from == null || stored)
+			return;
+		TileScheduler scheduler = A2.getScheduler();
+		Picture store = from.pixels == null ? from.blank(width, height) : null;
+		if (store != null && store.raster() == null) {
+			scheduler.runBands(height, scheduler.tileHeight(), (firstRow, endRow) -> {
+				int[] band = new int[(endRow - firstRow) * width];
+				getRegion(0, firstRow, width, endRow - firstRow, band, 0, width);
+				store.setRegion(0, firstRow, width, endRow - firstRow, band, 0, width);
+			});
+			cc = rr = 1;
+			cr = c0 = rc = r0 = 0;
+			stored = true;
+			root = store;
+			return;
+		}
+		BufferedImage img = store != null ? store.image : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		if (from.pixels != null) {
+			int step = from.isOriginUpperLeft ? from.width : -from.width;
+			Transpose.copy(from.pixels, from.offset(r0) + c0, cc + rc * step, cr + rr * step, px, width, height,
+					scheduler);
+		} else {
+			scheduler.runBands(height, scheduler.tileHeight(), (firstRow, endRow) -> getRegion(0, firstRow, width,
+					endRow - firstRow, px, firstRow * width, width));
+		}
+		image = img;
+		pixels = px;
+		root = null;
+	}
+
+	/**
+	 * Materializes every view of this picture, before this picture is changed.
+	 */
+	private void detachViews() {
+		// the list is cleared only once every view is copied, so that threads
+		// writing other parts of this picture at once wait here until then
+		synchronized (this) {
+			if (views == null)
+				return;
+			for (WeakReference<Picture> ref : views) {
+				Picture view = ref.get();
+				if (view != null)
+					view.materialize();
+			}
+			views = null;
+		}
+	}
+
+	/**
+	 * Records that the pixels of this picture have been handed out in an array
+	 * that changes the picture, such as by {@link #pixels()}. From then on the
+	 * picture can change without {@link #beforeWrite()}, so its views are
+	 * materialized as soon as they are created.
+	 */
+	final void escape() {
+		escaped = true;
+	}
+
+	/**
+	 * Prepares this picture for a change of its pixels.
+	 */
+	final void beforeWrite() {
+		if (hashed)
+			hashed = false;
+		if (root != null)
+			materialize();
+		if (views != null)
+			detachViews();
+	}
+
+	/**
+	 * Returns the hash of the pixels of this picture computed by
+	 * {@code hasher}, computing it only the first time after the picture
+	 * changes. The pixels of a picture whose raster was handed out (see
+	 * {@link #escape()}) can change unseen, so they are hashed every time.
+	 */
+	final long hash(ToLongFunction<Picture> hasher) {
+		if (hashed)
+			return hash;
+		long h = hasher.applyAsLong(this);
+		if (!escaped) {
+			hash = h;
+			hashed = true;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the raster of this picture for reading, or {@code null} if this
+	 * picture is a view. Unlike {@link #pixels()}, this does not materialize
+	 * anything, so the raster must not be changed.
+	 */
+	int[] raster() {
+		return root == null ? pixels : null;
+	}
+
+	/**
+	 * Returns the number of bytes of heap this picture keeps reachable: its
+	 * raster, or for a view the raster of the picture it reads from.
+	 */
+	long footprint() {
+		Picture from = root;
+		if (from != null)
+			return from.footprint();
+		return pixels != null ? 4L * pixels.length : 0;
+	}
+
+	/**
+	 * Returns a new black picture of the given size, kept the same way as this
+	 * picture, for the result of an operation on this picture. A view makes its
+	 * results like the picture it reads from.
+	 *
+	 * @param width  the width of the new picture
+	 * @param height the height of the new picture
+	 * @return the new picture
+	 */
+	Picture blank(int width, int height) {
+		Picture from = root;
+		return from != null ? from.blank(width, height) : new Picture(width, height);
+	}
+
+	/**
+	 * Returns a new black picture of the given size for a grayscale result of an
+	 * operation on this picture; a {@link GrayPicture} unless this picture is kept
+	 * off the heap.
+	 *
+	 * @param width  the width of the new picture
+	 * @param height the height of the new picture
+	 * @return the new picture
+	 */
+	Picture blankGray(int width, int height) {
+		Picture from = root;
+		return from != null ? from.blankGray(width, height) : new GrayPicture(width, height);
+	}
+
+	/**
+	 * Returns a new black picture of the given size for a black and white result
+	 * of an operation on this picture; a {@link BinaryPicture} unless this picture
+	 * is kept off the heap.
+	 *
+	 * @param width  the width of the new picture
+	 * @param height the height of the new picture
+	 * @return the new picture
+	 */
+	Picture blankBinary(int width, int height) {
+		Picture from = root;
+		return from != null ? from.blankBinary(width, height) : new BinaryPicture(width, height);
+	}
+
+	/**
+	 * Returns whether every pixel of this picture is gray, so that it can be
+	 * saved with one sample per pixel. A view is gray if the picture it reads
+	 * from is.
+	 *
+	 * @return whether this picture is gray
+	 */
+	boolean isGray() {
+		Picture from = root;
+		return from != null && from.isGray();
 	}
 
 	/**
@@ -138,12 +517,93 @@ public final class Picture {
 	 * @return the {@code JLabel}
 	 */
 	public JLabel getJLabel() {
+		BufferedImage image = image();
 		if (image == null)
 			return null; // no image available
 		ImageIcon icon = new ImageIcon(image);
 		return new JLabel(icon);
 	}
 
+	/**
+	 * Saves the picture to a file in a standard image format. The filetype must
+	 * be {@code .png} or {@code .jpg}. A PNG file is compressed in parallel
+	 * strips by {@link PngEncoder}, straight from the pixels, so a view is not
+	 * materialized to be saved.
+	 *
+	 * @param file the file
+	 * @throws IllegalArgumentException if {@code file} is {@code null}
+	 * @throws IllegalArgumentException if the filetype is not {@code .png} or
+	 *                                  {@code .jpg}
+	 * @throws IllegalArgumentException if the file cannot be written
+	 */
+	public void save(File file) {
+		String suffix = validateSaveFile(file);
+		try {
+			if ("png".equalsIgnoreCase(suffix)) {
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+					PngEncoder.write(this, out);
+				}
+				return;
+			}
+			BufferedImage image = image();
+			if (!ImageIO.write(image, suffix, file)) {
+				// no writer for this layout (e.g. a 1-bit JPEG); redraw into an int raster
+				BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				rgb.createGraphics().drawImage(image, 0, 0, null);
+				ImageIO.write(rgb, suffix, file);
+			}
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("could not write file: " + file, ioe);
+		}
+	}
+
+	/**
+	 * Saves the picture as {@link #save(File)} does, but on a background writer
+	 * thread, so the caller does not wait for the compression. What is saved is
+	 * a copy-on-write copy of the picture as it is now (see {@link #copyView()}),
+	 * so the picture can be changed while it is saved. Saves are done one at a
+	 * time, in the order they are asked for, and saves that are still waiting
+	 * when the program exits are finished first.
+	 *
+	 * @param file the file
+	 * @return completes when the file is written, or exceptionally with an
+	 *         {@link IllegalArgumentException} if it cannot be written
+	 * @throws IllegalArgumentException if {@code file} is {@code null}
+	 * @throws IllegalArgumentException if the filetype is not {@code .png} or
+	 *                                  {@code .jpg}
+	 */
+	public CompletableFuture<Void> saveAsync(File file) {
+		validateSaveFile(file);
+		Picture snapshot = copyView();
+		return PngEncoder.background(() -> snapshot.save(file));
+	}
+
+	/**
+	 * Returns the suffix of the name of {@code file}, which must be {@code png}
+	 * or {@code jpg}.
+	 */
+	private static String validateSaveFile(File file) {
+		if (file == null)
+			throw new IllegalArgumentException("argument to save() is null");
+		String name = file.getName();
+		String suffix = name.substring(name.lastIndexOf('.') + 1);
+		if (!"jpg".equalsIgnoreCase(suffix) && !"png".equalsIgnoreCase(suffix))
+			throw new IllegalArgumentException("filename must end in .jpg or .png: " + name);
+		return suffix;
+	}
+
+	/**
+	 * Returns an image that shares the pixels of this picture, used to display
+	 * and save it. Materializes a view.
+	 *
+	 * @return the image
+	 */
+	BufferedImage image() {
+		materialize();
+		Picture from = root;
+		return from != null ? from.image() : image;
+	}
+
 
 	/**
 	 * Returns the height of the picture.
@@ -163,12 +623,12 @@ public final class Picture {
 		return width;
 	}
 
-	private void validateRowIndex(int row) {
+	final void validateRowIndex(int row) {
 		if (row < 0 || row >= height())
 			throw new IllegalArgumentException("row index must be between 0 and " + (height() - 1) + ": " + row);
 	}
 
-	private void validateColumnIndex(int col) {
+	final void validateColumnIndex(int col) {
 		if (col < 0 || col >= width())
 			throw new IllegalArgumentException("column index must be between 0 and " + (width() - 1) + ": " + col);
 	}
@@ -184,8 +644,6 @@ public final class Picture {
 	 *                                  {@code 0 <= row < height}
 	 */
 	public Color get(int col, int row) {
-		validateColumnIndex(col);
-		validateRowIndex(row);
 		int rgb = getRGB(col, row);
 		return new Color(rgb);
 	}
@@ -202,13 +660,15 @@ public final class Picture {
 	 * @throws IllegalArgumentException unless both {@code 0 <= col < width} and
 	 *                                  {@code 0 <= row < height}
 	 */
-	private int getRGB(int col, int row) {
+	public int getRGB(int col, int row) {
 		validateColumnIndex(col);
 		validateRowIndex(row);
-		if (isOriginUpperLeft)
-			return image.getRGB(col, row);
-		else
-			return image.getRGB(col, height - row - 1);
+		Picture from = root;
+		if (from != null && from.pixels == null)
+			return from.getRGB(cc * col + cr * row + c0, rc * col + rr * row + r0);
+		if (from != null)
+			return from.pixels[from.offset(rc * col + rr * row + r0) + cc * col + cr * row + c0];
+		return pixels[offset(row) + col];
 	}
 
 	/**
@@ -222,8 +682,6 @@ public final class Picture {
 	 * @throws IllegalArgumentException if {@code color} is {@code null}
 	 */
 	public void set(int col, int row, Color color) {
-		validateColumnIndex(col);
-		validateRowIndex(row);
 		if (color == null)
 			throw new IllegalArgumentException("color argument is null");
 		int rgb = color.getRGB();
@@ -239,13 +697,222 @@ public final class Picture {
 	 * @throws IllegalArgumentException unless both {@code 0 <= col < width} and
 	 *                                  {@code 0 <= row < height}
 	 */
-	private void setRGB(int col, int row, int rgb) {
+	public void setRGB(int col, int row, int rgb) {
+		validateColumnIndex(col);
+		validateRowIndex(row);
+		beforeWrite();
+		Picture from = root;
+		if (from != null) {
+			from.setRGB(col, row, rgb);
+			return;
+		}
+		pixels[offset(row) + col] = rgb & 0xFFFFFF;
+	}
+
+	/**
+	 * Returns the raster of this picture. Pixel ({@code col}, {@code row}) of an
+	 * upper-left origin picture is element {@code row * width() + col}. Writes to
+	 * the returned array change the picture, so a view is materialized, and the
+	 * views of this picture are materialized, before the raster is returned.
+	 * Since the array can then be written at any time, later views of this
+	 * picture are copied when they are created instead of on write.
+	 * Pictures that keep their pixels in another form, such as
+	 * {@link GrayPicture} and {@link BinaryPicture}, return a copy of their
+	 * pixels instead, whose writes do not change the picture.
+	 *
+	 * @return the raster of this picture
+	 */
+	public int[] pixels() {
+		beforeWrite();
+		Picture from = root;
+		if (from != null)
+			return from.pixels();
+		escape();
+		return pixels;
+	}
+
+	/**
+	 * Returns a new raster holding the pixels of this picture, for the
+	 * subclasses without an {@code int} raster of their own, whose
+	 * {@link #pixels()} returns a copy.
+	 *
+	 * @throws IllegalArgumentException if the picture has too many pixels for
+	 *                                  an array
+	 */
+	final int[] copyPixels() {
+		long n = (long) width * height;
+		if (n > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("picture too large for an int raster: " + width + "x" + height);
+		int[] copy = new int[(int) n];
+		getRegion(0, 0, width, height, copy, 0, width);
+		return copy;
+	}
+
+	/**
+	 * Copies row {@code row} of this picture into {@code dst}.
+	 *
+	 * @param row the row index
+	 * @param dst the destination array, of length at least {@code width()}
+	 * @throws IllegalArgumentException unless {@code 0 <= row < height}
+	 * @throws IllegalArgumentException if {@code dst} is too short
+	 */
+	public void getRow(int row, int[] dst) {
+		getRegion(0, row, width, 1, dst, 0, width);
+	}
+
+	/**
+	 * Copies {@code src} into row {@code row} of this picture.
+	 *
+	 * @param row the row index
+	 * @param src the source array, of length at least {@code width()}
+	 * @throws IllegalArgumentException unless {@code 0 <= row < height}
+	 * @throws IllegalArgumentException if {@code src} is too short
+	 */
+	public void setRow(int row, int[] src) {
+		setRegion(0, row, width, 1, src, 0, width);
+	}
+
+	/**
+	 * Copies the {@code w}-by-{@code h} rectangle whose upper-left pixel is
+	 * ({@code col}, {@code row}) into {@code dst}. Pixel ({@code col + x},
+	 * {@code row + y}) is stored in {@code dst[offset + y * scan + x]}.
+	 *
+	 * @param col    the column index of the first pixel
+	 * @param row    the row index of the first pixel
+	 * @param w      the width of the rectangle
+	 * @param h      the height of the rectangle
+	 * @param dst    the destination array
+	 * @param offset the index in {@code dst} of the first pixel
+	 * @param scan   the distance in {@code dst} between two rows
+	 * @throws IllegalArgumentException if the rectangle is not inside the picture
+	 * @throws IllegalArgumentException if {@code dst} is too short
+	 */
+	public void getRegion(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		validateRegion(col, row, w, h, dst, offset, scan);
+		Picture from = root;
+		if (from != null && from.pixels == null) {
+			if (stored)
+				from.getRegion(col, row, w, h, dst, offset, scan);
+			else
+				readThrough(from, col, row, w, h, dst, offset, scan);
+			return;
+		}
+		if (from != null) {
+			int step = from.isOriginUpperLeft ? from.width : -from.width;
+			int base = from.offset(rc * col + rr * row + r0) + cc * col + cr * row + c0;
+			Transpose.copy(from.pixels, base, cc + rc * step, cr + rr * step, dst, offset, scan, w, h);
+			return;
+		}
+		for (int y = 0; y < h; y++) {
+			System.arraycopy(pixels, offset(row + y) + col, dst, offset + y * scan, w);
+		}
+	}
+
+	/**
+	 * Copies {@code src} into the {@code w}-by-{@code h} rectangle whose upper-left
+	 * pixel is ({@code col}, {@code row}). Pixel ({@code col + x}, {@code row + y})
+	 * is taken from {@code src[offset + y * scan + x]}.
+	 *
+	 * @param col    the column index of the first pixel
+	 * @param row    the row index of the first pixel
+	 * @param w      the width of the rectangle
+	 * @param h      the height of the rectangle
+	 * @param src    the source array
+	 * @param offset the index in {@code src} of the first pixel
+	 * @param scan   the distance in {@code src} between two rows
+	 * @throws IllegalArgumentException if the rectangle is not inside the picture
+	 * @throws IllegalArgumentException if {@code src} is too short
+	 */
+	public void setRegion(int col, int row, int w, int h, int[] src, int offset, int scan) {
+		validateRegion(col, row, w, h, src, offset, scan);
+		beforeWrite();
+		Picture from = root;
+		if (from != null) {
+			from.setRegion(col, row, w, h, src, offset, scan);
+			return;
+		}
+		for (int y = 0; y < h; y++) {
+			System.arraycopy(src, offset + y * scan, pixels, offset(row + y) + col, w);
+		}
+	}
+
+	/**
+	 * Sets every pixel of the {@code w}-by-{@code h} rectangle whose upper-left
+	 * pixel is ({@code col}, {@code row}) to the given color. The first row of
+	 * the rectangle is filled with {@link Arrays#fill(int[], int, int, int)} and
+	 * copied to the other rows with {@link System#arraycopy}, so filling is
+	 * limited by the memory bandwidth rather than by a call per pixel.
+	 *
+	 * @param col the column index of the first pixel
+	 * @param row the row index of the first pixel
+	 * @param w   the width of the rectangle
+	 * @param h   the height of the rectangle
+	 * @param rgb the integer representation of the color
+	 * @throws IllegalArgumentException if the rectangle is not inside the picture
+	 */
+	public void fillRegion(int col, int row, int w, int h, int rgb) {
+		validateRectangle(col, row, w, h);
+		if (w == 0 || h == 0)
+			return;
+		beforeWrite();
+		if (pixels == null) {
+			// no heap raster: fill through setRegion a row at a time
+			int[] line = new int[w];
+			Arrays.fill(line, rgb & 0xFFFFFF);
+			for (int y = 0; y < h; y++)
+				setRegion(col, row + y, w, 1, line, 0, w);
+			return;
+		}
+		int first = offset(row) + col;
+		Arrays.fill(pixels, first, first + w, rgb & 0xFFFFFF);
+		for (int y = 1; y < h; y++)
+			System.arraycopy(pixels, first, pixels, offset(row + y) + col, w);
+	}
+
+	/**
+	 * Does {@link #getRegion} for a view of a picture without a heap raster.
+	 */
+	private void readThrough(Picture from, int col, int row, int w, int h, int[] dst, int offset, int scan) {
+		for (int y = 0; y < h; y++) {
+			int c = cc * col + cr * (row + y) + c0;
+			int r = rc * col + rr * (row + y) + r0;
+			if (cc == 1 && rc == 0) {
+				from.getRegion(c, r, w, 1, dst, offset + y * scan, w);
+			} else {
+				for (int x = 0; x < w; x++) {
+					dst[offset + y * scan + x] = from.getRGB(c + x * cc, r + x * rc);
+				}
+			}
+		}
+	}
+
+	final void validateRegion(int col, int row, int w, int h, int[] array, int offset, int scan) {
+		validateRectangle(col, row, w, h);
+		if (w == 0 || h == 0)
+			return;
+		if (array == null)
+			throw new IllegalArgumentException("array argument is null");
+		if (offset < 0 || scan < w || (long) offset + (long) (h - 1) * scan + w > array.length)
+			throw new IllegalArgumentException("array too short for a " + w + "x" + h + " region");
+	}
+
+	final void validateRectangle(int col, int row, int w, int h) {
+		if (w < 0 || h < 0)
+			throw new IllegalArgumentException("region size must not be negative: " + w + "x" + h);
+		if (w == 0 || h == 0)
+			return;
 		validateColumnIndex(col);
+		validateColumnIndex(col + w - 1);
 		validateRowIndex(row);
+		validateRowIndex(row + h - 1);
+	}
+
+	// index in pixels of the first pixel of a row
+	private int offset(int row) {
 		if (isOriginUpperLeft)
-			image.setRGB(col, row, rgb);
+			return row * width;
 		else
-			image.setRGB(col, height - row - 1, rgb);
+			return (height - row - 1) * width;
 	}
 
 }
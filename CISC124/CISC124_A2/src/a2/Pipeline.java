@@ -0,0 +1,260 @@
+package a2;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A chain of image operations that is computed in one pass, without creating
+ * a picture for each step.
+ *
+ * <p>
+ * A pipeline is built from a source picture and a list of operations, for
+ * example
+ *
+ * <pre>
+ * Picture p = Pipeline.of(orig).gray().blur(3).binary().render();
+ * </pre>
+ *
+ * and nothing is computed until {@link #render()} is called. Rendering pulls
+ * the result one row at a time through the chain: point operations change the
+ * row in place, so consecutive point operations run in a single pass over a
+ * row that stays in cache, and a blur keeps only the {@code 2 * radius + 2}
+ * rows of its input that its box still needs. The only full-size picture is
+ * the result, which is kept like the source (see {@link MappedPicture}).
+ *
+ * <p>
+ * The result is identical to applying the operations one by one with
+ * {@link A2}. Rows are rendered in bands, in parallel, by
+ * {@link A2#getScheduler()}; each band warms its blurs up on the rows just
+ * above it.
+ *
+ * <p>
+ * A pipeline can also read an image file as it is decoded, see
+ * {@link #of(RowDecoder)}. Its rows are then rendered in order on the calling
+ * thread while the file is decoded on another, so decoding and the operations
+ * overlap, and only the result and a band of decoded rows are in memory.
+ *
+ * <p>
+ * Pipelines are immutable: each operation returns a new pipeline.
+ */
+public final class Pipeline {
+	private final Picture source; // null if the rows come from a decoder
+	private final RowDecoder decoder;
+	private final int width, height;
+	private final UnaryOperator<Stage> chain; // wraps the source stage in the operations
+	private final int halo; // rows above and below a band needed by the operations
+
+	private Pipeline(Picture source, RowDecoder decoder, UnaryOperator<Stage> chain, int halo) {
+		this.source = source;
+		this.decoder = decoder;
+		this.width = source != null ? source.width() : decoder.width();
+		this.height = source != null ? source.height() : decoder.height();
+		this.chain = chain;
+		this.halo = halo;
+	}
+
+	/**
+	 * Returns a pipeline with no operations that reads {@code p}.
+	 *
+	 * @param p - the source picture
+	 * @return the pipeline
+	 */
+	public static Pipeline of(Picture p) {
+		if (p == null) {
+			throw new IllegalArgumentException("picture argument is null");
+		}
+		return new Pipeline(p, null, UnaryOperator.identity(), 0);
+	}
+
+	/**
+	 * Returns a pipeline with no operations that reads the image file of
+	 * {@code d} as it is decoded. Such a pipeline can be rendered only once,
+	 * and rendering it closes the decoder.
+	 *
+	 * @param d - the decoder of the source file
+	 * @return the pipeline
+	 */
+	public static Pipeline of(RowDecoder d) {
+		if (d == null) {
+			throw new IllegalArgumentException("decoder argument is null");
+		}
+		return new Pipeline(null, d, UnaryOperator.identity(), 0);
+	}
+
+	/**
+	 * Adds {@link A2#toGray(Picture)} to the end of this pipeline.
+	 *
+	 * @return the longer pipeline
+	 */
+	public Pipeline gray() {
+		return then(ColorKernels.GRAY);
+	}
+
+	/**
+	 * Adds {@link A2#toBinary(Picture)} to the end of this pipeline.
+	 *
+	 * @return the longer pipeline
+	 */
+	public Pipeline binary() {
+		return then(ColorKernels.BINARY);
+	}
+
+	/**
+	 * Adds {@link A2#redEye(Picture)} to the end of this pipeline.
+	 *
+	 * @return the longer pipeline
+	 */
+	public Pipeline redEye() {
+		return then(ColorKernels.RED_EYE);
+	}
+
+	/**
+	 * Adds {@link A2#flipVertical(Picture)} to the end of this pipeline.
+	 *
+	 * @return the longer pipeline
+	 */
+	public Pipeline flipVertical() {
+		return then((int[] src, int srcPos, int[] dst, int dstPos, int length) -> {
+			for (int i = 0, j = length - 1; i < j; i++, j--) {
+				int rgb = dst[dstPos + i];
+				dst[dstPos + i] = dst[dstPos + j];
+				dst[dstPos + j] = rgb;
+			}
+		});
+	}
+
+	/**
+	 * Adds {@link A2#blur(Picture, int)} to the end of this pipeline.
+	 *
+	 * @param radius - radius for boxblur
+	 * @return the longer pipeline
+	 */
+	public Pipeline blur(int radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("radius must not be negative: " + radius);
+		}
+		int w = width;
+		int h = height;
+		return new Pipeline(source, decoder, s -> new BlurStage(chain.apply(s), w, h, radius), halo + radius);
+	}
+
+	/**
+	 * Adds a point operation, which rewrites each row in place.
+	 */
+	private Pipeline then(RowKernel kernel) {
+		int w = width;
+		return new Pipeline(source, decoder, s -> {
+			Stage upstream = chain.apply(s);
+			return (row, dst, offset) -> {
+				upstream.row(row, dst, offset);
+				kernel.apply(dst, offset, dst, offset, w);
+			};
+		}, halo);
+	}
+
+	/**
+	 * Computes the result of this pipeline.
+	 *
+	 * @return result - the new image
+	 * @throws IllegalArgumentException if the source file cannot be decoded
+	 * @throws IllegalStateException    if the source decoder was used before
+	 */
+	public Picture render() {
+		if (decoder != null) {
+			return renderStreamed();
+		}
+		int w = source.width();
+		Picture result = source.blank(w, source.height());
+		int[] raster = result.raster();
+		TileScheduler scheduler = A2.getScheduler();
+		// bands much taller than the halo, so warming up the blurs is cheap
+		scheduler.runBands(result.height(), Math.max(scheduler.tileHeight(), 8 * halo), (firstRow, endRow) -> {
+			Stage stage = chain.apply((row, out, offset) -> source.getRegion(0, row, w, 1, out, offset, w));
+			int[] buffer = raster != null ? null : new int[w];
+			for (int row = firstRow; row < endRow; row++) {
+				if (raster != null) {
+					stage.row(row, raster, row * w);
+				} else {
+					// a result off the heap is written a row at a time
+					stage.row(row, buffer, 0);
+					result.setRow(row, buffer);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Renders the rows in order as the decoder hands them on.
+	 */
+	private Picture renderStreamed() {
+		try (RowDecoder d = decoder) {
+			Picture result = new Picture(width, height);
+			int[] raster = result.raster();
+			d.start();
+			Stage stage = chain.apply(d::row);
+			for (int row = 0; row < height; row++) {
+				stage.row(row, raster, row * width);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * One step of a pipeline. A stage is asked for its rows in increasing order,
+	 * starting anywhere, and each row at most once.
+	 */
+	@FunctionalInterface
+	private interface Stage {
+
+		/**
+		 * Stores row {@code row} of this step from {@code dst[offset]} onwards.
+		 */
+		void row(int row, int[] dst, int offset);
+	}
+
+	/**
+	 * A box blur that keeps the rows of its input inside the box in a ring
+	 * buffer, and the column sums of those rows.
+	 */
+	private static final class BlurStage implements Stage {
+		private final Stage upstream;
+		private final int w, h, radius;
+		private final int[] ring; // input rows, row r in slot r % (2 * radius + 2)
+		private final int[] colRed, colGreen, colBlue;
+		private int next = -1; // next input row to read
+		private int removed; // first input row still in the column sums
+
+		BlurStage(Stage upstream, int w, int h, int radius) {
+			this.upstream = upstream;
+			this.w = w;
+			this.h = h;
+			this.radius = radius;
+			this.ring = new int[(2 * radius + 2) * w];
+			this.colRed = new int[w];
+			this.colGreen = new int[w];
+			this.colBlue = new int[w];
+		}
+
+		@Override
+		public void row(int row, int[] dst, int offset) {
+			if (next < 0) {
+				next = Math.max(row - radius, 0);
+				removed = next;
+			}
+			// drop the rows above the box before their slots are reused
+			for (; removed < row - radius; removed++) {
+				BoxBlur.addRow(ring, slot(removed), colRed, colGreen, colBlue, -1);
+			}
+			for (; next <= Math.min(row + radius, h - 1); next++) {
+				upstream.row(next, ring, slot(next));
+				BoxBlur.addRow(ring, slot(next), colRed, colGreen, colBlue, 1);
+			}
+			int rows = Math.min(row + radius, h - 1) - Math.max(row - radius, 0) + 1;
+			BoxBlur.blurRow(colRed, colGreen, colBlue, 0, w - 1, radius, rows, dst, offset, 0, w);
+		}
+
+		private int slot(int row) {
+			return (row % (2 * radius + 2)) * w;
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package a2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes pictures as PNG files, compressing horizontal strips of the image in
+ * parallel. Gray pictures (see {@link Picture#isGray()}) are written with 8
+ * bits per pixel and the others with 24.
+ *
+ * <p>
+ * The image data of a PNG file is a single zlib stream, but a deflate stream
+ * can be cut into pieces that are compressed separately: every strip but the
+ * last is ended with a sync flush, which closes its last block on a byte
+ * boundary, so the compressed strips can simply be put one after the other.
+ * Each strip is given the last 32 KB of the data before it as a preset
+ * dictionary, so matches that cross a strip boundary are still found and the
+ * file is hardly larger than a serial one. The Adler-32 checksum of the whole
+ * stream is combined from the checksums of the strips.
+ *
+ * <p>
+ * Each row is filtered with the PNG filter that gives the smallest sum of
+ * absolute differences, the heuristic of libpng. Filtering only needs the row
+ * above, so a strip filters the last rows of the strip before it again for its
+ * dictionary instead of waiting for it.
+ *
+ * <p>
+ * Strips are compressed on {@link A2#getScheduler()}, a few per thread at a
+ * time, and written in order as each group is finished, so only the
+ * compressed data of one group is held in memory. {@link #background} runs
+ * saves on a single writer thread instead of the caller; saves queued before
+ * the program exits are finished by a shutdown hook.
+ */
+final class PngEncoder {
+	/**
+	 * Filtered bytes in a strip, about. Smaller strips spread the work better
+	 * but are compressed less well.
+	 */
+	static final int STRIP_BYTES = 1 << 19;
+
+	private static final int WINDOW = 1 << 15; // deflate window, the most of a dictionary used
+	private static final int LEVEL = 4; // the level of the ImageIO PNG writer
+	private static final int STRIPS_PER_THREAD = 4; // strips compressed at a time, per thread
+	private static final long EXIT_WAIT_SECONDS = 60; // how long exit waits for queued saves
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9C }; // deflate, 32 KB window, no dictionary
+
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "a2-png-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			WRITER.shutdown();
+			try {
+				WRITER.awaitTermination(EXIT_WAIT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "a2-png-writer-exit"));
+	}
+
+	private PngEncoder() {
+	}
+
+	/**
+	 * Runs {@code save} on the writer thread.
+	 *
+	 * @param save - writes a file
+	 * @return completes when the file is written, or exceptionally with the
+	 *         exception of {@code save}
+	 */
+	static CompletableFuture<Void> background(Runnable save) {
+		return CompletableFuture.runAsync(save, WRITER);
+	}
+
+	/**
+	 * Writes {@code p} to {@code out} as a PNG stream. The stream is not closed.
+	 *
+	 * @param p   - the picture
+	 * @param out - the stream
+	 * @throws IOException if the stream cannot be written
+	 */
+	static void write(Picture p, OutputStream out) throws IOException {
+		int width = p.width();
+		int height = p.height();
+		int channels = p.isGray() ? 1 : 3;
+		int rowBytes = 1 + channels * width;
+		int rows = Math.max(1, STRIP_BYTES / rowBytes);
+		int strips = (height + rows - 1) / rows;
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8; // bits per sample
+		header[9] = (byte) (channels == 1 ? 0 : 2); // grayscale or truecolour
+		chunk(out, "IHDR", header);
+
+		TileScheduler scheduler = A2.getScheduler();
+		int group = Math.max(1, STRIPS_PER_THREAD * scheduler.parallelism());
+		long adler = 1;
+		for (int first = 0; first < strips; first += group) {
+			int base = first;
+			Strip[] done = new Strip[Math.min(group, strips - first)];
+			scheduler.runBands(done.length, 1, (lo, hi) -> {
+				for (int s = lo; s < hi; s++) {
+					int firstRow = (base + s) * rows;
+					done[s] = strip(p, channels, firstRow, Math.min(firstRow + rows, height), base + s == strips - 1);
+				}
+			});
+			for (int s = 0; s < done.length; s++) {
+				adler = combine(adler, done[s].adler, done[s].length);
+				byte[] prefix = base + s == 0 ? ZLIB_HEADER : new byte[0];
+				byte[] suffix = new byte[0];
+				if (base + s == strips - 1) {
+					suffix = new byte[4];
+					putInt(suffix, 0, (int) adler);
+				}
+				chunk(out, "IDAT", prefix, done[s].data, suffix);
+			}
+		}
+		chunk(out, "IEND");
+		out.flush();
+	}
+
+	/**
+	 * A compressed strip: its part of the deflate stream and the Adler-32
+	 * checksum and length of the filtered rows.
+	 */
+	private static final class Strip {
+		final byte[] data;
+		final long adler;
+		final long length;
+
+		Strip(byte[] data, long adler, long length) {
+			this.data = data;
+			this.adler = adler;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Filters and compresses rows {@code firstRow} to {@code endRow - 1} with
+	 * {@code channels} samples per pixel, ending the stream if {@code last}, or
+	 * else with a sync flush.
+	 */
+	private static Strip strip(Picture p, int channels, int firstRow, int endRow, boolean last) {
+		int width = p.width();
+		int rowBytes = 1 + channels * width;
+		// rows of the strip before, filtered again for the dictionary
+		int dictRows = Math.min(firstRow, (WINDOW + rowBytes - 1) / rowBytes);
+		int start = firstRow - dictRows;
+		byte[] filtered = new byte[(endRow - start) * rowBytes];
+		int[] pixels = new int[width];
+		byte[] prev = new byte[rowBytes - 1];
+		byte[] cur = new byte[rowBytes - 1];
+		byte[][] candidates = new byte[5][rowBytes - 1];
+		if (start > 0) {
+			p.getRow(start - 1, pixels);
+			samples(pixels, prev, channels);
+		}
+		for (int y = start; y < endRow; y++) {
+			p.getRow(y, pixels);
+			samples(pixels, cur, channels);
+			filter(cur, prev, channels, candidates, filtered, (y - start) * rowBytes);
+			byte[] t = prev;
+			prev = cur;
+			cur = t;
+		}
+
+		int from = dictRows * rowBytes;
+		int length = filtered.length - from;
+		Adler32 adler = new Adler32();
+		adler.update(filtered, from, length);
+		Deflater deflater = new Deflater(LEVEL, true);
+		try {
+			if (from > 0) {
+				int dictionary = Math.min(from, WINDOW);
+				deflater.setDictionary(filtered, from - dictionary, dictionary);
+			}
+			deflater.setInput(filtered, from, length);
+			ByteArrayOutputStream data = new ByteArrayOutputStream(length / 2);
+			byte[] buffer = new byte[1 << 16];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					data.write(buffer, 0, deflater.deflate(buffer));
+				}
+			} else {
+				// a sync flush has emptied the input once the buffer is not filled
+				int n;
+				do {
+					n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					data.write(buffer, 0, n);
+				} while (n == buffer.length);
+			}
+			return new Strip(data.toByteArray(), adler.getValue(), length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Splits packed RGB pixels into red, green and blue bytes, or for one
+	 * channel takes the blue byte, which is the level of a gray pixel.
+	 */
+	private static void samples(int[] pixels, byte[] samples, int channels) {
+		if (channels == 1) {
+			for (int x = 0; x < pixels.length; x++) {
+				samples[x] = (byte) pixels[x];
+			}
+			return;
+		}
+		for (int x = 0, i = 0; x < pixels.length; x++, i += 3) {
+			int rgb = pixels[x];
+			samples[i] = (byte) (rgb >> 16);
+			samples[i + 1] = (byte) (rgb >> 8);
+			samples[i + 2] = (byte) rgb;
+		}
+	}
+
+	/**
+	 * Writes the filter type and the filtered bytes of row {@code cur}, whose
+	 * row above is {@code prev}, to {@code out} at {@code pos}, with the filter
+	 * whose bytes have the smallest sum of absolute values. A pixel is
+	 * {@code bpp} bytes.
+	 */
+	private static void filter(byte[] cur, byte[] prev, int bpp, byte[][] candidates, byte[] out, int pos) {
+		long[] sums = new long[5];
+		for (int i = 0; i < cur.length; i++) {
+			int x = cur[i] & 0xFF;
+			int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+			int b = prev[i] & 0xFF;
+			int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+			byte none = (byte) x;
+			byte sub = (byte) (x - a);
+			byte up = (byte) (x - b);
+			byte average = (byte) (x - ((a + b) >> 1));
+			byte paeth = (byte) (x - paeth(a, b, c));
+			candidates[0][i] = none;
+			candidates[1][i] = sub;
+			candidates[2][i] = up;
+			candidates[3][i] = average;
+			candidates[4][i] = paeth;
+			sums[0] += Math.abs(none);
+			sums[1] += Math.abs(sub);
+			sums[2] += Math.abs(up);
+			sums[3] += Math.abs(average);
+			sums[4] += Math.abs(paeth);
+		}
+		int best = 0;
+		for (int type = 1; type < 5; type++) {
+			if (sums[type] < sums[best]) {
+				best = type;
+			}
+		}
+		out[pos] = (byte) best;
+		System.arraycopy(candidates[best], 0, out, pos + 1, cur.length);
+	}
+
+	/**
+	 * Returns whichever of {@code a}, {@code b} and {@code c} is closest to
+	 * {@code a + b - c}.
+	 */
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc)
+			return a;
+		return pb <= pc ? b : c;
+	}
+
+	/**
+	 * Returns the Adler-32 checksum of two pieces of data from the checksums of
+	 * each, as zlib's {@code adler32_combine} does.
+	 *
+	 * @param first   - checksum of the first piece
+	 * @param second  - checksum of the second piece
+	 * @param length2 - length of the second piece
+	 * @return checksum of the first piece followed by the second
+	 */
+	static long combine(long first, long second, long length2) {
+		final long base = 65521;
+		long rem = length2 % base;
+		long sum1 = first & 0xFFFF;
+		long sum2 = rem * sum1 % base;
+		sum1 += (second & 0xFFFF) + base - 1;
+		sum2 += ((first >> 16) & 0xFFFF) + ((second >> 16) & 0xFFFF) + base - rem;
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum2 >= 2 * base)
+			sum2 -= 2 * base;
+		if (sum2 >= base)
+			sum2 -= base;
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Writes a chunk whose data is the given pieces, one after the other.
+	 */
+	private static void chunk(OutputStream out, String type, byte[]... pieces) throws IOException {
+		long length = 0;
+		for (byte[] piece : pieces)
+			length += piece.length;
+		byte[] head = new byte[8];
+		putInt(head, 0, Math.toIntExact(length));
+		for (int i = 0; i < 4; i++)
+			head[4 + i] = (byte) type.charAt(i);
+		CRC32 crc = new CRC32();
+		crc.update(head, 4, 4);
+		out.write(head);
+		for (byte[] piece : pieces) {
+			crc.update(piece);
+			out.write(piece);
+		}
+		byte[] tail = new byte[4];
+		putInt(tail, 0, (int) crc.getValue());
+		out.write(tail);
+	}
+
+	/**
+	 * Stores {@code value} big-endian at {@code pos}.
+	 */
+	private static void putInt(byte[] bytes, int pos, int value) {
+		bytes[pos] = (byte) (value >>> 24);
+		bytes[pos + 1] = (byte) (value >>> 16);
+		bytes[pos + 2] = (byte) (value >>> 8);
+		bytes[pos + 3] = (byte) value;
+	}
+}
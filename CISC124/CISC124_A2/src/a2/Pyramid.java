@@ -0,0 +1,108 @@
+package a2;
+
+/**
+ * A picture at several resolutions, each half the width and height of the one
+ * before (a mipmap), for previews that do not need every pixel.
+ *
+ * <p>
+ * Level 0 is a copy-on-write view of the picture (see
+ * {@link Picture#copyView()}), so the pyramid keeps showing the picture as it
+ * was when the pyramid was built. Each pixel of level {@code k + 1} is the
+ * rounded mean of a 2-by-2 block of level {@code k}; an odd last row or column
+ * is left out. The levels stop when a side would become less than 1, and are
+ * kept like the picture (see {@link MappedPicture}). Building every level
+ * reads about a third more pixels than the picture has, in parallel bands on
+ * {@link A2#getScheduler()}.
+ */
+public final class Pyramid {
+	private final Picture[] levels;
+
+	/**
+	 * Builds the pyramid of a picture.
+	 *
+	 * @param p the picture
+	 * @throws IllegalArgumentException if {@code p} is {@code null}
+	 */
+	public Pyramid(Picture p) {
+		if (p == null)
+			throw new IllegalArgumentException("constructor argument is null");
+		int count = 1;
+		for (int w = p.width(), h = p.height(); w >= 2 && h >= 2; w /= 2, h /= 2)
+			count++;
+		levels = new Picture[count];
+		levels[0] = p.copyView();
+		for (int k = 1; k < count; k++)
+			levels[k] = half(levels[k - 1]);
+	}
+
+	/**
+	 * Returns the number of levels.
+	 *
+	 * @return the number of levels, at least 1
+	 */
+	public int levels() {
+		return levels.length;
+	}
+
+	/**
+	 * Returns a level of the pyramid, as a copy-on-write view, so changing it
+	 * does not change the pyramid.
+	 *
+	 * @param k the level, 0 for full resolution
+	 * @return the picture at level {@code k}
+	 * @throws IllegalArgumentException if {@code k} is not a level
+	 */
+	public Picture level(int k) {
+		if (k < 0 || k >= levels.length)
+			throw new IllegalArgumentException("no level " + k + " in a pyramid of " + levels.length);
+		return levels[k].copyView();
+	}
+
+	/**
+	 * Returns the smallest level that is at least {@code width} wide or at least
+	 * {@code height} tall, so that fitting it into a {@code width}-by-{@code height}
+	 * box does not enlarge it. Returns 0 if the picture itself is smaller than
+	 * the box.
+	 *
+	 * @param width  the width of the box
+	 * @param height the height of the box
+	 * @return the level
+	 */
+	public int levelFor(int width, int height) {
+		int k = 0;
+		while (k + 1 < levels.length
+				&& (levels[k + 1].width() >= width || levels[k + 1].height() >= height))
+			k++;
+		return k;
+	}
+
+	/**
+	 * Returns a picture half the width and height of {@code p}, each pixel the
+	 * rounded mean of a 2-by-2 block.
+	 */
+	private static Picture half(Picture p) {
+		int w = p.width() / 2;
+		int h = p.height() / 2;
+		int sw = p.width();
+		Picture result = p.blank(w, h);
+		int[] raster = result.raster();
+		A2.getScheduler().runBands(h, TileScheduler.DEFAULT_TILE_HEIGHT, (firstRow, endRow) -> {
+			int[] src = new int[2 * sw];
+			int[] out = raster != null ? raster : new int[w];
+			for (int row = firstRow; row < endRow; row++) {
+				p.getRegion(0, 2 * row, sw, 2, src, 0, sw);
+				int pos = raster != null ? row * w : 0;
+				for (int col = 0; col < w; col++) {
+					int a = src[2 * col], b = src[2 * col + 1], c = src[sw + 2 * col], d = src[sw + 2 * col + 1];
+					int red = ((a >> 16 & 0xFF) + (b >> 16 & 0xFF) + (c >> 16 & 0xFF) + (d >> 16 & 0xFF) + 2) >> 2;
+					int green = ((a >> 8 & 0xFF) + (b >> 8 & 0xFF) + (c >> 8 & 0xFF) + (d >> 8 & 0xFF) + 2) >> 2;
+					int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+					out[pos + col] = (red << 16) | (green << 8) | blue;
+				}
+				if (raster == null)
+					result.setRow(row, out);
+			}
+		});
+		return result;
+	}
+}
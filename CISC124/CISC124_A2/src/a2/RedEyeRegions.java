@@ -0,0 +1,244 @@
+package a2;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Red-eye removal that repaints only round, compact red regions, such as
+ * pupils, instead of every red pixel of the image.
+ *
+ * <p>
+ * The image is first looked at on a coarse grid: each {@code cell}-by-
+ * {@code cell} block of pixels is averaged, and the average is tested with
+ * {@link A2#isRedEye(int)}, so that a cell stands for all of its pixels rather
+ * than one sample. Cells are at most {@link #MAX_CELL} pixels wide, so a pupil
+ * a dozen pixels across still spans {@link #MIN_SIDE} cells however large the
+ * image is. The red cells are grouped into 8-connected regions by union-find,
+ * in parallel bands (see {@link TileScheduler#runBands}); each band joins its
+ * own cells, and the bands are then stitched together along their boundaries.
+ * A region is kept if it looks like a pupil: its bounding box is nearly square
+ * and not tiny, the region fills most of the box, as a disc fills about 79% of
+ * its box, and it is small compared with the image. Large or ragged red areas,
+ * such as red clothing, are left alone.
+ *
+ * <p>
+ * Only the pixels inside the kept regions, grown by a cell on each side, are
+ * then repainted, by the same per-pixel test as {@link A2#redEye(Picture)}.
+ */
+final class RedEyeRegions {
+	/**
+	 * Short side of the coarse grid, in cells, for images too small to have
+	 * cells of {@link #MAX_CELL} pixels.
+	 */
+	static final int GRID_SIZE = 120;
+
+	/**
+	 * Largest side of a cell, in pixels.
+	 */
+	static final int MAX_CELL = 4;
+
+	/**
+	 * Least side of the bounding box of a region, in cells, so that specks of
+	 * red noise are not taken for pupils.
+	 */
+	static final int MIN_SIDE = 3;
+
+	/**
+	 * Largest ratio of the long side to the short side of the bounding box of a
+	 * region.
+	 */
+	static final double MAX_ASPECT = 2.0;
+
+	/**
+	 * Least fraction of its bounding box that a region must fill.
+	 */
+	static final double MIN_FILL = 0.5;
+
+	/**
+	 * Largest side of the bounding box of a region, as a fraction of the short
+	 * side of the grid.
+	 */
+	static final double MAX_SIZE = 0.125;
+
+	private RedEyeRegions() {
+	}
+
+	/**
+	 * Returns a copy of {@code p} with the red-eye pixels of round, compact
+	 * red regions painted black.
+	 *
+	 * @param p - original image
+	 * @return result - image with reduced red-eye
+	 */
+	static Picture correct(Picture p) {
+		List<Rectangle> regions = find(p);
+		Picture result = p.copyView();
+		int[] row = new int[p.width()];
+		for (Rectangle r : regions) {
+			for (int y = r.y; y < r.y + r.height; y++) {
+				p.getRegion(r.x, y, r.width, 1, row, 0, r.width);
+				boolean changed = false;
+				for (int x = 0; x < r.width; x++) {
+					if (A2.isRedEye(row[x])) {
+						row[x] = 0x000000;
+						changed = true;
+					}
+				}
+				if (changed) {
+					result.setRegion(r.x, y, r.width, 1, row, 0, r.width);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the parts of {@code p} that hold round, compact red regions, in
+	 * pixels, grown by one cell on each side and clipped to the image.
+	 *
+	 * @param p - original image
+	 * @return the regions, in no particular order
+	 */
+	static List<Rectangle> find(Picture p) {
+		int cell = Math.max(1, Math.min(MAX_CELL, Math.min(p.width(), p.height()) / GRID_SIZE));
+		int cols = p.width() / cell;
+		int rows = p.height() / cell;
+		int[] parent = new int[cols * rows]; // -1 for a cell that is not red
+		boolean[] seams = new boolean[rows]; // the first row of each band
+		A2.getScheduler().runBands(rows, TileScheduler.DEFAULT_TILE_HEIGHT / 4, (firstRow, endRow) -> {
+			int[] block = new int[cell * p.width()];
+			seams[firstRow] = true;
+			for (int y = firstRow; y < endRow; y++) {
+				p.getRegion(0, y * cell, p.width(), cell, block, 0, p.width());
+				for (int x = 0; x < cols; x++) {
+					int i = y * cols + x;
+					parent[i] = A2.isRedEye(average(block, x * cell, p.width(), cell)) ? i : -1;
+					if (parent[i] < 0) {
+						continue;
+					}
+					if (x > 0 && parent[i - 1] >= 0) {
+						union(parent, i, i - 1);
+					}
+					if (y > firstRow) {
+						join(parent, i, i - cols, x, cols);
+					}
+				}
+			}
+		});
+		for (int y = 1; y < rows; y++) {
+			if (seams[y]) {
+				for (int x = 0; x < cols; x++) {
+					if (parent[y * cols + x] >= 0) {
+						join(parent, y * cols + x, (y - 1) * cols + x, x, cols);
+					}
+				}
+			}
+		}
+		return regions(parent, cols, rows, cell, p.width(), p.height());
+	}
+
+	/**
+	 * Returns the average color of the {@code cell}-by-{@code cell} block of
+	 * {@code block} whose upper-left pixel is {@code block[start]}, rounded as
+	 * by {@link A2#boxAvg(Picture, int, int, int)}.
+	 */
+	private static int average(int[] block, int start, int scan, int cell) {
+		long red = 0;
+		long green = 0;
+		long blue = 0;
+		for (int y = 0; y < cell; y++) {
+			for (int i = start + y * scan; i < start + y * scan + cell; i++) {
+				int rgb = block[i];
+				red += (rgb >> 16) & 0xFF;
+				green += (rgb >> 8) & 0xFF;
+				blue += rgb & 0xFF;
+			}
+		}
+		int count = cell * cell;
+		return (BoxBlur.roundDiv(red, count) << 16) | (BoxBlur.roundDiv(green, count) << 8)
+				| BoxBlur.roundDiv(blue, count);
+	}
+
+	/**
+	 * Joins cell {@code i} with the red cells of the row above it, cell
+	 * {@code above} and its left and right neighbours.
+	 */
+	private static void join(int[] parent, int i, int above, int x, int cols) {
+		for (int dx = -1; dx <= 1; dx++) {
+			if (x + dx >= 0 && x + dx < cols && parent[above + dx] >= 0) {
+				union(parent, i, above + dx);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bounding boxes of the regions that pass the shape tests, in
+	 * pixels.
+	 */
+	private static List<Rectangle> regions(int[] parent, int cols, int rows, int cell, int width, int height) {
+		int[] count = new int[parent.length];
+		int[] minX = new int[parent.length], maxX = new int[parent.length];
+		int[] minY = new int[parent.length], maxY = new int[parent.length];
+		for (int i = 0; i < parent.length; i++) {
+			if (parent[i] < 0) {
+				continue;
+			}
+			int root = find(parent, i);
+			int x = i % cols, y = i / cols;
+			if (count[root]++ == 0) {
+				minX[root] = maxX[root] = x;
+				minY[root] = maxY[root] = y;
+			} else {
+				minX[root] = Math.min(minX[root], x);
+				maxX[root] = Math.max(maxX[root], x);
+				minY[root] = Math.min(minY[root], y);
+				maxY[root] = Math.max(maxY[root], y);
+			}
+		}
+
+		List<Rectangle> regions = new ArrayList<>();
+		int maxSide = Math.max(1, (int) (MAX_SIZE * Math.min(cols, rows)));
+		Rectangle image = new Rectangle(width, height);
+		for (int i = 0; i < parent.length; i++) {
+			if (count[i] == 0) {
+				continue;
+			}
+			int w = maxX[i] - minX[i] + 1;
+			int h = maxY[i] - minY[i] + 1;
+			if (Math.min(w, h) < MIN_SIDE || Math.max(w, h) > maxSide || Math.max(w, h) > MAX_ASPECT * Math.min(w, h)
+					|| count[i] < MIN_FILL * w * h) {
+				continue;
+			}
+			Rectangle r = new Rectangle((minX[i] - 1) * cell, (minY[i] - 1) * cell, (w + 2) * cell, (h + 2) * cell);
+			regions.add(r.intersection(image));
+		}
+		return regions;
+	}
+
+	/**
+	 * Returns the root of the set holding cell {@code i}, halving the path on the
+	 * way.
+	 */
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Joins the sets holding cells {@code a} and {@code b}, under the smaller
+	 * root.
+	 */
+	private static void union(int[] parent, int a, int b) {
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		if (ra < rb) {
+			parent[rb] = ra;
+		} else if (rb < ra) {
+			parent[ra] = rb;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package a2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * A cache of the results of image operations, so that choosing an operation
+ * again (or applying it to another image with the same pixels) returns the
+ * earlier result instead of computing it again.
+ *
+ * <p>
+ * A result is found by the size and a 64-bit hash of the pixels of the source
+ * picture together with the name of the operation, which includes its
+ * parameters (for example {@code BLUR_5}). The hash is a parallel pass over
+ * the source, much cheaper than the operations, and is kept by the source
+ * picture until it changes, so looking up the same picture again, as the
+ * viewer does for every operation on its image, costs no pass at all. Only a
+ * picture whose raster was handed out by {@link Picture#pixels()}, which can
+ * then change at any time, is hashed on every lookup.
+ *
+ * <p>
+ * The cache holds at most a given number of bytes of pictures, counting the
+ * raster of each result (or, for a view, the raster it reads from), and evicts
+ * the least recently used results first. Results are returned as copy-on-write
+ * views (see {@link Picture#copyView()}), so changing a returned picture does
+ * not change the cache.
+ *
+ * <p>
+ * The viewer and {@link Batch} share {@link #shared()}. A cache is safe to use
+ * from several threads; operations are computed outside its lock, so two
+ * threads that miss the same result at once both compute it.
+ */
+public final class ResultCache {
+	private static final ResultCache SHARED = new ResultCache(Runtime.getRuntime().maxMemory() / 4);
+	private static final int HASH_BAND = 64; // rows hashed together
+
+	private final long maxBytes;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // in access order
+	private long bytes;
+	private long hits, misses, evictions;
+
+	/**
+	 * Creates an empty cache that holds at most {@code maxBytes} bytes of
+	 * pictures.
+	 *
+	 * @param maxBytes the capacity of the cache, in bytes
+	 * @throws IllegalArgumentException if {@code maxBytes} is negative
+	 */
+	public ResultCache(long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("capacity must not be negative");
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cache used by the viewer and by {@link Batch}, which holds up
+	 * to a quarter of the maximum heap.
+	 *
+	 * @return the shared cache
+	 */
+	public static ResultCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the result of the viewer operation {@code op} on {@code p} (see
+	 * {@link A2#apply(String, Picture)}), from the cache if possible.
+	 *
+	 * @param op - the operation
+	 * @param p  - original image
+	 * @return result - the new image, or null if op is not an image operation
+	 */
+	public Picture apply(String op, Picture p) {
+		if (!A2.OPERATIONS.contains(op))
+			return null;
+		return apply(p, op, source -> A2.apply(op, source));
+	}
+
+	/**
+	 * Returns the result of {@code operation} on {@code p}, from the cache if
+	 * possible. Results of different operations must have different names.
+	 *
+	 * @param p         - original image
+	 * @param name      - the name of the operation, with its parameters
+	 * @param operation - computes the result; a null result is not cached
+	 * @return result - the new image
+	 */
+	public Picture apply(Picture p, String name, UnaryOperator<Picture> operation) {
+		if (p == null || name == null || operation == null)
+			throw new IllegalArgumentException("argument is null");
+		return apply(p, hash(p), name, operation);
+	}
+
+	/**
+	 * Returns the result of {@code operation} on {@code p}, from the cache if
+	 * possible, filed under {@code source} as the hash of the pixels of
+	 * {@code p}. A near duplicate of a picture seen before (see
+	 * {@link PerceptualHash}) can be given the hash of that picture, to share
+	 * its results.
+	 *
+	 * @param p         - original image
+	 * @param source    - the hash of the pixels, see {@link #hash(Picture)}
+	 * @param name      - the name of the operation, with its parameters
+	 * @param operation - computes the result; a null result is not cached
+	 * @return result - the new image
+	 */
+	Picture apply(Picture p, long source, String name, UnaryOperator<Picture> operation) {
+		Key key = new Key(name, p.width(), p.height(), source);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.picture.copyView();
+			}
+			misses++;
+		}
+		Picture result = operation.apply(p);
+		if (result == null)
+			return null;
+		Entry entry = new Entry(result, result.footprint());
+		synchronized (this) {
+			if (entry.bytes <= maxBytes) {
+				Entry old = entries.put(key, entry);
+				bytes += entry.bytes - (old != null ? old.bytes : 0);
+				evict();
+			}
+		}
+		return result.copyView();
+	}
+
+	/**
+	 * Returns whether the result of {@code name} on {@code p} is in the cache,
+	 * without changing the order of eviction or the hit and miss counts.
+	 *
+	 * @param p    - original image
+	 * @param name - the name of the operation, with its parameters
+	 * @return true if the result is cached
+	 */
+	public boolean contains(Picture p, String name) {
+		Key key = new Key(name, p.width(), p.height(), hash(p));
+		synchronized (this) {
+			return entries.containsKey(key);
+		}
+	}
+
+	/**
+	 * Removes every result.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of lookups that found a result.
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that computed the result.
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results removed to make room for others.
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of results in the cache.
+	 *
+	 * @return the number of results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of bytes of pictures in the cache.
+	 *
+	 * @return the size of the cache, in bytes
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the capacity of the cache.
+	 *
+	 * @return the capacity of the cache, in bytes
+	 */
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return String.format(Locale.ROOT,
+				"cache: %d hits, %d misses (%.0f%% hits), %d evictions, %d results, %.1f of %.1f MB", hits, misses,
+				lookups > 0 ? 100.0 * hits / lookups : 0.0, evictions, entries.size(), bytes / 1e6, maxBytes / 1e6);
+	}
+
+	/**
+	 * Removes the least recently used results until the cache fits.
+	 */
+	private void evict() {
+		for (Iterator<Entry> i = entries.values().iterator(); bytes > maxBytes && i.hasNext();) {
+			bytes -= i.next().bytes;
+			i.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns a 64-bit hash of the pixels of {@code p}, kept by {@code p} until
+	 * it changes.
+	 */
+	static long hash(Picture p) {
+		return p.hash(ResultCache::hashPixels);
+	}
+
+	/**
+	 * Hashes the pixels of {@code p} in bands of {@link #HASH_BAND} rows, in
+	 * parallel, and then the hashes of the bands in order. The rotation carries
+	 * the high bits of each product down, so every bit of every pixel reaches
+	 * every bit of the hash.
+	 */
+	private static long hashPixels(Picture p) {
+		int w = p.width();
+		int bands = (p.height() + HASH_BAND - 1) / HASH_BAND;
+		long[] hashes = new long[bands];
+		A2.getScheduler().runBands(bands, 1, (firstBand, endBand) -> {
+			int[] row = new int[w];
+			for (int band = firstBand; band < endBand; band++) {
+				long h = 0;
+				for (int r = band * HASH_BAND; r < Math.min((band + 1) * HASH_BAND, p.height()); r++) {
+					p.getRegion(0, r, w, 1, row, 0, w);
+					for (int rgb : row) {
+						h = mix(h, rgb);
+					}
+				}
+				hashes[band] = h;
+			}
+		});
+		long h = 0;
+		for (long band : hashes) {
+			h = mix(h, band);
+		}
+		return h;
+	}
+
+	private static long mix(long h, long value) {
+		return (Long.rotateLeft(h, 23) ^ value) * 0x9E3779B97F4A7C15L;
+	}
+
+	/**
+	 * A result and its size when it was cached.
+	 */
+	private static final class Entry {
+		final Picture picture;
+		final long bytes;
+
+		Entry(Picture picture, long bytes) {
+			this.picture = picture;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * The source and operation of a result.
+	 */
+	private static final class Key {
+		final String name;
+		final int width, height;
+		final long hash;
+
+		Key(String name, int width, int height, long hash) {
+			this.name = name;
+			this.width = width;
+			this.height = height;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && width == k.width && height == k.height && name.equals(k.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(hash) * 31 + name.hashCode();
+		}
+	}
+}
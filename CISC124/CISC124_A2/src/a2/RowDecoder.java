@@ -0,0 +1,446 @@
+package a2;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An image file decoded a band of rows at a time, as the source of a
+ * {@link Pipeline} (see {@link Pipeline#of(RowDecoder)}), so that the
+ * operations of the pipeline start on the first rows while the rest of the
+ * file is still being decoded, and the decoded image never has to be in memory
+ * all at once.
+ *
+ * <p>
+ * The file is decoded by its {@link ImageReader} on a thread of its own, into
+ * an image whose pixels are a ring of {@code band} rows: row {@code y} is
+ * stored in slot {@code y % band}. A row is ready when the reader starts
+ * writing the next one, and the reader waits before it writes a row whose slot
+ * still holds a row that the pipeline has not read. So the decoder runs ahead
+ * of the pipeline by at most a band, and the pipeline waits for the decoder
+ * only when it catches up. Progress is reported to a {@link Listener} a band
+ * at a time.
+ *
+ * <p>
+ * Only images that the reader writes once, from top to bottom, can be
+ * streamed like this: baseline JPEGs and non-interlaced 8-bit RGB PNGs. Other
+ * images, such as progressive JPEGs (whose reader writes the whole image again
+ * after each scan), interlaced, gray or transparent PNGs, GIFs and BMPs, are
+ * decoded whole and then handed to the pipeline row by row in the same way,
+ * see {@link #isStreamed()}.
+ *
+ * <p>
+ * A decoder can be used by one pipeline, once. Closing it stops the decoding
+ * before the next row.
+ */
+public final class RowDecoder implements AutoCloseable {
+	/**
+	 * Default number of rows in the ring.
+	 */
+	public static final int DEFAULT_BAND = 64;
+
+	private final File file;
+	private final ImageInputStream in;
+	private final ImageReader reader;
+	private final int width, height, band;
+	private final boolean streamed;
+	private final int[] ring; // row y in slot y % band
+	private volatile Listener listener;
+	private int writing = -1; // the row the reader is writing, on the decoding thread
+	private int writingSlot; // the index in the ring of its first pixel
+
+	// guarded by this
+	private boolean started, closed;
+	private int decoded; // rows that are ready
+	private int released; // rows the pipeline has read
+	private Exception failure;
+
+	/**
+	 * Told how far decoding has got.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called from the decoding thread each time another band of rows, or the
+		 * last row, is ready.
+		 *
+		 * @param decoder the decoder
+		 * @param rows    the number of rows ready, from the top
+		 */
+		void rowsDecoded(RowDecoder decoder, int rows);
+	}
+
+	/**
+	 * Opens an image file, with a ring of {@link #DEFAULT_BAND} rows. Only the
+	 * header of the file is read.
+	 *
+	 * @param file the image file
+	 * @throws IllegalArgumentException if the file cannot be read
+	 */
+	public RowDecoder(File file) {
+		this(file, DEFAULT_BAND);
+	}
+
+	/**
+	 * Opens an image file, with a ring of {@code band} rows. Only the header of
+	 * the file is read.
+	 *
+	 * @param file the image file
+	 * @param band the number of rows in the ring, at least 2
+	 * @throws IllegalArgumentException if the file cannot be read or
+	 *                                  {@code band} is less than 2
+	 */
+	public RowDecoder(File file, int band) {
+		if (file == null)
+			throw new IllegalArgumentException("file argument is null");
+		if (band < 2)
+			throw new IllegalArgumentException("band must be at least 2 rows: " + band);
+		ImageInputStream stream = null;
+		ImageReader r = null;
+		try {
+			stream = ImageIO.createImageInputStream(file);
+			Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+			if (readers == null || !readers.hasNext())
+				throw new IllegalArgumentException("could not read file: " + file);
+			r = readers.next();
+			r.setInput(stream, true, true);
+			this.width = r.getWidth(0);
+			this.height = r.getHeight(0);
+			this.streamed = inOrder(r);
+		} catch (IOException | RuntimeException e) {
+			if (r != null)
+				r.dispose();
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException ignored) {
+				// already failing
+			}
+			if (e instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e;
+			throw new IllegalArgumentException("could not open file: " + file, e);
+		}
+		this.file = file;
+		this.in = stream;
+		this.reader = r;
+		this.band = Math.min(band, height);
+		this.ring = new int[Math.multiplyExact(this.band, width)];
+	}
+
+	/**
+	 * Returns whether the reader writes each row once, from top to bottom, so
+	 * that rows can be handed on before the image is decoded.
+	 */
+	private static boolean inOrder(ImageReader reader) throws IOException {
+		String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+		IIOMetadata metadata = reader.getImageMetadata(0);
+		if (format.equals("jpeg") || format.equals("jpg")) {
+			// process 2 is progressive
+			Element sof = find(metadata.getAsTree("javax_imageio_jpeg_image_1.0"), "sof");
+			return sof != null && !"2".equals(sof.getAttribute("process"));
+		}
+		if (format.equals("png")) {
+			// the reader writes only its own bands, at their own depth, and
+			// Picture draws a transparent image over black
+			Element header = find(metadata.getAsTree("javax_imageio_png_1.0"), "IHDR");
+			return header != null && "none".equals(header.getAttribute("interlaceMethod"))
+					&& "8".equals(header.getAttribute("bitDepth"))
+					&& "RGB".equals(header.getAttribute("colorType"));
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the first element named {@code name} under {@code node}, or
+	 * {@code null} if there is none.
+	 */
+	private static Element find(Node node, String name) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeName().equals(name))
+				return (Element) child;
+			Element found = find(child, name);
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the width of the image.
+	 *
+	 * @return the width, in pixels
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image.
+	 *
+	 * @return the height, in pixels
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns whether rows are handed on as the reader decodes them, rather
+	 * than after the whole image is decoded.
+	 *
+	 * @return whether the image is streamed
+	 */
+	public boolean isStreamed() {
+		return streamed;
+	}
+
+	/**
+	 * Sets the listener told how far decoding has got.
+	 *
+	 * @param listener the listener, or {@code null} for none
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops decoding, if it is running, before the next row, and closes the
+	 * file.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notifyAll();
+			// a reader can only be used from its own thread, so a decoding
+			// thread stops at the next row it writes
+			if (!started)
+				release();
+		}
+	}
+
+	/**
+	 * Starts decoding on a new thread.
+	 *
+	 * @throws IllegalStateException if decoding was started before, or the
+	 *                               decoder is closed
+	 */
+	synchronized void start() {
+		if (started || closed)
+			throw new IllegalStateException("a decoder can only be used once");
+		started = true;
+		Thread.ofPlatform().daemon().name("a2-decoder-" + file.getName()).start(this::decode);
+	}
+
+	/**
+	 * Copies row {@code y} to {@code dst} from {@code offset} onwards, waiting
+	 * until it is decoded. Rows must be asked for in increasing order; the rows
+	 * above {@code y} can no longer be read afterwards.
+	 *
+	 * @param y      - the row
+	 * @param dst    - the destination array
+	 * @param offset - the index in {@code dst} of the first pixel
+	 * @throws IllegalArgumentException if the file cannot be decoded
+	 * @throws IllegalStateException    if the row was released, or the decoder
+	 *                                  is closed
+	 */
+	void row(int y, int[] dst, int offset) {
+		synchronized (this) {
+			if (y < released)
+				throw new IllegalStateException("row " + y + " was already read");
+			while (decoded <= y && failure == null && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new CancellationException("interrupted while decoding " + file);
+				}
+			}
+			if (failure != null)
+				throw new IllegalArgumentException("could not read file: " + file, failure);
+			if (closed)
+				throw new IllegalStateException("decoder is closed");
+		}
+		// the slot is not written again until the row is released
+		System.arraycopy(ring, (y % band) * width, dst, offset, width);
+		synchronized (this) {
+			released = y + 1;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Decodes the file, on the decoding thread.
+	 */
+	private void decode() {
+		try {
+			if (streamed) {
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setDestination(ringImage());
+				reader.read(0, param);
+			} else {
+				BufferedImage image = Picture.rgb(reader.read(0));
+				int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+				for (int y = 0; y < height; y++) {
+					System.arraycopy(pixels, y * width, ring, slot(y), width);
+				}
+			}
+			ready(height);
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				if (!closed)
+					failure = e;
+				notifyAll();
+			}
+		} finally {
+			synchronized (this) {
+				release();
+			}
+		}
+	}
+
+	/**
+	 * Frees the reader and closes the file, holding the lock.
+	 */
+	private void release() {
+		reader.dispose();
+		try {
+			in.close();
+		} catch (IOException ignored) {
+			// nothing was written
+		}
+	}
+
+	/**
+	 * Called before the first pixel of row {@code y} is written: the rows above
+	 * it are ready. Waits until the slot of row {@code y} is free.
+	 *
+	 * @throws CancellationException if the decoder is closed
+	 */
+	private void enter(int y) {
+		ready(y);
+		synchronized (this) {
+			while (y - released >= band && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+			}
+			if (closed)
+				throw new CancellationException("decoding of " + file + " stopped");
+		}
+	}
+
+	/**
+	 * Marks the rows above {@code rows} ready, and tells the listener if a band
+	 * was completed.
+	 */
+	private void ready(int rows) {
+		boolean report;
+		synchronized (this) {
+			if (rows <= decoded || closed)
+				return;
+			report = rows / band != decoded / band || rows == height;
+			decoded = rows;
+			notifyAll();
+		}
+		Listener l = listener;
+		if (report && l != null)
+			l.rowsDecoded(this, rows);
+	}
+
+	/**
+	 * Returns the index in the ring of the first pixel of row {@code y}, which
+	 * the reader is about to write, waiting until its slot is free.
+	 *
+	 * @throws IllegalStateException if a row above the last one is written
+	 */
+	private int slot(int y) {
+		if (y != writing) {
+			if (y < writing)
+				throw new IllegalStateException("rows of " + file + " are not written from the top");
+			enter(y);
+			writing = y;
+			writingSlot = (y % band) * width;
+		}
+		return writingSlot;
+	}
+
+	/**
+	 * Returns an image whose pixels are the ring, for the reader to decode into.
+	 */
+	private BufferedImage ringImage() {
+		DirectColorModel model = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+		return new BufferedImage(model, new RingRaster(model.createCompatibleSampleModel(width, height)), false,
+				null);
+	}
+
+	/**
+	 * The raster of the ring image. The readers write whole pixels, which are
+	 * stored here directly; anything else goes through the {@link RingBuffer}.
+	 */
+	private final class RingRaster extends WritableRaster {
+
+		RingRaster(SampleModel model) {
+			super(model, new RingBuffer(), new Point());
+		}
+
+		@Override
+		public void setPixel(int x, int y, int[] samples) {
+			ring[slot(y) + x] = samples[0] << 16 | samples[1] << 8 | samples[2];
+		}
+
+		@Override
+		public void setPixels(int x, int y, int w, int h, int[] samples) {
+			for (int row = 0, i = 0; row < h; row++) {
+				int pos = slot(y + row) + x;
+				for (int end = pos + w; pos < end; pos++, i += 3) {
+					ring[pos] = samples[i] << 16 | samples[i + 1] << 8 | samples[i + 2];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The ring as a {@link DataBuffer} of the whole image, in row-major order.
+	 */
+	private final class RingBuffer extends DataBuffer {
+
+		RingBuffer() {
+			super(DataBuffer.TYPE_INT, Math.multiplyExact(width, height));
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			int y = i / width;
+			return y == writing ? ring[writingSlot + i - y * width] : 0;
+		}
+
+		@Override
+		public void setElem(int bank, int i, int val) {
+			int y = i / width;
+			ring[slot(y) + i - y * width] = val & 0xFFFFFF;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package a2;
+
+/**
+ * A point operation, which computes each pixel of the result from the pixel at
+ * the same location of the source, applied to a run of pixels in a row.
+ */
+@FunctionalInterface
+interface RowKernel {
+
+	/**
+	 * Computes {@code dst[dstPos]} to {@code dst[dstPos + length - 1]} from
+	 * {@code src[srcPos]} to {@code src[srcPos + length - 1]}.
+	 *
+	 * @param src    - source pixels
+	 * @param srcPos - index of the first source pixel
+	 * @param dst    - result pixels
+	 * @param dstPos - index of the first result pixel
+	 * @param length - number of pixels
+	 */
+	void apply(int[] src, int srcPos, int[] dst, int dstPos, int length);
+}
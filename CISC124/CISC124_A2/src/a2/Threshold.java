@@ -0,0 +1,195 @@
+package a2;
+
+/**
+ * Thresholds that adapt to the image, for turning scanned documents and other
+ * unevenly lit images into black and white. Gray levels are those of
+ * {@link A2#toGray(Picture)}, computed on the fly, so no gray copy of the image
+ * is made.
+ *
+ * <p>
+ * The global threshold is Otsu's: the level that best separates the histogram
+ * into a dark and a light class, in the sense of the largest variance between
+ * the two. The histogram is counted in parallel bands, each into its own 256
+ * counters, which are added together when the band is finished, so the bands
+ * never contend for a counter.
+ *
+ * <p>
+ * The local threshold compares each pixel with the mean of the box around it,
+ * which is read from an integral (summed-area) table in four lookups, so the
+ * time per pixel does not depend on the size of the box. The table is built in
+ * two parallel passes, sums along the rows in bands of rows and then sums down
+ * the columns in strips of columns. It holds one {@code int} per pixel; sums
+ * that overflow wrap around, and the difference of four of them is still the
+ * exact sum of a box as long as that sum fits in 32 bits, which it does for
+ * every radius up to {@link #MAX_RADIUS}.
+ */
+final class Threshold {
+	/**
+	 * Largest radius of the box of {@link #adaptive}, for which 255 times the
+	 * number of pixels in the box is less than 2^32.
+	 */
+	static final int MAX_RADIUS = 2047;
+
+	private static final int COLUMN_STRIP = 256; // columns summed together by one task
+
+	private Threshold() {
+	}
+
+	/**
+	 * Returns the number of pixels of each gray level.
+	 *
+	 * @param p - original image
+	 * @return 256 counts, indexed by gray level
+	 */
+	static long[] histogram(Picture p) {
+		long[] histogram = new long[256];
+		int width = p.width();
+		A2.getScheduler().runBands(p.height(), TileScheduler.DEFAULT_TILE_HEIGHT, (firstRow, endRow) -> {
+			int[] counts = new int[256];
+			int[] row = new int[width];
+			for (int y = firstRow; y < endRow; y++) {
+				p.getRow(y, row);
+				for (int x = 0; x < width; x++) {
+					counts[A2.grayValue(row[x])]++;
+				}
+			}
+			synchronized (histogram) {
+				for (int level = 0; level < 256; level++) {
+					histogram[level] += counts[level];
+				}
+			}
+		});
+		return histogram;
+	}
+
+	/**
+	 * Returns Otsu's threshold for a histogram: the level {@code t} for which
+	 * the levels below {@code t} and the levels from {@code t} up are best
+	 * separated. Returns 128 if the histogram has a single level.
+	 *
+	 * @param histogram - counts of the gray levels
+	 * @return the threshold, from 1 to 255
+	 */
+	static int otsu(long[] histogram) {
+		long total = 0;
+		double sum = 0;
+		for (int level = 0; level < histogram.length; level++) {
+			total += histogram[level];
+			sum += (double) level * histogram[level];
+		}
+		long below = 0;
+		double sumBelow = 0;
+		double best = 0;
+		int threshold = 128;
+		for (int t = 1; t < histogram.length; t++) {
+			below += histogram[t - 1];
+			sumBelow += (double) (t - 1) * histogram[t - 1];
+			long above = total - below;
+			if (below == 0 || above == 0) {
+				continue;
+			}
+			double meanBelow = sumBelow / below;
+			double meanAbove = (sum - sumBelow) / above;
+			double between = (double) below * above * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+			if (between > best) {
+				best = between;
+				threshold = t;
+			}
+		}
+		return threshold;
+	}
+
+	/**
+	 * Returns a point operation that paints pixels darker than
+	 * {@code threshold} black and the others white.
+	 *
+	 * @param threshold - the first gray level painted white
+	 * @return the row kernel
+	 */
+	static RowKernel global(int threshold) {
+		return (src, srcPos, dst, dstPos, length) -> {
+			for (int i = 0; i < length; i++) {
+				dst[dstPos + i] = A2.grayValue(src[srcPos + i]) < threshold ? 0x000000 : 0xFFFFFF;
+			}
+		};
+	}
+
+	/**
+	 * Paints each pixel of {@code p} black if it is more than {@code percent}
+	 * percent darker than the mean of the box of the given radius around it,
+	 * clipped to the image, and white otherwise.
+	 *
+	 * @param p       - original image
+	 * @param result  - blank picture of the size of p, for the result
+	 * @param radius  - radius of the box
+	 * @param percent - how much darker than its surroundings a pixel must be
+	 * @return result - binary image
+	 * @throws IllegalArgumentException if {@code radius} is negative or more
+	 *                                  than {@link #MAX_RADIUS}
+	 */
+	static Picture adaptive(Picture p, Picture result, int radius, double percent) {
+		if (radius < 0 || radius > MAX_RADIUS) {
+			throw new IllegalArgumentException("radius must be from 0 to " + MAX_RADIUS + ": " + radius);
+		}
+		int width = p.width();
+		int height = p.height();
+		int[] integral = integral(p);
+		int scan = width + 1;
+		double factor = 1 - percent / 100;
+		A2.getScheduler().run(p, result, (Window src, Window dst) -> {
+			for (int y = dst.row; y < dst.row + dst.height; y++) {
+				int top = Math.max(y - radius, 0) * scan;
+				int bottom = (Math.min(y + radius, height - 1) + 1) * scan;
+				int rows = (bottom - top) / scan;
+				int in = src.index(dst.col, y);
+				int out = dst.index(dst.col, y);
+				for (int x = dst.col; x < dst.col + dst.width; x++) {
+					int left = Math.max(x - radius, 0);
+					int right = Math.min(x + radius, width - 1) + 1;
+					long sum = (integral[bottom + right] - integral[bottom + left] - integral[top + right]
+							+ integral[top + left]) & 0xFFFFFFFFL;
+					long count = (long) rows * (right - left);
+					int gray = A2.grayValue(src.data[in++]);
+					dst.data[out++] = gray * count < sum * factor ? 0x000000 : 0xFFFFFF;
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the integral table of the gray levels of {@code p}: entry
+	 * ({@code x}, {@code y}), at {@code y * (width + 1) + x}, is the sum of the
+	 * levels of the pixels above and to the left of pixel ({@code x}, {@code y}),
+	 * modulo 2^32.
+	 */
+	private static int[] integral(Picture p) {
+		int width = p.width();
+		int scan = width + 1;
+		int[] integral = new int[scan * (p.height() + 1)];
+		TileScheduler scheduler = A2.getScheduler();
+		scheduler.runBands(p.height(), TileScheduler.DEFAULT_TILE_HEIGHT, (firstRow, endRow) -> {
+			int[] row = new int[width];
+			for (int y = firstRow; y < endRow; y++) {
+				p.getRow(y, row);
+				int pos = (y + 1) * scan;
+				int sum = 0;
+				for (int x = 0; x < width; x++) {
+					sum += A2.grayValue(row[x]);
+					integral[pos + x + 1] = sum;
+				}
+			}
+		});
+		int strips = (scan + COLUMN_STRIP - 1) / COLUMN_STRIP;
+		scheduler.runBands(strips, 1, (firstStrip, endStrip) -> {
+			int first = firstStrip * COLUMN_STRIP;
+			int end = Math.min(endStrip * COLUMN_STRIP, scan);
+			for (int pos = 2 * scan; pos < integral.length; pos += scan) {
+				for (int x = first; x < end; x++) {
+					integral[pos + x] += integral[pos - scan + x];
+				}
+			}
+		});
+		return integral;
+	}
+}
@@ -0,0 +1,140 @@
+package a2;
+
+import java.awt.Rectangle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Follows and cancels the tiles computed by the operations run by a thread.
+ *
+ * <p>
+ * While {@link #run(Supplier)} runs some work, every tile and band that the
+ * work hands to a {@link TileScheduler} belongs to this job: the scheduler
+ * counts them, tells the listener as each one is finished, and stops starting
+ * new ones once the job is cancelled. The operations themselves do not need to
+ * know about the job, so any of them, such as
+ * {@link A2#apply(String, Picture)}, can be followed and cancelled.
+ *
+ * <p>
+ * The total number of tiles grows as the work starts each operation.
+ */
+public final class TileJob {
+	private static final ThreadLocal<TileJob> CURRENT = new ThreadLocal<>();
+
+	private final Listener listener;
+	private final AtomicInteger total = new AtomicInteger(), done = new AtomicInteger();
+	private volatile boolean cancelled;
+
+	/**
+	 * Told about each finished tile. The listener is called from the threads of
+	 * the scheduler, as soon as the pixels of the tile are in the result.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called when a tile of {@code dst} is finished.
+		 *
+		 * @param dst  the result picture, or {@code null} for work that is not a
+		 *             tile of a picture (such as a band of a {@link Pipeline})
+		 * @param tile the part of {@code dst} that is finished, or {@code null}
+		 */
+		void tileDone(Picture dst, Rectangle tile);
+	}
+
+	/**
+	 * Creates a job.
+	 *
+	 * @param listener told about each finished tile, or {@code null}
+	 */
+	public TileJob(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Runs {@code work} on the calling thread as part of this job.
+	 *
+	 * @param <T>  the type of the result
+	 * @param work the work
+	 * @return the result of {@code work}
+	 * @throws CancellationException if the job is cancelled before or while the
+	 *                               work runs
+	 */
+	public <T> T run(Supplier<T> work) {
+		TileJob outer = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			checkCancelled();
+			return work.get();
+		} finally {
+			CURRENT.set(outer);
+		}
+	}
+
+	/**
+	 * Cancels this job: no more of its tiles are started, and the work fails with
+	 * a {@link CancellationException}. Tiles that have started are finished.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns whether this job is cancelled.
+	 *
+	 * @return true if {@link #cancel()} was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of tiles started by the work so far.
+	 *
+	 * @return the number of tiles
+	 */
+	public int tiles() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the number of tiles finished.
+	 *
+	 * @return the number of finished tiles
+	 */
+	public int tilesDone() {
+		return done.get();
+	}
+
+	/**
+	 * Returns the job of the work running on this thread, or {@code null}.
+	 */
+	static TileJob current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Counts {@code tiles} more tiles.
+	 */
+	void add(int tiles) {
+		total.addAndGet(tiles);
+	}
+
+	/**
+	 * Throws a {@link CancellationException} if this job is cancelled.
+	 */
+	void checkCancelled() {
+		if (cancelled)
+			throw new CancellationException("operation cancelled");
+	}
+
+	/**
+	 * Counts a finished tile and tells the listener.
+	 */
+	void done(Picture dst, Rectangle tile) {
+		done.incrementAndGet();
+		if (listener != null)
+			listener.tileDone(dst, tile);
+	}
+}
@@ -0,0 +1,35 @@
+package a2;
+
+import java.awt.Rectangle;
+
+/**
+ * An image operation that can compute any rectangle of its result on its own,
+ * run by a {@link TileScheduler}.
+ */
+interface TileKernel {
+
+	/**
+	 * Returns the part of the source picture needed to compute the part
+	 * {@code target} of the result. The default is the same rectangle, which
+	 * suits operations that compute each pixel from the pixel at the same
+	 * location.
+	 *
+	 * @param target    - part of the result to compute
+	 * @param srcWidth  - width of the source picture
+	 * @param srcHeight - height of the source picture
+	 * @return the part of the source picture to read
+	 */
+	default Rectangle source(Rectangle target, int srcWidth, int srcHeight) {
+		return target;
+	}
+
+	/**
+	 * Computes the part {@code dst} of the result from the part {@code src} of
+	 * the source picture.
+	 *
+	 * @param src - the part of the source returned by {@link #source}
+	 * @param dst - the part of the result to compute
+	 */
+	void apply(Window src, Window dst);
+
+}
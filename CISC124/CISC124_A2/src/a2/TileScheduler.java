@@ -0,0 +1,280 @@
+package a2;
+
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs image operations in parallel by splitting the result into tiles.
+ *
+ * <p>
+ * The result picture is cut into {@code tileWidth}-by-{@code tileHeight}
+ * rectangles, and each rectangle is computed by a {@link TileKernel} as a
+ * separate fork/join task. The default tile of 512 by 64 pixels uses 128 KB of
+ * result and about as much source, which keeps both in a typical L2 cache, and
+ * is wide enough that row runs are long. Operations that read a neighbourhood
+ * of each pixel read their tile plus the pixels around it (see
+ * {@link TileKernel#source}). Operations that stream whole rows, such as
+ * blurring, run in bands of rows instead (see {@link #runBands}).
+ *
+ * <p>
+ * Tiles never overlap, so kernels can write their part of the result without
+ * locking.
+ *
+ * <p>
+ * Operations run inside {@link TileJob#run} belong to that job, which is told
+ * about each finished tile and band and can cancel the ones not yet started.
+ */
+public final class TileScheduler {
+	/**
+	 * Default width of a tile, in pixels.
+	 */
+	public static final int DEFAULT_TILE_WIDTH = 512;
+
+	/**
+	 * Default height of a tile, in pixels.
+	 */
+	public static final int DEFAULT_TILE_HEIGHT = 64;
+
+	private static final TileScheduler COMMON = new TileScheduler(DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT,
+			ForkJoinPool.commonPool());
+
+	private final int tileWidth, tileHeight;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a scheduler with its own pool of {@code parallelism} threads.
+	 *
+	 * @param tileWidth   the width of a tile
+	 * @param tileHeight  the height of a tile
+	 * @param parallelism the number of threads
+	 * @throws IllegalArgumentException if any argument is negative or zero
+	 */
+	public TileScheduler(int tileWidth, int tileHeight, int parallelism) {
+		this(tileWidth, tileHeight, newPool(parallelism));
+	}
+
+	private TileScheduler(int tileWidth, int tileHeight, ForkJoinPool pool) {
+		if (tileWidth <= 0)
+			throw new IllegalArgumentException("tile width must be positive");
+		if (tileHeight <= 0)
+			throw new IllegalArgumentException("tile height must be positive");
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.pool = pool;
+	}
+
+	private static ForkJoinPool newPool(int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive");
+		return new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Returns the scheduler that uses default tiles and the common fork/join
+	 * pool.
+	 *
+	 * @return the common scheduler
+	 */
+	public static TileScheduler common() {
+		return COMMON;
+	}
+
+	/**
+	 * Returns the width of a tile.
+	 *
+	 * @return the width of a tile (in pixels)
+	 */
+	public int tileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * Returns the height of a tile.
+	 *
+	 * @return the height of a tile (in pixels)
+	 */
+	public int tileHeight() {
+		return tileHeight;
+	}
+
+	/**
+	 * Returns the number of threads that run tiles.
+	 *
+	 * @return the parallelism of the pool
+	 */
+	public int parallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Computes every tile of {@code dst} from {@code src} with {@code kernel}.
+	 *
+	 * @param src    - source picture
+	 * @param dst    - result picture
+	 * @param kernel - the operation
+	 */
+	void run(Picture src, Picture dst, TileKernel kernel) {
+		int across = (dst.width() + tileWidth - 1) / tileWidth;
+		int down = (dst.height() + tileHeight - 1) / tileHeight;
+		TileJob job = TileJob.current();
+		if (job != null)
+			job.add(across * down);
+		pool.invoke(new Tiles(src, dst, kernel, job, across, null, 0, across * down));
+	}
+
+	/**
+	 * Computes some tiles of {@code dst} from {@code src} with {@code kernel}.
+	 * Tiles are numbered in row-major order, {@code tileWidth()} by
+	 * {@code tileHeight()} pixels from the top left corner; the other tiles are
+	 * left as they are.
+	 *
+	 * @param src    - source picture
+	 * @param dst    - result picture
+	 * @param kernel - the operation
+	 * @param tiles  - the numbers of the tiles to compute
+	 */
+	void run(Picture src, Picture dst, TileKernel kernel, int[] tiles) {
+		if (tiles.length == 0)
+			return;
+		int across = (dst.width() + tileWidth - 1) / tileWidth;
+		TileJob job = TileJob.current();
+		if (job != null)
+			job.add(tiles.length);
+		pool.invoke(new Tiles(src, dst, kernel, job, across, tiles, 0, tiles.length));
+	}
+
+	/**
+	 * Computes every pixel of {@code dst} from the pixel at the same location of
+	 * {@code src} with {@code kernel}.
+	 *
+	 * @param src    - source picture
+	 * @param dst    - result picture, the same size as {@code src}
+	 * @param kernel - the operation
+	 */
+	void run(Picture src, Picture dst, RowKernel kernel) {
+		run(src, dst, (Window s, Window d) -> {
+			for (int row = d.row; row < d.row + d.height; row++) {
+				kernel.apply(s.data, s.index(d.col, row), d.data, d.index(d.col, row), d.width);
+			}
+		});
+	}
+
+	/**
+	 * Splits the rows {@code 0} to {@code height - 1} into bands of at least
+	 * {@code bandHeight} rows and runs {@code task} on each band as a separate
+	 * fork/join task. Used by operations that stream whole rows.
+	 *
+	 * @param height     - number of rows
+	 * @param bandHeight - smallest number of rows in a band
+	 * @param task       - the work for one band
+	 */
+	void runBands(int height, int bandHeight, Band task) {
+		int bands = Math.max(1, height / Math.max(bandHeight, 1));
+		TileJob job = TileJob.current();
+		if (job != null)
+			job.add(bands);
+		pool.invoke(new Bands(height, task, job, 0, bands, bands));
+	}
+
+	/**
+	 * The work for a band of rows.
+	 */
+	@FunctionalInterface
+	interface Band {
+
+		/**
+		 * Processes the rows {@code firstRow} to {@code endRow - 1}.
+		 *
+		 * @param firstRow - first row of the band
+		 * @param endRow   - row after the last row of the band
+		 */
+		void run(int firstRow, int endRow);
+	}
+
+	/**
+	 * Runs the bands numbered {@code lo} to {@code hi - 1} of {@code count} bands
+	 * of nearly equal height.
+	 */
+	private static final class Bands extends RecursiveAction {
+		private static final long serialVersionUID = 124L;
+
+		private final int height;
+		private final transient Band task;
+		private final transient TileJob job; // may be null
+		private final int lo, hi, count;
+
+		Bands(int height, Band task, TileJob job, int lo, int hi, int count) {
+			this.height = height;
+			this.task = task;
+			this.job = job;
+			this.lo = lo;
+			this.hi = hi;
+			this.count = count;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Bands(height, task, job, lo, mid, count), new Bands(height, task, job, mid, hi, count));
+				return;
+			}
+			if (job != null)
+				job.checkCancelled();
+			task.run((int) ((long) height * lo / count), (int) ((long) height * hi / count));
+			if (job != null)
+				job.done(null, null);
+		}
+	}
+
+	/**
+	 * Computes the tiles numbered {@code lo} to {@code hi - 1}, in row-major
+	 * order, or if {@code numbers} is not null, the tiles {@code numbers[lo]} to
+	 * {@code numbers[hi - 1]}, splitting the range in halves until a single tile
+	 * is left.
+	 */
+	private final class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 124L;
+
+		private final transient Picture src, dst;
+		private final transient TileKernel kernel;
+		private final transient TileJob job; // may be null
+		private final int across, lo, hi;
+		private final int[] numbers; // may be null
+
+		Tiles(Picture src, Picture dst, TileKernel kernel, TileJob job, int across, int[] numbers, int lo, int hi) {
+			this.src = src;
+			this.dst = dst;
+			this.kernel = kernel;
+			this.job = job;
+			this.across = across;
+			this.numbers = numbers;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Tiles(src, dst, kernel, job, across, numbers, lo, mid),
+						new Tiles(src, dst, kernel, job, across, numbers, mid, hi));
+				return;
+			}
+			if (job != null)
+				job.checkCancelled();
+			int tile = numbers == null ? lo : numbers[lo];
+			int col = (tile % across) * tileWidth;
+			int row = (tile / across) * tileHeight;
+			Rectangle target = new Rectangle(col, row, Math.min(tileWidth, dst.width() - col),
+					Math.min(tileHeight, dst.height() - row));
+			Rectangle source = kernel.source(target, src.width(), src.height());
+			Window out = Window.write(dst, target);
+			kernel.apply(Window.read(src, source), out);
+			out.commit();
+			if (job != null)
+				job.done(dst, target);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package a2;
+
+/**
+ * Cache-blocked copies between rasters whose rows run in different directions,
+ * used to rotate and transpose pictures.
+ *
+ * <p>
+ * Rotating a picture by 90 degrees turns the rows of the source into the
+ * columns of the result, so a plain loop that writes the result row by row
+ * reads the source one column at a time. Each read is on a different cache
+ * line, and once a column is longer than the cache can hold every line is
+ * evicted before its neighbouring pixels are needed. These kernels copy the
+ * result in {@value #BLOCK}-by-{@value #BLOCK} blocks instead: the block of
+ * source lines read for one block of the result (4 KB) stays in the L1 cache
+ * until all of its pixels have been used. Larger blocks are slower on big
+ * pictures, whose power-of-two row lengths map the lines of a block to the same
+ * cache sets.
+ *
+ * <p>
+ * The copies can run in parallel, one band of block rows per fork/join task.
+ * See {@link RotateBenchmark} for the measured speed-up.
+ */
+final class Transpose {
+	/**
+	 * Side of a block, in pixels.
+	 */
+	static final int BLOCK = 32;
+
+	private Transpose() {
+	}
+
+	/**
+	 * Writes {@code dst[offset + y * scan + x] = src[base + x * dx + y * dy]} for
+	 * every {@code 0 <= x < w} and {@code 0 <= y < h}.
+	 *
+	 * @param src    - source raster
+	 * @param base   - index in {@code src} of the first pixel
+	 * @param dx     - step in {@code src} for one column of the result
+	 * @param dy     - step in {@code src} for one row of the result
+	 * @param dst    - result raster
+	 * @param offset - index in {@code dst} of the first pixel
+	 * @param scan   - step in {@code dst} for one row of the result
+	 * @param w      - width of the result
+	 * @param h      - height of the result
+	 */
+	static void copy(int[] src, int base, int dx, int dy, int[] dst, int offset, int scan, int w, int h) {
+		if (dx == 1) {
+			for (int y = 0; y < h; y++) {
+				System.arraycopy(src, base + y * dy, dst, offset + y * scan, w);
+			}
+		} else if (dx == -1) {
+			// a mirrored row still reads one run of the source
+			for (int y = 0; y < h; y++) {
+				int i = base + y * dy;
+				int out = offset + y * scan;
+				for (int x = 0; x < w; x++) {
+					dst[out + x] = src[i - x];
+				}
+			}
+		} else {
+			for (int y0 = 0; y0 < h; y0 += BLOCK) {
+				int y1 = Math.min(y0 + BLOCK, h);
+				for (int x0 = 0; x0 < w; x0 += BLOCK) {
+					int x1 = Math.min(x0 + BLOCK, w);
+					for (int y = y0; y < y1; y++) {
+						int i = base + x0 * dx + y * dy;
+						int out = offset + y * scan;
+						for (int x = x0; x < x1; x++, i += dx) {
+							dst[out + x] = src[i];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Does {@link #copy} for a whole {@code w}-by-{@code h} result stored with
+	 * {@code scan == w}, in parallel bands of block rows.
+	 *
+	 * @param src       - source raster
+	 * @param base      - index in {@code src} of the first pixel
+	 * @param dx        - step in {@code src} for one column of the result
+	 * @param dy        - step in {@code src} for one row of the result
+	 * @param dst       - result raster
+	 * @param w         - width of the result
+	 * @param h         - height of the result
+	 * @param scheduler - runs the bands
+	 */
+	static void copy(int[] src, int base, int dx, int dy, int[] dst, int w, int h, TileScheduler scheduler) {
+		scheduler.runBands(h, Math.max(BLOCK, scheduler.tileHeight()), (firstRow, endRow) -> copy(src,
+				base + firstRow * dy, dx, dy, dst, firstRow * w, w, w, endRow - firstRow));
+	}
+
+	/**
+	 * Rotates a {@code w}-by-{@code h} raster clockwise by 90 degrees into a
+	 * {@code h}-by-{@code w} raster, as {@link A2#rotateRight(Picture)} does.
+	 *
+	 * @param src       - source raster, {@code w} wide
+	 * @param w         - width of the source
+	 * @param h         - height of the source
+	 * @param dst       - result raster, {@code h} wide
+	 * @param scheduler - runs the copy in parallel, or {@code null} to run it on
+	 *                  the calling thread
+	 */
+	static void rotateRight(int[] src, int w, int h, int[] dst, TileScheduler scheduler) {
+		// result pixel (x, y) is source pixel (y, h - 1 - x)
+		if (scheduler == null)
+			copy(src, (h - 1) * w, -w, 1, dst, 0, h, h, w);
+		else
+			copy(src, (h - 1) * w, -w, 1, dst, h, w, scheduler);
+	}
+
+	/**
+	 * Transposes a {@code w}-by-{@code h} raster into a {@code h}-by-{@code w}
+	 * raster.
+	 *
+	 * @param src       - source raster, {@code w} wide
+	 * @param w         - width of the source
+	 * @param h         - height of the source
+	 * @param dst       - result raster, {@code h} wide
+	 * @param scheduler - runs the copy in parallel, or {@code null} to run it on
+	 *                  the calling thread
+	 */
+	static void transpose(int[] src, int w, int h, int[] dst, TileScheduler scheduler) {
+		// result pixel (x, y) is source pixel (y, x)
+		if (scheduler == null)
+			copy(src, 0, w, 1, dst, 0, h, h, w);
+		else
+			copy(src, 0, w, 1, dst, h, w, scheduler);
+	}
+}
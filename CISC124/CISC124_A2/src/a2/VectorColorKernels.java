@@ -0,0 +1,119 @@
+package a2;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The colour conversions of {@link A2#toGray(Picture)},
+ * {@link A2#toBinary(Picture)} and {@link A2#redEye(Picture)} written with the
+ * incubating Vector API, two vectors of pixels per step: 8 pixels with AVX2 and
+ * 16 with AVX-512.
+ *
+ * <p>
+ * The results are identical to the scalar rows in {@link A2}. The gray level
+ * is computed in {@code double} lanes with the same operations in the same
+ * order as {@link A2#grayValue(int)}, so every lane gets the same sum as the
+ * scalar code; no integer weights give the same rounding for every color.
+ * Adding one half and truncating then rounds like {@link Math#round(double)},
+ * because the sum is never negative and is not close to one half below 1. The
+ * red-eye test is done in {@code int} lanes.
+ *
+ * <p>
+ * All {@code int} vectors have as many lanes as the preferred {@code double}
+ * vectors, so that each converts to one {@code double} vector and back. Using
+ * a single shape also keeps the vector calls monomorphic, which the JIT needs
+ * to compile them to vector instructions.
+ *
+ * <p>
+ * This class needs {@code --add-modules jdk.incubator.vector} to compile and
+ * to run. It is only used through {@link ColorKernels}, which falls back to the
+ * scalar rows when the module is missing.
+ */
+final class VectorColorKernels {
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+			VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+	private static final int STEP = 2 * INTS.length(); // pixels per step
+
+	private VectorColorKernels() {
+	}
+
+	/**
+	 * Returns the kernels in the order gray, binary, red-eye, or {@code null} if
+	 * the preferred vectors hold fewer than 4 {@code double}s, and so a step
+	 * fewer than 8 pixels, too few to beat the scalar rows.
+	 *
+	 * @return the kernels, or {@code null}
+	 */
+	static RowKernel[] kernels() {
+		if (INTS.length() < 4)
+			return null;
+		return new RowKernel[] { VectorColorKernels::grayRow, VectorColorKernels::binaryRow,
+				VectorColorKernels::redEyeRow };
+	}
+
+	static void grayRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		int i = 0;
+		for (; i <= length - STEP; i += STEP) {
+			int j = i + INTS.length();
+			level(src, srcPos + i).mul(0x010101).intoArray(dst, dstPos + i);
+			level(src, srcPos + j).mul(0x010101).intoArray(dst, dstPos + j);
+		}
+		A2.grayRow(src, srcPos + i, dst, dstPos + i, length - i);
+	}
+
+	static void binaryRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		IntVector white = IntVector.broadcast(INTS, 0xFFFFFF);
+		int i = 0;
+		for (; i <= length - STEP; i += STEP) {
+			int j = i + INTS.length();
+			white.blend(0, level(src, srcPos + i).compare(VectorOperators.LT, 128)).intoArray(dst, dstPos + i);
+			white.blend(0, level(src, srcPos + j).compare(VectorOperators.LT, 128)).intoArray(dst, dstPos + j);
+		}
+		A2.binaryRow(src, srcPos + i, dst, dstPos + i, length - i);
+	}
+
+	static void redEyeRow(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+		int i = 0;
+		for (; i <= length - STEP; i += STEP) {
+			int j = i + INTS.length();
+			redEye(src, srcPos + i).intoArray(dst, dstPos + i);
+			redEye(src, srcPos + j).intoArray(dst, dstPos + j);
+		}
+		A2.redEyeRow(src, srcPos + i, dst, dstPos + i, length - i);
+	}
+
+	/**
+	 * Returns the gray levels of the pixels from {@code src[pos]} onwards, as
+	 * {@link A2#grayValue(int)} does.
+	 */
+	private static IntVector level(int[] src, int pos) {
+		IntVector rgb = IntVector.fromArray(INTS, src, pos);
+		DoubleVector red = widen(rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+		DoubleVector green = widen(rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+		DoubleVector blue = widen(rgb.and(0xFF));
+		DoubleVector sum = red.mul(0.2989).add(green.mul(0.5870)).add(blue.mul(0.1140));
+		return (IntVector) sum.add(0.5).convertShape(VectorOperators.D2I, INTS, 0);
+	}
+
+	private static DoubleVector widen(IntVector v) {
+		return (DoubleVector) v.convertShape(VectorOperators.I2D, DOUBLES, 0);
+	}
+
+	/**
+	 * Returns the pixels from {@code src[pos]} onwards with the red-eye ones
+	 * painted black, as {@link A2#isRedEye(int)} decides.
+	 */
+	private static IntVector redEye(int[] src, int pos) {
+		IntVector rgb = IntVector.fromArray(INTS, src, pos);
+		IntVector red = rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+		IntVector green = rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+		IntVector blue = rgb.and(0xFF);
+		VectorMask<Integer> redEye = red.mul(4).compare(VectorOperators.GT, green.add(blue).mul(5));
+		return rgb.blend(0, redEye);
+	}
+}
@@ -0,0 +1,74 @@
+package a2;
+
+import java.awt.Rectangle;
+
+/**
+ * A rectangular part of a raster, given to a {@link TileKernel}. Pixel
+ * ({@code col}, {@code row}) of the picture, in picture coordinates, is stored
+ * in {@code data[index(col, row)]}, and consecutive pixels of a row are
+ * consecutive elements of {@code data}.
+ */
+final class Window {
+	final int col, row, width, height; // the part of the picture covered
+	final int[] data; // the raster holding the pixels
+	final int scan; // distance in data between two rows
+	private final int base; // index in data of pixel (0, 0), possibly negative
+	private Picture target; // picture to copy data back to, for a copied window being written
+
+	Window(Rectangle r, int[] data, int offset, int scan) {
+		this.col = r.x;
+		this.row = r.y;
+		this.width = r.width;
+		this.height = r.height;
+		this.data = data;
+		this.scan = scan;
+		this.base = offset - r.y * scan - r.x;
+	}
+
+	/**
+	 * Returns the part {@code r} of {@code p} for reading. The window shares the
+	 * raster of {@code p}, or holds a copy of the part if {@code p} is a view.
+	 */
+	static Window read(Picture p, Rectangle r) {
+		int[] raster = p.raster();
+		if (raster != null) {
+			return new Window(r, raster, r.y * p.width() + r.x, p.width());
+		}
+		int[] copy = new int[r.width * r.height];
+		p.getRegion(r.x, r.y, r.width, r.height, copy, 0, r.width);
+		return new Window(r, copy, 0, r.width);
+	}
+
+	/**
+	 * Returns the part {@code r} of {@code p} for writing. The window shares the
+	 * raster of {@code p}, or if {@code p} has no raster on the heap, holds a
+	 * buffer for the part that {@link #commit()} writes back; the buffer starts
+	 * out black, not with the pixels of {@code p}.
+	 */
+	static Window write(Picture p, Rectangle r) {
+		if (p.raster() != null) {
+			p.beforeWrite(); // the views of p keep the pixels as they were
+			return new Window(r, p.raster(), r.y * p.width() + r.x, p.width());
+		}
+		Window w = new Window(r, new int[r.width * r.height], 0, r.width);
+		w.target = p;
+		return w;
+	}
+
+	/**
+	 * Stores the pixels of a window returned by {@link #write} in its picture, if
+	 * they are a copy.
+	 */
+	void commit() {
+		if (target != null) {
+			target.setRegion(col, row, width, height, data, index(col, row), scan);
+		}
+	}
+
+	/**
+	 * Returns the index in {@code data} of pixel ({@code col}, {@code row}).
+	 */
+	int index(int col, int row) {
+		return base + row * scan + col;
+	}
+}
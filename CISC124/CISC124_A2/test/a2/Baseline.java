@@ -0,0 +1,207 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * The operations of {@link A2} as they were first written, one pixel at a time
+ * with {@link Picture#get(int, int)} and {@link Picture#set(int, int, Color)},
+ * for the tests to compare the faster versions with. Also makes test pictures
+ * and compares them.
+ */
+final class Baseline {
+	private Baseline() {
+	}
+
+	/**
+	 * Returns a picture whose pixels have random colors.
+	 *
+	 * @param width  - width of the picture
+	 * @param height - height of the picture
+	 * @param seed   - seed of the random colors
+	 * @return the picture
+	 */
+	static Picture random(int width, int height, long seed) {
+		Random random = new Random(seed);
+		Picture p = new Picture(width, height);
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				p.set(col, row, new Color(random.nextInt(0x1000000)));
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Asserts that two pictures have the same size and the same color at every
+	 * pixel, naming the first pixel that differs.
+	 *
+	 * @param expected - the picture expected
+	 * @param actual   - the picture computed
+	 */
+	static void assertSamePixels(Picture expected, Picture actual) {
+		assertEquals(expected.width(), actual.width(), "width");
+		assertEquals(expected.height(), actual.height(), "height");
+		for (int row = 0; row < expected.height(); row++) {
+			for (int col = 0; col < expected.width(); col++) {
+				Color e = expected.get(col, row);
+				Color a = actual.get(col, row);
+				if (!e.equals(a)) {
+					fail("pixel (" + col + ", " + row + ") is " + a + ", expected " + e);
+				}
+			}
+		}
+	}
+
+	static Picture flag() {
+		Picture img = new Picture(300, 200);
+		int w = img.width();
+		int h = img.height();
+		Color blue = new Color(0, 48, 95);
+		for (int col = 0; col < w / 3; col++) {
+			for (int row = 0; row < h - 1; row++) {
+				img.set(col, row, blue);
+			}
+		}
+		Color yellow = new Color(255, 189, 17);
+		for (int col = w / 3; col < 2 * w / 3; col++) {
+			for (int row = 0; row < h - 1; row++) {
+				img.set(col, row, yellow);
+			}
+		}
+		Color red = new Color(185, 17, 55);
+		for (int col = 2 * w / 3; col < w; col++) {
+			for (int row = 0; row < h - 1; row++) {
+				img.set(col, row, red);
+			}
+		}
+		return img;
+	}
+
+	static Picture copy(Picture p) {
+		Picture result = new Picture(p.width(), p.height());
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < result.height(); row++) {
+				result.set(col, row, p.get(col, row));
+			}
+		}
+		return result;
+	}
+
+	static Picture border(Picture p, int thickness) {
+		Picture result = copy(p);
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < thickness; row++) {
+				result.set(col, row, Color.BLUE);
+				result.set(col, row + result.height() - thickness, Color.BLUE);
+			}
+		}
+		for (int row = 0; row < result.height(); row++) {
+			for (int col = 0; col < thickness; col++) {
+				result.set(col, row, Color.BLUE);
+				result.set(col + result.width() - thickness, row, Color.BLUE);
+			}
+		}
+		return result;
+	}
+
+	static Picture toGray(Picture p) {
+		Picture result = new Picture(p.width(), p.height());
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < result.height(); row++) {
+				int red = p.get(col, row).getRed();
+				int green = p.get(col, row).getGreen();
+				int blue = p.get(col, row).getBlue();
+				int grayValue = (int) Math.round(0.2989 * red + 0.5870 * green + 0.1140 * blue);
+				result.set(col, row, new Color(grayValue, grayValue, grayValue));
+			}
+		}
+		return result;
+	}
+
+	static Picture toBinary(Picture p) {
+		Picture result = new Picture(p.width(), p.height());
+		Picture grayscale = toGray(p);
+		for (int col = 0; col < grayscale.width(); col++) {
+			for (int row = 0; row < grayscale.height(); row++) {
+				int grayValue = grayscale.get(col, row).getRed();
+				result.set(col, row, grayValue < 128 ? Color.BLACK : Color.WHITE);
+			}
+		}
+		return result;
+	}
+
+	static Picture flipVertical(Picture p) {
+		Picture result = new Picture(p.width(), p.height());
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < result.height(); row++) {
+				result.set(result.width() - col - 1, row, p.get(col, row));
+			}
+		}
+		return result;
+	}
+
+	static Picture rotateRight(Picture p) {
+		Picture result = new Picture(p.height(), p.width());
+		for (int col = 0; col < p.width(); col++) {
+			for (int row = 0; row < p.height(); row++) {
+				result.set(result.width() - row - 1, col, p.get(col, row));
+			}
+		}
+		return result;
+	}
+
+	static Picture redEye(Picture p) {
+		Picture result = copy(p);
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < result.height(); row++) {
+				double red = p.get(col, row).getRed();
+				double green = p.get(col, row).getGreen();
+				double blue = p.get(col, row).getBlue();
+				double redIntensity = red / ((green + blue) / 2);
+				if (redIntensity > 2.5) {
+					result.set(col, row, Color.BLACK);
+				}
+			}
+		}
+		return result;
+	}
+
+	static Picture blur(Picture p, int radius) {
+		Picture result = new Picture(p.width(), p.height());
+		for (int col = 0; col < result.width(); col++) {
+			for (int row = 0; row < result.height(); row++) {
+				result.set(col, row, boxAvg(p, radius, col, row));
+			}
+		}
+		return result;
+	}
+
+	static Color boxAvg(Picture p, int radius, int col, int row) {
+		int red = 0;
+		int green = 0;
+		int blue = 0;
+		double counter = 0;
+		for (int boxCol = col - radius; boxCol < col + radius + 1 && boxCol < p.width(); boxCol++) {
+			for (int boxRow = row - radius; boxRow < row + radius + 1 && boxRow < p.height(); boxRow++) {
+				if (boxCol < 0) {
+					boxCol = 0;
+				}
+				if (boxRow < 0) {
+					boxRow = 0;
+				}
+				red += p.get(boxCol, boxRow).getRed();
+				green += p.get(boxCol, boxRow).getGreen();
+				blue += p.get(boxCol, boxRow).getBlue();
+				counter++;
+			}
+		}
+		red = (int) Math.round(red / counter);
+		green = (int) Math.round(green / counter);
+		blue = (int) Math.round(blue / counter);
+		return new Color(red, green, blue);
+	}
+}
@@ -0,0 +1,80 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link BlurSession} blurs like the original {@code blur} at any
+ * radius, and computes the tiles of a viewport without changing the others.
+ */
+class BlurSessionTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 }, { 37, 29 } };
+
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	@Test
+	void everyRadiusMatchesTheBaseline() {
+		for (int[] size : SIZES) {
+			Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+			BlurSession session = new BlurSession(p);
+			for (int radius : new int[] { 0, 1, 5, 40, 5000, 1 }) {
+				Baseline.assertSamePixels(Baseline.blur(p, radius), session.blur(radius));
+			}
+		}
+	}
+
+	@Test
+	void viewportComputesOnlyItsTiles() {
+		A2.setScheduler(new TileScheduler(8, 4, 3));
+		Picture p = Baseline.random(37, 29, 1);
+		Picture expected = Baseline.blur(p, 3);
+		BlurSession session = new BlurSession(p);
+		Rectangle first = new Rectangle(9, 5, 6, 2); // tiles (8, 4) to (15, 7)
+		Rectangle second = new Rectangle(30, 20, 20, 20); // tiles (24, 20) to (36, 28)
+		session.blur(3, first);
+		Picture blurred = session.blur(3, second);
+		for (int col = 0; col < 37; col++) {
+			for (int row = 0; row < 29; row++) {
+				boolean computed = new Rectangle(8, 4, 8, 4).contains(col, row)
+						|| new Rectangle(24, 20, 13, 9).contains(col, row);
+				Color c = computed ? expected.get(col, row) : Color.BLACK;
+				assertEquals(c, blurred.get(col, row), "(" + col + ", " + row + ")");
+			}
+		}
+		Baseline.assertSamePixels(expected, session.blur(3));
+	}
+
+	@Test
+	void laterChangesToThePictureAreNotBlurred() {
+		Picture p = Baseline.random(13, 11, 2);
+		Picture expected = Baseline.blur(p, 2);
+		BlurSession session = new BlurSession(p);
+		p.fillRegion(0, 0, 13, 11, Color.WHITE.getRGB());
+		Baseline.assertSamePixels(expected, session.blur(2));
+	}
+
+	@Test
+	void badArgumentsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new BlurSession(null));
+		BlurSession session = new BlurSession(Baseline.random(4, 4, 1));
+		assertThrows(IllegalArgumentException.class, () -> session.blur(-1));
+		assertThrows(IllegalArgumentException.class, () -> session.blur(1, null));
+	}
+}
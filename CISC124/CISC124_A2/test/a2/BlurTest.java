@@ -0,0 +1,56 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link A2#blur(Picture, int)} gives the same pixels as averaging
+ * every box one pixel at a time, as {@link A2#boxAvg(Picture, int, int, int)}
+ * does.
+ */
+class BlurTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 }, { 37, 29 } };
+
+	private static void assertBlursLikeBaseline(int radius) {
+		for (int[] size : SIZES) {
+			Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+			Baseline.assertSamePixels(Baseline.blur(p, radius), A2.blur(p, radius));
+		}
+	}
+
+	@Test
+	void radiusZeroCopies() {
+		assertBlursLikeBaseline(0);
+	}
+
+	@Test
+	void radiusOne() {
+		assertBlursLikeBaseline(1);
+	}
+
+	@Test
+	void radiusFive() {
+		assertBlursLikeBaseline(5);
+	}
+
+	@Test
+	void radiusLargerThanThePicture() {
+		assertBlursLikeBaseline(40);
+		assertBlursLikeBaseline(1000);
+	}
+
+	@Test
+	void sourceIsUnchanged() {
+		Picture p = Baseline.random(20, 15, 7);
+		Picture before = Baseline.copy(p);
+		A2.blur(p, 3);
+		Baseline.assertSamePixels(before, p);
+	}
+
+	@Test
+	void negativeRadiusIsRejected() {
+		Picture p = Baseline.random(4, 4, 1);
+		assertThrows(IllegalArgumentException.class, () -> A2.blur(p, -1));
+	}
+}
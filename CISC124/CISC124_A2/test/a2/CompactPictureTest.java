@@ -0,0 +1,132 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link GrayPicture} and {@link BinaryPicture} give back what is
+ * written to them, as the original {@code toGray} and {@code toBinary} would
+ * compute it, and that every operation reads them like any other picture.
+ */
+class CompactPictureTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 }, { 17, 5 } };
+
+	@Test
+	void compactConversionsMatchTheBaseline() {
+		for (int[] size : SIZES) {
+			Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+			Baseline.assertSamePixels(Baseline.toGray(p), A2.toGrayCompact(p));
+			Baseline.assertSamePixels(Baseline.toBinary(p), A2.toBinaryCompact(p));
+		}
+	}
+
+	@Test
+	void grayStoresEveryGrayExactly() {
+		GrayPicture g = new GrayPicture(256, 1);
+		for (int level = 0; level < 256; level++) {
+			g.set(level, 0, new Color(level, level, level));
+		}
+		for (int level = 0; level < 256; level++) {
+			assertEquals(new Color(level, level, level), g.get(level, 0));
+			assertEquals(level, g.levels()[level] & 0xFF);
+		}
+	}
+
+	@Test
+	void colorsAreStoredAsTheirGrayAndBinaryLevels() {
+		Picture p = Baseline.random(13, 11, 2);
+		GrayPicture g = new GrayPicture(13, 11);
+		BinaryPicture b = new BinaryPicture(13, 11);
+		for (int col = 0; col < 13; col++) {
+			for (int row = 0; row < 11; row++) {
+				g.set(col, row, p.get(col, row));
+				b.setRGB(col, row, p.getRGB(col, row));
+			}
+		}
+		Baseline.assertSamePixels(Baseline.toGray(p), g);
+		Baseline.assertSamePixels(Baseline.toBinary(p), b);
+	}
+
+	@Test
+	void regionsRoundTrip() {
+		for (Picture compact : new Picture[] { new GrayPicture(17, 5), new BinaryPicture(17, 5) }) {
+			Picture source = compact instanceof GrayPicture ? Baseline.toGray(Baseline.random(17, 5, 3))
+					: Baseline.toBinary(Baseline.random(17, 5, 3));
+			int[] all = source.pixels();
+			compact.setRegion(0, 0, 17, 5, all, 0, 17);
+			Baseline.assertSamePixels(source, compact);
+
+			// an unaligned region, read back through an offset and a wider scan
+			int[] region = new int[3 + 4 * 20];
+			compact.getRegion(3, 1, 11, 4, region, 3, 20);
+			for (int y = 0; y < 4; y++) {
+				for (int x = 0; x < 11; x++) {
+					assertEquals(source.getRGB(3 + x, 1 + y) & 0xFFFFFF, region[3 + y * 20 + x] & 0xFFFFFF);
+				}
+			}
+			int[] row = new int[17];
+			for (int y = 0; y < 5; y++) {
+				compact.getRow(y, row);
+				int[] expected = new int[17];
+				source.getRow(y, expected);
+				assertArrayEquals(expected, row);
+			}
+		}
+	}
+
+	@Test
+	void unalignedWritesLeaveTheirNeighbours() {
+		BinaryPicture b = new BinaryPicture(17, 3);
+		Picture expected = new Picture(17, 3);
+		int[] white = new int[5];
+		Arrays.fill(white, 0xFFFFFF);
+		b.setRegion(6, 1, 5, 1, white, 0, 5);
+		b.setRGB(16, 2, 0xFFFFFF);
+		for (int col = 6; col < 11; col++) {
+			expected.set(col, 1, Color.WHITE);
+		}
+		expected.set(16, 2, Color.WHITE);
+		Baseline.assertSamePixels(expected, b);
+
+		// pixel (col, row) is bit 7 - col % 8 of byte row * 3 + col / 8
+		byte[] bits = b.bits();
+		assertEquals(0b00000011, bits[3] & 0xFF);
+		assertEquals(0b11100000, bits[4] & 0xFF);
+		assertEquals(0b10000000, bits[8] & 0xFF);
+	}
+
+	@Test
+	void pixelsIsACopyAndTheRasterIsNot() {
+		GrayPicture g = new GrayPicture(4, 2);
+		g.pixels()[0] = 0xFFFFFF;
+		assertEquals(Color.BLACK, g.get(0, 0));
+		g.levels()[1] = (byte) 200;
+		assertEquals(new Color(200, 200, 200), g.get(1, 0));
+
+		BinaryPicture b = new BinaryPicture(4, 2);
+		b.pixels()[0] = 0xFFFFFF;
+		assertEquals(Color.BLACK, b.get(0, 0));
+		b.bits()[1] = (byte) 0b01000000;
+		assertEquals(Color.WHITE, b.get(1, 1));
+	}
+
+	@Test
+	void operationsReadCompactPictures() {
+		Picture p = Baseline.random(13, 11, 4);
+		Picture gray = Baseline.toGray(p);
+		Picture binary = Baseline.toBinary(p);
+		Picture g = A2.toGrayCompact(p);
+		Picture b = A2.toBinaryCompact(p);
+		Baseline.assertSamePixels(Baseline.blur(gray, 2), A2.blur(g, 2));
+		Baseline.assertSamePixels(Baseline.flipVertical(gray), A2.flipVertical(g));
+		Baseline.assertSamePixels(Baseline.rotateRight(binary), A2.rotateRight(b));
+		Baseline.assertSamePixels(Baseline.toBinary(gray), A2.toBinary(g));
+		Baseline.assertSamePixels(binary, A2.toGray(b));
+		Baseline.assertSamePixels(Baseline.blur(binary, 1), A2.blur(b, 1));
+	}
+}
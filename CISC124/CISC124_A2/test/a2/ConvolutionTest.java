@@ -0,0 +1,196 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link Convolution} against a convolution that reads every weight of
+ * every pixel with {@link Picture#get(int, int)}, with each {@link EdgeMode}
+ * written out separately. The weights are multiples of a power of two, so
+ * both sides compute the same sums exactly, and they must agree on every
+ * pixel.
+ */
+class ConvolutionTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 2, 3 }, { 9, 1 }, { 13, 11 }, { 37, 29 } };
+
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	/**
+	 * Returns the index that index {@code i} of {@code n} reads.
+	 */
+	private static int read(EdgeMode edges, int i, int n) {
+		switch (edges) {
+		case CLAMP:
+			return Math.min(Math.max(i, 0), n - 1);
+		case MIRROR:
+			if (n == 1) {
+				return 0;
+			}
+			while (i < 0 || i >= n) {
+				i = i < 0 ? -i : 2 * (n - 1) - i;
+			}
+			return i;
+		default:
+			return ((i % n) + n) % n;
+		}
+	}
+
+	private static Picture convolve(Picture p, Kernel k, EdgeMode edges) {
+		Picture result = new Picture(p.width(), p.height());
+		int rx = k.width() / 2;
+		int ry = k.height() / 2;
+		for (int col = 0; col < p.width(); col++) {
+			for (int row = 0; row < p.height(); row++) {
+				double red = 0;
+				double green = 0;
+				double blue = 0;
+				for (int i = 0; i < k.width(); i++) {
+					for (int j = 0; j < k.height(); j++) {
+						Color c = p.get(read(edges, col - rx + i, p.width()), read(edges, row - ry + j, p.height()));
+						red += k.weight(i, j) * c.getRed();
+						green += k.weight(i, j) * c.getGreen();
+						blue += k.weight(i, j) * c.getBlue();
+					}
+				}
+				result.set(col, row, new Color(level(red), level(green), level(blue)));
+			}
+		}
+		return result;
+	}
+
+	private static int level(double v) {
+		return (int) Math.min(Math.max(Math.round(v), 0), 255);
+	}
+
+	private static Kernel randomKernel(int width, int height, long seed) {
+		Random random = new Random(seed);
+		double[] weights = new double[width * height];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = (random.nextInt(12) - 3) / 32.0;
+		}
+		return new Kernel(width, height, weights);
+	}
+
+	private static void assertConvolvesLikeTheReference(Kernel k) {
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(8, 4, 3) }) {
+			A2.setScheduler(s);
+			for (EdgeMode edges : EdgeMode.values()) {
+				for (int[] size : SIZES) {
+					Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+					Baseline.assertSamePixels(convolve(p, k, edges), new Convolution(k, edges).apply(p));
+				}
+			}
+		}
+	}
+
+	@Test
+	void edgeModesReadTheDocumentedPixels() {
+		for (int n : new int[] { 1, 2, 5 }) {
+			for (int i = -12; i < n + 12; i++) {
+				for (EdgeMode edges : EdgeMode.values()) {
+					assertEquals(read(edges, i, n), edges.map(i, n), edges + " " + i + " of " + n);
+				}
+			}
+		}
+		assertEquals(1, EdgeMode.MIRROR.map(-1, 5));
+		assertEquals(3, EdgeMode.MIRROR.map(5, 5));
+		assertEquals(4, EdgeMode.WRAP.map(-1, 5));
+		assertEquals(0, EdgeMode.WRAP.map(5, 5));
+		assertEquals(0, EdgeMode.CLAMP.map(-3, 5));
+		assertEquals(4, EdgeMode.CLAMP.map(8, 5));
+	}
+
+	@Test
+	void generalKernel() {
+		Kernel k = randomKernel(3, 5, 1);
+		assertFalse(k.isSeparable());
+		assertConvolvesLikeTheReference(k);
+	}
+
+	@Test
+	void kernelLargerThanThePicture() {
+		Kernel k = randomKernel(7, 9, 2);
+		assertFalse(k.isSeparable());
+		assertConvolvesLikeTheReference(k);
+	}
+
+	@Test
+	void sharpenKernel() {
+		assertConvolvesLikeTheReference(Kernel.sharpen());
+	}
+
+	@Test
+	void separableKernel() {
+		Kernel k = Kernel.separable(new double[] { 0.25, 0.5, 0.25 }, new double[] { 0.25, 0.5, 0.25 });
+		assertTrue(k.isSeparable());
+		assertConvolvesLikeTheReference(k);
+	}
+
+	@Test
+	void lopsidedSeparableKernel() {
+		Kernel k = Kernel.separable(new double[] { 0, 0.25, 0.75 }, new double[] { 0.5, 0.5, 0 });
+		assertTrue(k.isSeparable());
+		assertConvolvesLikeTheReference(k);
+	}
+
+	@Test
+	void sobelIsTheLengthOfTheGradient() {
+		Kernel x = Kernel.sobelX();
+		Kernel y = Kernel.sobelY();
+		for (EdgeMode edges : EdgeMode.values()) {
+			for (int[] size : SIZES) {
+				Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+				Picture result = Convolution.sobel(p, edges);
+				for (int col = 0; col < p.width(); col++) {
+					for (int row = 0; row < p.height(); row++) {
+						int[] gx = new int[3];
+						int[] gy = new int[3];
+						for (int i = 0; i < 3; i++) {
+							for (int j = 0; j < 3; j++) {
+								int rgb = p.getRGB(read(edges, col - 1 + i, p.width()), read(edges, row - 1 + j, p.height()));
+								for (int c = 0; c < 3; c++) {
+									int v = rgb >> (16 - 8 * c) & 0xFF;
+									gx[c] += (int) x.weight(i, j) * v;
+									gy[c] += (int) y.weight(i, j) * v;
+								}
+							}
+						}
+						int expected = 0;
+						for (int c = 0; c < 3; c++) {
+							float length = (float) Math.sqrt(gx[c] * gx[c] + gy[c] * gy[c]);
+							expected = expected << 8 | Math.min(Math.round(length), 255);
+						}
+						assertEquals(expected, result.getRGB(col, row) & 0xFFFFFF, edges + " (" + col + ", " + row + ")");
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void badArgumentsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new Kernel(2, 3, new double[6]));
+		assertThrows(IllegalArgumentException.class, () -> new Kernel(3, 3, new double[8]));
+		assertThrows(IllegalArgumentException.class, () -> new Convolution(null, EdgeMode.CLAMP));
+		assertThrows(IllegalArgumentException.class, () -> new Convolution(Kernel.sharpen(), null));
+	}
+}
@@ -0,0 +1,98 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link Picture#fillRegion(int, int, int, int, int)} sets the same
+ * pixels as setting them one at a time, on every kind of picture, and that
+ * {@link A2#border(Picture, int)} and {@link A2#flag()}, which use it, match
+ * the original implementations.
+ */
+class FillRegionTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 }, { 37, 29 } };
+
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	@Test
+	void flagMatchesTheBaseline() {
+		Baseline.assertSamePixels(Baseline.flag(), A2.flag());
+	}
+
+	@Test
+	void borderMatchesTheBaseline() {
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(8, 4, 3) }) {
+			A2.setScheduler(s);
+			for (int[] size : SIZES) {
+				Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+				for (int thickness : new int[] { 0, 1, 2, 5, 10 }) {
+					if (thickness <= Math.min(size[0], size[1])) {
+						Baseline.assertSamePixels(Baseline.border(p, thickness), A2.border(p, thickness));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void fillMatchesSettingEachPixel() {
+		Picture p = Baseline.random(37, 29, 1);
+		Picture[] pictures = { Baseline.copy(p), A2.toGrayCompact(p), A2.toBinaryCompact(p),
+				p.flipVerticalView(), p.rotateView(90).cropView(3, 2, 20, 25) };
+		int[][] rectangles = { { 0, 0, 1, 1 }, { 3, 4, 10, 7 }, { 0, 5, 20, 1 }, { 19, 0, 1, 20 }, { 2, 2, 0, 5 } };
+		Color[] colors = { Color.WHITE, new Color(10, 200, 30), Color.BLACK };
+		for (Picture picture : pictures) {
+			Picture expected = Baseline.copy(picture);
+			for (int i = 0; i < rectangles.length; i++) {
+				int[] r = rectangles[i];
+				Color color = colors[i % colors.length];
+				picture.fillRegion(r[0], r[1], r[2], r[3], color.getRGB());
+				for (int col = r[0]; col < r[0] + r[2]; col++) {
+					for (int row = r[1]; row < r[1] + r[3]; row++) {
+						expected.set(col, row, color);
+					}
+				}
+				Picture stored = picture instanceof GrayPicture ? Baseline.toGray(expected)
+						: picture instanceof BinaryPicture ? Baseline.toBinary(expected) : expected;
+				Baseline.assertSamePixels(stored, picture);
+			}
+		}
+	}
+
+	@Test
+	void fillingAViewLeavesItsSource() {
+		Picture p = Baseline.random(13, 11, 2);
+		Picture before = Baseline.copy(p);
+		Picture view = p.rotateView(90);
+		view.fillRegion(0, 0, 11, 13, Color.RED.getRGB());
+		Baseline.assertSamePixels(before, p);
+		p.fillRegion(0, 0, 13, 11, Color.GREEN.getRGB());
+		Picture red = new Picture(11, 13);
+		red.fillRegion(0, 0, 11, 13, Color.RED.getRGB());
+		Baseline.assertSamePixels(red, view);
+	}
+
+	@Test
+	void rectangleOutsideThePictureIsRejected() {
+		Picture p = Baseline.random(9, 7, 3);
+		assertThrows(IllegalArgumentException.class, () -> p.fillRegion(-1, 0, 2, 2, 0));
+		assertThrows(IllegalArgumentException.class, () -> p.fillRegion(0, 0, 10, 1, 0));
+		assertThrows(IllegalArgumentException.class, () -> p.fillRegion(0, 6, 1, 2, 0));
+		assertThrows(IllegalArgumentException.class, () -> p.fillRegion(0, 0, -1, 1, 0));
+	}
+}
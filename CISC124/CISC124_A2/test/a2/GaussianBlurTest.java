@@ -0,0 +1,82 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link A2#gaussianBlur(Picture, double)} is three box blurs that
+ * average each box one pixel at a time, as the original {@code blur} did, and
+ * that the radii of the boxes give the spread asked for.
+ */
+class GaussianBlurTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 37, 29 } };
+
+	@Test
+	void threeBoxBlursLikeTheBaseline() {
+		for (double sigma : new double[] { 2, 3.5, 5 }) {
+			int[] radii = BoxBlur.gaussianRadii(sigma, 3);
+			for (int[] size : SIZES) {
+				Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+				Picture expected = p;
+				for (int radius : radii) {
+					expected = Baseline.blur(expected, radius);
+				}
+				Baseline.assertSamePixels(expected, A2.gaussianBlur(p, sigma));
+			}
+		}
+	}
+
+	@Test
+	void smallSigmaIsTheExactKernel() {
+		for (double sigma : new double[] { 0.5, 1, 1.9 }) {
+			Picture p = Baseline.random(37, 29, 2);
+			Picture expected = new Convolution(Kernel.gaussian(sigma), EdgeMode.MIRROR).apply(p);
+			Baseline.assertSamePixels(expected, A2.gaussianBlur(p, sigma));
+		}
+	}
+
+	@Test
+	void radiiMatchTheVariance() {
+		for (double sigma = 2; sigma <= 40; sigma += 0.25) {
+			int[] radii = BoxBlur.gaussianRadii(sigma, 3);
+			assertEquals(3, radii.length);
+			double variance = 0;
+			for (int i = 0; i < radii.length; i++) {
+				assertTrue(i == 0 || radii[i - 1] <= radii[i], "smaller boxes come first");
+				assertTrue(radii[i] - radii[0] <= 1, "two neighbouring box sizes");
+				int size = 2 * radii[i] + 1;
+				variance += (size * size - 1) / 12.0;
+			}
+			// one box more or less of the two sizes changes the variance by 4 * (lower + 1) / 12
+			double step = 4 * (2 * radii[0] + 2) / 12.0;
+			assertTrue(Math.abs(variance - sigma * sigma) <= step / 2 + 1e-9,
+					"sigma " + sigma + ": variance " + variance);
+		}
+	}
+
+	@Test
+	void flatPictureStaysFlat() {
+		Picture p = new Picture(40, 30);
+		Color c = new Color(12, 200, 77);
+		for (int col = 0; col < 40; col++) {
+			for (int row = 0; row < 30; row++) {
+				p.set(col, row, c);
+			}
+		}
+		for (double sigma : new double[] { 1, 2, 6 }) {
+			Baseline.assertSamePixels(p, A2.gaussianBlur(p, sigma));
+		}
+	}
+
+	@Test
+	void badSigmaIsRejected() {
+		Picture p = Baseline.random(4, 4, 1);
+		assertThrows(IllegalArgumentException.class, () -> A2.gaussianBlur(p, 0));
+		assertThrows(IllegalArgumentException.class, () -> A2.gaussianBlur(p, Double.NaN));
+	}
+}
@@ -0,0 +1,91 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link Pipeline} renders the same pixels as applying its
+ * operations one by one, both with {@link A2} and with the original
+ * implementations, in one band and in many.
+ */
+class PipelineTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 }, { 37, 29 } };
+
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	private static void assertChains(UnaryOperator<Pipeline> chain, UnaryOperator<Picture> a2,
+			UnaryOperator<Picture> baseline) {
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(8, 4, 3) }) {
+			A2.setScheduler(s);
+			for (int[] size : SIZES) {
+				Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+				Picture rendered = chain.apply(Pipeline.of(p)).render();
+				Baseline.assertSamePixels(a2.apply(p), rendered);
+				Baseline.assertSamePixels(baseline.apply(p), rendered);
+			}
+		}
+	}
+
+	@Test
+	void noOperationsCopies() {
+		assertChains(c -> c, A2::copy, Baseline::copy);
+	}
+
+	@Test
+	void grayBlurBinary() {
+		assertChains(c -> c.gray().blur(2).binary(),
+				p -> A2.toBinary(A2.blur(A2.toGray(p), 2)),
+				p -> Baseline.toBinary(Baseline.blur(Baseline.toGray(p), 2)));
+	}
+
+	@Test
+	void consecutiveBlurs() {
+		assertChains(c -> c.blur(1).blur(3).blur(0),
+				p -> A2.blur(A2.blur(A2.blur(p, 1), 3), 0),
+				p -> Baseline.blur(Baseline.blur(Baseline.blur(p, 1), 3), 0));
+	}
+
+	@Test
+	void redEyeFlipBlur() {
+		assertChains(c -> c.redEye().flipVertical().blur(5),
+				p -> A2.blur(A2.flipVertical(A2.redEye(p)), 5),
+				p -> Baseline.blur(Baseline.flipVertical(Baseline.redEye(p)), 5));
+	}
+
+	@Test
+	void blurFlipGray() {
+		assertChains(c -> c.blur(4).flipVertical().gray(),
+				p -> A2.toGray(A2.flipVertical(A2.blur(p, 4))),
+				p -> Baseline.toGray(Baseline.flipVertical(Baseline.blur(p, 4))));
+	}
+
+	@Test
+	void pipelinesAreImmutable() {
+		Picture p = Baseline.random(13, 11, 5);
+		Pipeline gray = Pipeline.of(p).gray();
+		gray.blur(3);
+		Baseline.assertSamePixels(Baseline.toGray(p), gray.render());
+	}
+
+	@Test
+	void badArgumentsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> Pipeline.of((Picture) null));
+		Pipeline pipeline = Pipeline.of(Baseline.random(4, 4, 1));
+		assertThrows(IllegalArgumentException.class, () -> pipeline.blur(-1));
+	}
+}
@@ -0,0 +1,87 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link A2#redEyeRegions(Picture)} repaints a small red disc as
+ * the original {@code redEye} does, and leaves large and long red areas, and
+ * everything else, as they were.
+ */
+class RedEyeRegionsTest {
+	private static final Color RED = new Color(200, 20, 20);
+
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	/**
+	 * Returns a gray 240-by-240 picture with a red disc of radius 9 centred on
+	 * (60, 60), a red disc of radius 40 centred on (170, 80), and a red stripe
+	 * 10 pixels high along rows 200 to 209.
+	 */
+	private static Picture face() {
+		Picture p = Baseline.toGray(Baseline.random(240, 240, 1));
+		for (int col = 0; col < 240; col++) {
+			for (int row = 0; row < 240; row++) {
+				int small = (col - 60) * (col - 60) + (row - 60) * (row - 60);
+				int large = (col - 170) * (col - 170) + (row - 80) * (row - 80);
+				boolean stripe = row >= 200 && row < 210 && col >= 10 && col < 230;
+				if (small <= 9 * 9 || large <= 40 * 40 || stripe) {
+					p.set(col, row, RED);
+				}
+			}
+		}
+		return p;
+	}
+
+	@Test
+	void onlyTheSmallDiscIsRepainted() {
+		Picture p = face();
+		Picture everywhere = Baseline.redEye(p);
+		Picture expected = Baseline.copy(p);
+		for (int col = 40; col < 80; col++) {
+			for (int row = 40; row < 80; row++) {
+				expected.set(col, row, everywhere.get(col, row));
+			}
+		}
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(32, 8, 3) }) {
+			A2.setScheduler(s);
+			Baseline.assertSamePixels(expected, A2.redEyeRegions(p));
+		}
+		Baseline.assertSamePixels(everywhere, A2.redEye(p));
+	}
+
+	@Test
+	void regionsHoldTheSmallDisc() {
+		List<Rectangle> regions = RedEyeRegions.find(face());
+		assertEquals(1, regions.size());
+		Rectangle r = regions.get(0);
+		assertTrue(r.contains(new Rectangle(51, 51, 19, 19)), r.toString());
+		assertTrue(new Rectangle(44, 44, 33, 33).contains(r), r.toString());
+	}
+
+	@Test
+	void pictureWithoutRedIsUnchanged() {
+		Picture p = Baseline.toGray(Baseline.random(150, 130, 2));
+		Baseline.assertSamePixels(p, A2.redEyeRegions(p));
+		Picture tiny = Baseline.random(3, 2, 3);
+		Baseline.assertSamePixels(tiny, A2.redEyeRegions(tiny));
+	}
+}
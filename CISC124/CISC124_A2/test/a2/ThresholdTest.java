@@ -0,0 +1,175 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests Otsu's threshold on histograms whose answer is known, and the global
+ * and adaptive thresholds against the gray levels of the original
+ * {@code toGray}, read one pixel at a time.
+ */
+class ThresholdTest {
+	private TileScheduler scheduler;
+
+	@BeforeEach
+	void saveScheduler() {
+		scheduler = A2.getScheduler();
+	}
+
+	@AfterEach
+	void restoreScheduler() {
+		A2.setScheduler(scheduler);
+	}
+
+	/**
+	 * Returns the first threshold with the largest variance between the levels
+	 * below it and the others, from the class weights and means.
+	 */
+	private static int bruteForceOtsu(long[] histogram) {
+		double total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		int threshold = 128;
+		double best = 0;
+		for (int t = 1; t < 256; t++) {
+			double below = 0;
+			double sumBelow = 0;
+			double sumAbove = 0;
+			for (int level = 0; level < 256; level++) {
+				if (level < t) {
+					below += histogram[level];
+					sumBelow += (double) level * histogram[level];
+				} else {
+					sumAbove += (double) level * histogram[level];
+				}
+			}
+			double above = total - below;
+			if (below == 0 || above == 0) {
+				continue;
+			}
+			double difference = sumBelow / below - sumAbove / above;
+			double between = below / total * (above / total) * difference * difference;
+			if (between > best * (1 + 1e-12)) {
+				best = between;
+				threshold = t;
+			}
+		}
+		return threshold;
+	}
+
+	@Test
+	void otsuSplitsTwoPeaks() {
+		long[] histogram = new long[256];
+		histogram[50] = 100;
+		histogram[200] = 300;
+		// every threshold from 51 to 200 separates the peaks; the first is taken
+		assertEquals(51, Threshold.otsu(histogram));
+
+		histogram = new long[256];
+		histogram[0] = 5;
+		histogram[1] = 5;
+		histogram[254] = 5;
+		histogram[255] = 5;
+		assertEquals(2, Threshold.otsu(histogram));
+	}
+
+	@Test
+	void otsuOfOneLevelIs128() {
+		long[] histogram = new long[256];
+		histogram[17] = 1000;
+		assertEquals(128, Threshold.otsu(histogram));
+		assertEquals(128, Threshold.otsu(new long[256]));
+	}
+
+	@Test
+	void otsuMatchesBruteForce() {
+		Random random = new Random(1);
+		for (int trial = 0; trial < 200; trial++) {
+			long[] histogram = new long[256];
+			int peaks = 1 + random.nextInt(4);
+			for (int i = 0; i < peaks; i++) {
+				int centre = random.nextInt(256);
+				int spread = 1 + random.nextInt(30);
+				int count = 1 + random.nextInt(5000);
+				for (int j = 0; j < count; j++) {
+					int level = (int) Math.round(centre + random.nextGaussian() * spread);
+					histogram[Math.min(Math.max(level, 0), 255)]++;
+				}
+			}
+			assertEquals(bruteForceOtsu(histogram), Threshold.otsu(histogram), "trial " + trial);
+		}
+	}
+
+	@Test
+	void histogramCountsTheBaselineGrayLevels() {
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(8, 4, 3) }) {
+			A2.setScheduler(s);
+			Picture p = Baseline.random(37, 29, 2);
+			Picture gray = Baseline.toGray(p);
+			long[] expected = new long[256];
+			for (int col = 0; col < 37; col++) {
+				for (int row = 0; row < 29; row++) {
+					expected[gray.get(col, row).getRed()]++;
+				}
+			}
+			assertArrayEquals(expected, Threshold.histogram(p));
+			assertEquals(Threshold.otsu(expected), A2.otsuThreshold(p));
+		}
+	}
+
+	@Test
+	void globalThresholdMatchesTheBaseline() {
+		Picture p = Baseline.random(37, 29, 3);
+		Baseline.assertSamePixels(Baseline.toBinary(p), A2.toBinary(p, 128));
+		Baseline.assertSamePixels(Baseline.toBinary(p), A2.toBinaryCompact(p, 128));
+		Picture gray = Baseline.toGray(p);
+		int threshold = A2.otsuThreshold(p);
+		Picture otsu = A2.toBinaryOtsu(p);
+		for (int col = 0; col < 37; col++) {
+			for (int row = 0; row < 29; row++) {
+				int expected = gray.get(col, row).getRed() < threshold ? 0x000000 : 0xFFFFFF;
+				assertEquals(expected, otsu.getRGB(col, row) & 0xFFFFFF);
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> A2.toBinary(p, 257));
+	}
+
+	@Test
+	void adaptiveComparesWithTheMeanOfTheClippedBox() {
+		for (TileScheduler s : new TileScheduler[] { TileScheduler.common(), new TileScheduler(8, 4, 3) }) {
+			A2.setScheduler(s);
+			for (int radius : new int[] { 0, 1, 5, 100 }) {
+				Picture p = Baseline.random(37, 29, radius);
+				Picture gray = Baseline.toGray(p);
+				Picture result = A2.toBinaryAdaptive(p, radius, 15);
+				for (int col = 0; col < 37; col++) {
+					for (int row = 0; row < 29; row++) {
+						long sum = 0;
+						long count = 0;
+						for (int x = Math.max(col - radius, 0); x <= Math.min(col + radius, 36); x++) {
+							for (int y = Math.max(row - radius, 0); y <= Math.min(row + radius, 28); y++) {
+								sum += gray.get(x, y).getRed();
+								count++;
+							}
+						}
+						int level = gray.get(col, row).getRed();
+						int expected = level * count < sum * (1 - 15 / 100.0) ? 0x000000 : 0xFFFFFF;
+						assertEquals(expected, result.getRGB(col, row) & 0xFFFFFF,
+								"radius " + radius + " (" + col + ", " + row + ")");
+					}
+				}
+			}
+		}
+		Picture p = Baseline.random(4, 4, 1);
+		assertThrows(IllegalArgumentException.class, () -> A2.toBinaryAdaptive(p, -1, 15));
+		assertThrows(IllegalArgumentException.class, () -> A2.toBinaryAdaptive(p, Threshold.MAX_RADIUS + 1, 15));
+	}
+}
@@ -0,0 +1,114 @@
+package a2;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that views, and views of views, read the same pixels as the original
+ * copying implementations, and that writes to a picture or to one of its views
+ * are never seen by the other.
+ */
+class ViewTest {
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 9, 1 }, { 13, 11 }, { 64, 3 } };
+
+	private static Picture crop(Picture p, int col, int row, int w, int h) {
+		Picture result = new Picture(w, h);
+		for (int x = 0; x < w; x++) {
+			for (int y = 0; y < h; y++) {
+				result.set(x, y, p.get(col + x, row + y));
+			}
+		}
+		return result;
+	}
+
+	@Test
+	void viewsMatchTheBaseline() {
+		for (int[] size : SIZES) {
+			Picture p = Baseline.random(size[0], size[1], size[0] * 31 + size[1]);
+			Picture rotated = Baseline.rotateRight(p);
+			Picture halfTurn = Baseline.rotateRight(rotated);
+			Baseline.assertSamePixels(Baseline.flipVertical(p), A2.flipVertical(p));
+			Baseline.assertSamePixels(rotated, A2.rotateRight(p));
+			Baseline.assertSamePixels(p, A2.copy(p));
+			Baseline.assertSamePixels(rotated, p.rotateView(90));
+			Baseline.assertSamePixels(halfTurn, p.rotateView(180));
+			Baseline.assertSamePixels(Baseline.rotateRight(halfTurn), p.rotateView(270));
+			Baseline.assertSamePixels(Baseline.rotateRight(halfTurn), p.rotateView(-90));
+			Baseline.assertSamePixels(p, p.rotateView(360));
+			Baseline.assertSamePixels(Baseline.flipVertical(halfTurn), p.flipHorizontalView());
+			Baseline.assertSamePixels(Baseline.flipVertical(rotated), p.transposeView());
+		}
+	}
+
+	@Test
+	void viewsOfViewsCompose() {
+		Picture p = Baseline.random(13, 11, 3);
+		Picture expected = Baseline.rotateRight(Baseline.flipVertical(Baseline.rotateRight(p)));
+		Baseline.assertSamePixels(expected, A2.rotateRight(A2.flipVertical(A2.rotateRight(p))));
+
+		expected = Baseline.rotateRight(crop(Baseline.flipVertical(Baseline.rotateRight(p)), 2, 1, 7, 9));
+		Baseline.assertSamePixels(expected, p.rotateView(90).flipVerticalView().cropView(2, 1, 7, 9).rotateView(90));
+
+		expected = crop(Baseline.flipVertical(crop(p, 3, 2, 8, 6)), 1, 1, 5, 4);
+		Baseline.assertSamePixels(expected, p.cropView(3, 2, 8, 6).flipVerticalView().cropView(1, 1, 5, 4));
+
+		Picture turned = p;
+		for (int i = 0; i < 4; i++) {
+			turned = A2.rotateRight(turned);
+		}
+		Baseline.assertSamePixels(p, turned);
+		Baseline.assertSamePixels(p, p.transposeView().transposeView().copyView());
+	}
+
+	@Test
+	void writesToTheSourceAreNotSeenByViews() {
+		Picture p = Baseline.random(13, 11, 4);
+		Picture before = Baseline.copy(p);
+		Picture flipped = A2.flipVertical(p);
+		Picture cropped = flipped.cropView(2, 3, 5, 4);
+		p.set(0, 0, Color.RED);
+		p.setRGB(12, 10, 0x123456);
+		p.setRegion(4, 4, 3, 3, new int[9], 0, 3);
+		Baseline.assertSamePixels(Baseline.flipVertical(before), flipped);
+		Baseline.assertSamePixels(crop(Baseline.flipVertical(before), 2, 3, 5, 4), cropped);
+	}
+
+	@Test
+	void writesToAViewAreNotSeenByTheSource() {
+		Picture p = Baseline.random(13, 11, 5);
+		Picture before = Baseline.copy(p);
+		Picture rotated = A2.rotateRight(p);
+		Picture copy = A2.copy(p);
+		rotated.set(0, 0, Color.RED);
+		copy.setRegion(0, 0, 2, 2, new int[4], 0, 2);
+		Baseline.assertSamePixels(before, p);
+		Picture expected = Baseline.rotateRight(before);
+		expected.set(0, 0, Color.RED);
+		Baseline.assertSamePixels(expected, rotated);
+		Baseline.assertSamePixels(Baseline.copy(before), A2.copy(p));
+	}
+
+	@Test
+	void rasterHandedOutIsNotSeenByViews() {
+		Picture p = Baseline.random(9, 7, 6);
+		Picture before = Baseline.copy(p);
+		Picture early = p.flipVerticalView();
+		int[] pixels = p.pixels();
+		Picture late = p.flipVerticalView();
+		pixels[0] = 0x123456;
+		Baseline.assertSamePixels(Baseline.flipVertical(before), early);
+		Baseline.assertSamePixels(Baseline.flipVertical(before), late);
+	}
+
+	@Test
+	void badArgumentsAreRejected() {
+		Picture p = Baseline.random(9, 7, 1);
+		assertThrows(IllegalArgumentException.class, () -> p.rotateView(45));
+		assertThrows(IllegalArgumentException.class, () -> p.cropView(0, 0, 0, 1));
+		assertThrows(IllegalArgumentException.class, () -> p.cropView(5, 0, 5, 1));
+		assertThrows(IllegalArgumentException.class, () -> p.cropView(0, -1, 1, 1));
+	}
+}
@@ -30,6 +30,9 @@ import java.io.*;
 import java.net.*;
 import java.util.LinkedList;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 
@@ -877,22 +880,61 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      * @param filename the name of the file with one of the required suffixes
      */
     public static void save(String filename) {
+        write(offscreenImage, filename);
+    }
+
+    /**
+     * Save to file in the background - suffix must be png, jpg, or gif.
+     * The drawing is copied now and written on a writer thread, so this method
+     * returns before the file is written, and later drawing does not change it.
+     * Files are written one at a time, in the order they were asked for, and
+     * the ones still waiting are written before the program exits.
+     * @param filename the name of the file with one of the required suffixes
+     */
+    public static void saveLater(String filename) {
+        BufferedImage copy = new BufferedImage(offscreenImage.getColorModel(), offscreenImage.copyData(null),
+                                               offscreenImage.isAlphaPremultiplied(), null);
+        writer().execute(() -> write(copy, filename));
+    }
+
+    // the thread of saveLater(), started on first use
+    private static ExecutorService writer;
+
+    private static synchronized ExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "StdDraw-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            ExecutorService w = writer;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                w.shutdown();
+                try { w.awaitTermination(1, TimeUnit.MINUTES); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }));
+        }
+        return writer;
+    }
+
+    // write image to file, with the format given by the suffix of filename
+    private static void write(BufferedImage image, String filename) {
         File file = new File(filename);
         String suffix = filename.substring(filename.lastIndexOf('.') + 1);
 
         // png files
         if (suffix.toLowerCase().equals("png")) {
-            try { ImageIO.write(offscreenImage, suffix, file); }
+            try { ImageIO.write(image, suffix, file); }
             catch (IOException e) { e.printStackTrace(); }
         }
 
         // need to change from ARGB to RGB for jpeg
         // reference: http://archives.java.sun.com/cgi-bin/wa?A2=ind0404&L=java2d-interest&D=0&P=2727
         else if (suffix.toLowerCase().equals("jpg")) {
-            WritableRaster raster = offscreenImage.getRaster();
+            WritableRaster raster = image.getRaster();
             WritableRaster newRaster;
-            newRaster = raster.createWritableChild(0, 0, width, height, 0, 0, new int[] {0, 1, 2});
-            DirectColorModel cm = (DirectColorModel) offscreenImage.getColorModel();
+            newRaster = raster.createWritableChild(0, 0, image.getWidth(), image.getHeight(), 0, 0, new int[] {0, 1, 2});
+            DirectColorModel cm = (DirectColorModel) image.getColorModel();
             DirectColorModel newCM = new DirectColorModel(cm.getPixelSize(),
                                                           cm.getRedMask(),
                                                           cm.getGreenMask(),